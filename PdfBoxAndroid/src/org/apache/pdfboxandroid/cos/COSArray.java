@@ -2,10 +2,12 @@ package org.apache.pdfboxandroid.cos;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import org.apache.pdfboxandroid.exceptions.COSVisitorException;
+import org.apache.pdfboxandroid.persistence.util.COSObjectKey;
 
 /**
  * An array of PDFBase objects as part of the PDF document.
@@ -16,14 +18,221 @@ import org.apache.pdfboxandroid.exceptions.COSVisitorException;
 public class COSArray extends COSBase implements Iterable<COSBase> {
 	private List<COSBase> objects = new ArrayList<COSBase>();
 
+    /**
+     * Incremented whenever the elements of the array are changed.
+     */
+    private int modificationCount = 0;
+
+    /**
+     * True if neither this array nor its direct children may be changed.
+     */
+    private boolean frozen = false;
+
+    /**
+     * The frozen array whose elements are copied to this one the first time
+     * they are accessed, null if the elements have been copied.
+     */
+    private COSArray frozenSource;
+
+    /**
+     * The document recording the changes of this array, null if the array
+     * doesn't belong to the objects of a document.
+     */
+    private COSDocument document;
+
+    /**
+     * The key of this array in the document, null for a direct object.
+     */
+    private COSObjectKey objectKey;
+
+    /**
+     * The dictionary or array containing this array as a direct object, null
+     * for an indirect object.
+     */
+    private COSBase container;
+
+    /**
+     * Makes this array a copy-on-write copy of the given frozen array. The
+     * elements are copied to the given document the first time they are accessed.
+     *
+     * @param source The frozen array.
+     * @param document The document of the copy.
+     * @param containerValue The copy containing this one as a direct object, or null.
+     */
+    void shareElements( COSArray source, COSDocument document, COSBase containerValue )
+    {
+        if( !source.frozen )
+        {
+            throw new IllegalArgumentException( "Only frozen arrays can be shared" );
+        }
+        frozenSource = source;
+        this.document = document;
+        container = containerValue;
+    }
+
+    /**
+     * Lets this array and its direct children report their changes to the given
+     * document. Nothing happens if the array is tracked already as a direct object,
+     * so a direct array shared by several containers only reports its changes to
+     * the first one.
+     *
+     * @param doc The document the array belongs to.
+     * @param keyValue The key of the array if it's an indirect object, or null.
+     * @param containerValue The dictionary or array containing this one as a direct object, or null.
+     */
+    void trackChanges( COSDocument doc, COSObjectKey keyValue, COSBase containerValue )
+    {
+        if( keyValue == null && document != null )
+        {
+            return;
+        }
+        document = doc;
+        objectKey = keyValue;
+        container = containerValue;
+        // the elements of a copy are tracked when they are copied
+        if( frozenSource == null )
+        {
+            for( COSBase element : objects )
+            {
+                document.trackChanges( element, this );
+            }
+        }
+    }
+
+    /**
+     * Tracks the changes of the given new elements of this array.
+     */
+    private void trackElements( Collection<COSBase> elements )
+    {
+        if( document != null )
+        {
+            for( COSBase element : elements )
+            {
+                document.trackChanges( element, this );
+            }
+        }
+    }
+
+    /**
+     * Copies the elements of the frozen array this one shares, if not done yet.
+     */
+    private void copyFrozenElements()
+    {
+        if( frozenSource != null )
+        {
+            COSArray source = frozenSource;
+            frozenSource = null;
+            objects = new ArrayList<COSBase>( source.objects.size() );
+            for( COSBase element : source.objects )
+            {
+                objects.add( document.copyOnWrite( element, this ) );
+            }
+        }
+    }
+
+    /**
+     * Makes this array and its direct children, but not the objects they
+     * reference, immutable. A frozen array may be read by several threads and
+     * shared by several documents using {@link COSDocument#copyOnWrite(COSBase)}.
+     * Changing it afterwards throws an {@link UnsupportedOperationException}.
+     */
+    public void freeze()
+    {
+        if( !frozen )
+        {
+            copyFrozenElements();
+            frozen = true;
+            for( COSBase element : objects )
+            {
+                if( element instanceof COSDictionary )
+                {
+                    ((COSDictionary)element).freeze();
+                }
+                else if( element instanceof COSArray )
+                {
+                    ((COSArray)element).freeze();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if this array has been frozen.
+     *
+     * @return true if this array is immutable
+     */
+    public boolean isFrozen()
+    {
+        return frozen;
+    }
+
+    /**
+     * Called before this array is changed.
+     */
+    void beforeChange()
+    {
+        if( frozen )
+        {
+            throw new UnsupportedOperationException( "The array is frozen" );
+        }
+        copyFrozenElements();
+        modificationCount++;
+        markChanged();
+    }
+
+    /**
+     * Records the indirect object containing this array as changed. Only the
+     * indirect object is marked to be written by an incremental update, the direct
+     * objects in between are written with it.
+     */
+    void markChanged()
+    {
+        if( document != null && document.isTrackingChanges() )
+        {
+            if( objectKey != null )
+            {
+                setNeedToBeUpdate( true );
+                document.objectChanged( objectKey, this );
+            }
+            else if( container instanceof COSDictionary )
+            {
+                ((COSDictionary)container).markChanged();
+            }
+            else if( container instanceof COSArray )
+            {
+                ((COSArray)container).markChanged();
+            }
+        }
+    }
+
 	/**
-     * Get access to the list.
+     * Get access to the list. Elements removed through the iterator are recorded
+     * like those of {@link #remove(int)}.
      *
      * @return an iterator over the array elements
      */
     public Iterator<COSBase> iterator()
     {
-        return objects.iterator();
+        copyFrozenElements();
+        final Iterator<COSBase> elements = objects.iterator();
+        return new Iterator<COSBase>()
+        {
+            public boolean hasNext()
+            {
+                return elements.hasNext();
+            }
+
+            public COSBase next()
+            {
+                return elements.next();
+            }
+
+            public void remove()
+            {
+                beforeChange();
+                elements.remove();
+            }
+        };
     }
     
     /**
@@ -33,6 +242,7 @@ public class COSArray extends COSBase implements Iterable<COSBase> {
      */
     public int size()
     {
+        copyFrozenElements();
         return objects.size();
     }
     
@@ -46,6 +256,7 @@ public class COSArray extends COSBase implements Iterable<COSBase> {
      */
     public COSBase get( int index )
     {
+        copyFrozenElements();
         return objects.get( index );
     }
     
@@ -58,6 +269,7 @@ public class COSArray extends COSBase implements Iterable<COSBase> {
      */
     public COSBase remove( int i )
     {
+        beforeChange();
         return objects.remove( i );
     }
     
@@ -68,7 +280,9 @@ public class COSArray extends COSBase implements Iterable<COSBase> {
      */
     public void add( COSBase object )
     {
+        beforeChange();
         objects.add( object );
+        trackElements( Collections.singletonList( object ) );
     }
     
     /**
@@ -96,7 +310,7 @@ public class COSArray extends COSBase implements Iterable<COSBase> {
         int retval = defaultValue;
         if ( index < size() )
         {
-            Object obj = objects.get( index );
+            Object obj = get( index );
             if( obj instanceof COSNumber )
             {
                 retval = ((COSNumber)obj).intValue();
@@ -115,7 +329,7 @@ public class COSArray extends COSBase implements Iterable<COSBase> {
      */
     public COSBase getObject( int index )
     {
-        Object obj = objects.get( index );
+        Object obj = get( index );
         if( obj instanceof COSObject )
         {
             obj = ((COSObject)obj).getObject();
@@ -134,7 +348,9 @@ public class COSArray extends COSBase implements Iterable<COSBase> {
      */
     public void addAll( Collection<COSBase> objectsList )
     {
+        beforeChange();
         objects.addAll( objectsList );
+        trackElements( objectsList );
     }
     
     /**
@@ -146,7 +362,9 @@ public class COSArray extends COSBase implements Iterable<COSBase> {
      */
     public void addAll( int i, Collection<COSBase> objectList )
     {
+        beforeChange();
         objects.addAll( i, objectList );
+        trackElements( objectList );
     }
     
     /**
@@ -156,6 +374,7 @@ public class COSArray extends COSBase implements Iterable<COSBase> {
      */
     public void removeAll( Collection<COSBase> objectsList )
     {
+        beforeChange();
         objects.removeAll( objectsList );
     }
     
@@ -166,6 +385,7 @@ public class COSArray extends COSBase implements Iterable<COSBase> {
      */
     public void retainAll( Collection<COSBase> objectsList )
     {
+        beforeChange();
         objects.retainAll( objectsList );
     }
     
@@ -174,6 +394,7 @@ public class COSArray extends COSBase implements Iterable<COSBase> {
      */
     public void clear()
     {
+        beforeChange();
         objects.clear();
     }
     
@@ -185,7 +406,9 @@ public class COSArray extends COSBase implements Iterable<COSBase> {
      */
     public void set( int index, COSBase object )
     {
+        beforeChange();
         objects.set( index, object );
+        trackElements( Collections.singletonList( object ) );
     }
     
     /**
@@ -197,9 +420,22 @@ public class COSArray extends COSBase implements Iterable<COSBase> {
      */
     public void add( int i, COSBase object)
     {
+        beforeChange();
         objects.add( i, object );
+        trackElements( Collections.singletonList( object ) );
     }
     
+    /**
+     * Returns a counter which is incremented whenever the elements of the array
+     * are changed. Data derived from the array can be checked against it.
+     *
+     * @return The modification count.
+     */
+    public int getModificationCount()
+    {
+        return modificationCount;
+    }
+
     /**
      * This will take an COSArray of numbers and convert it to a float[].
      *
@@ -56,6 +56,16 @@ public abstract class COSBase implements COSObjectable {
       return needToBeUpdate;
     }
     
+    /**
+     * Marks the object to be written by an incremental update.
+     * 
+     * @param flag true if the object has been changed
+     */
+    public void setNeedToBeUpdate(boolean flag) 
+    {
+      needToBeUpdate = flag;
+    }
+    
     /**
      * If the state is set true, the dictionary will be written direct into the called object. 
      * This means, no indirect object will be created.
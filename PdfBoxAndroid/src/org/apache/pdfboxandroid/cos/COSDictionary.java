@@ -1,12 +1,16 @@
 package org.apache.pdfboxandroid.cos;
 
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.pdfboxandroid.exceptions.COSVisitorException;
 import org.apache.pdfboxandroid.pdmodel.common.COSObjectable;
+import org.apache.pdfboxandroid.persistence.util.COSObjectKey;
 
 public class COSDictionary extends COSBase {
 	
@@ -18,6 +22,34 @@ public class COSDictionary extends COSBase {
 	protected final Map<COSName, COSBase> items =
 			new LinkedHashMap<COSName, COSBase>();
 	
+	/**
+	 * True if neither this dictionary nor its direct children may be changed.
+	 */
+	private boolean frozen = false;
+	
+	/**
+	 * The frozen dictionary whose items are copied to this one the first time
+	 * they are accessed, null if the items have been copied.
+	 */
+	private COSDictionary frozenSource;
+	
+	/**
+	 * The document recording the changes of this dictionary, null if the
+	 * dictionary doesn't belong to the objects of a document.
+	 */
+	private COSDocument document;
+	
+	/**
+	 * The key of this dictionary in the document, null for a direct object.
+	 */
+	private COSObjectKey objectKey;
+	
+	/**
+	 * The dictionary or array containing this dictionary as a direct object,
+	 * null for an indirect object.
+	 */
+	private COSBase container;
+	
 	/**
 	 * Constructor.
 	 */
@@ -33,9 +65,149 @@ public class COSDictionary extends COSBase {
 	 */
 	public COSDictionary( COSDictionary dict )
 	{
+		dict.copyFrozenItems();
 		items.putAll( dict.items );
 	}
 	
+	/**
+	 * Makes this dictionary a copy-on-write copy of the given frozen dictionary.
+	 * The items are copied to the given document the first time they are accessed.
+	 *
+	 * @param source The frozen dictionary.
+	 * @param document The document of the copy.
+	 * @param containerValue The copy containing this one as a direct object, or null.
+	 */
+	void shareItems( COSDictionary source, COSDocument document, COSBase containerValue )
+	{
+		if( !source.frozen )
+		{
+			throw new IllegalArgumentException( "Only frozen dictionaries can be shared" );
+		}
+		frozenSource = source;
+		this.document = document;
+		container = containerValue;
+	}
+	
+	/**
+	 * Lets this dictionary and its direct children report their changes to the
+	 * given document. Nothing happens if the dictionary is tracked already as a
+	 * direct object, so a direct dictionary shared by several containers only
+	 * reports its changes to the first one; the other containers have to be
+	 * changed themselves to be written by an incremental update.
+	 *
+	 * @param doc The document the dictionary belongs to.
+	 * @param keyValue The key of the dictionary if it's an indirect object, or null.
+	 * @param containerValue The dictionary or array containing this one as a direct object, or null.
+	 */
+	void trackChanges( COSDocument doc, COSObjectKey keyValue, COSBase containerValue )
+	{
+		if( keyValue == null && document != null )
+		{
+			return;
+		}
+		document = doc;
+		objectKey = keyValue;
+		container = containerValue;
+		// the items of a copy are tracked when they are copied
+		if( frozenSource == null )
+		{
+			for( COSBase value : items.values() )
+			{
+				document.trackChanges( value, this );
+			}
+		}
+	}
+	
+	/**
+	 * Copies the items of the frozen dictionary this one shares, if not done yet.
+	 */
+	private void copyFrozenItems()
+	{
+		if( frozenSource != null )
+		{
+			COSDictionary source = frozenSource;
+			frozenSource = null;
+			for( Map.Entry<COSName, COSBase> entry : source.items.entrySet() )
+			{
+				items.put( entry.getKey(), document.copyOnWrite( entry.getValue(), this ) );
+			}
+		}
+	}
+	
+	/**
+	 * Makes this dictionary and its direct children, but not the objects they
+	 * reference, immutable. A frozen dictionary may be read by several threads
+	 * and shared by several documents using {@link COSDocument#copyOnWrite(COSBase)}.
+	 * Changing it afterwards throws an {@link UnsupportedOperationException}.
+	 */
+	public void freeze()
+	{
+		if( !frozen )
+		{
+			copyFrozenItems();
+			frozen = true;
+			for( COSBase value : items.values() )
+			{
+				if( value instanceof COSDictionary )
+				{
+					((COSDictionary)value).freeze();
+				}
+				else if( value instanceof COSArray )
+				{
+					((COSArray)value).freeze();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns true if this dictionary has been frozen.
+	 *
+	 * @return true if this dictionary is immutable
+	 */
+	public boolean isFrozen()
+	{
+		return frozen;
+	}
+	
+	/**
+	 * Called before this dictionary is changed.
+	 */
+	void beforeChange()
+	{
+		if( frozen )
+		{
+			throw new UnsupportedOperationException( "The dictionary is frozen" );
+		}
+		copyFrozenItems();
+		markChanged();
+	}
+	
+	/**
+	 * Records the indirect object containing this dictionary as changed. Only the
+	 * indirect object is marked to be written by an incremental update, the direct
+	 * objects in between are written with it.
+	 */
+	void markChanged()
+	{
+		if( document != null && document.isTrackingChanges() )
+		{
+			if( objectKey != null )
+			{
+				setNeedToBeUpdate( true );
+				document.objectChanged( objectKey, this );
+			}
+			else if( container instanceof COSDictionary )
+			{
+				((COSDictionary)container).markChanged();
+			}
+			else if( container instanceof COSArray )
+			{
+				((COSArray)container).markChanged();
+			}
+		}
+	}
+	
 	/**
 	 * This is a convenience method that will get the dictionary object that
 	 * is expected to be an integer.  If the dictionary value is null then the
@@ -67,6 +239,7 @@ public class COSDictionary extends COSBase {
 	 */
 	public COSBase getDictionaryObject( COSName key )
 	{
+		copyFrozenItems();
 		COSBase retval = items.get( key );
 		if( retval instanceof COSObject )
 		{
@@ -95,7 +268,7 @@ public class COSDictionary extends COSBase {
 			 * all of the objects so we don't need to grab the second.
 			 */
 			if(!entry.getKey().getName().equals("Size")
-					|| !items.containsKey(COSName.getPDFName("Size")))
+					|| !keySet().contains(COSName.getPDFName("Size")))
 			{
 				setItem( entry.getKey(), entry.getValue() );
 			}
@@ -104,14 +277,40 @@ public class COSDictionary extends COSBase {
 	
 	/**
 	 * Returns the name-value entries in this dictionary. The returned
-	 * set is in the order the entries were added to the dictionary.
+	 * set is in the order the entries were added to the dictionary. Changes
+	 * made through the set and its entries are recorded like those of
+	 * {@link #setItem(COSName, COSBase)} and {@link #removeItem(COSName)}.
 	 *
 	 * @since Apache PDFBox 1.1.0
 	 * @return name-value entries in this dictionary
 	 */
 	public Set<Map.Entry<COSName, COSBase>> entrySet()
 	{
-		return items.entrySet();
+		copyFrozenItems();
+		return new AbstractSet<Map.Entry<COSName, COSBase>>()
+		{
+			public Iterator<Map.Entry<COSName, COSBase>> iterator()
+			{
+				final Iterator<Map.Entry<COSName, COSBase>> entries = items.entrySet().iterator();
+				return new ChangeIterator<Map.Entry<COSName, COSBase>>( entries )
+				{
+					public Map.Entry<COSName, COSBase> next()
+					{
+						return new ChangeEntry( entries.next() );
+					}
+				};
+			}
+			
+			public int size()
+			{
+				return items.size();
+			}
+			
+			public boolean contains( Object o )
+			{
+				return items.entrySet().contains( o );
+			}
+		};
 	}
 	
 	/**
@@ -129,7 +328,12 @@ public class COSDictionary extends COSBase {
 		}
 		else
 		{
+			beforeChange();
 			items.put( key, value );
+			if( document != null )
+			{
+				document.trackChanges( value, this );
+			}
 		}
 	}
 	
@@ -141,6 +345,7 @@ public class COSDictionary extends COSBase {
 	 */
 	public void removeItem( COSName key )
 	{
+		beforeChange();
 		items.remove( key );
 	}
 	
@@ -153,6 +358,7 @@ public class COSDictionary extends COSBase {
 	 */
 	public COSBase getItem( COSName key )
 	{
+		copyFrozenItems();
 		return items.get( key );
 	}
 	
@@ -190,14 +396,32 @@ public class COSDictionary extends COSBase {
 	
 	/**
 	 * Returns the names of the entries in this dictionary. The returned
-	 * set is in the order the entries were added to the dictionary.
+	 * set is in the order the entries were added to the dictionary. Entries
+	 * removed through the set are recorded like those of {@link #removeItem(COSName)}.
 	 *
 	 * @since Apache PDFBox 1.1.0
 	 * @return names of the entries in this dictionary
 	 */
 	public Set<COSName> keySet()
 	{
-		return items.keySet();
+		copyFrozenItems();
+		return new AbstractSet<COSName>()
+		{
+			public Iterator<COSName> iterator()
+			{
+				return new ChangeIterator<COSName>( items.keySet().iterator() );
+			}
+			
+			public int size()
+			{
+				return items.size();
+			}
+			
+			public boolean contains( Object o )
+			{
+				return items.containsKey( o );
+			}
+		};
 	}
 	
 	/**
@@ -333,6 +557,7 @@ public class COSDictionary extends COSBase {
 	 */
 	public void clear()
 	{
+		beforeChange();
 		items.clear();
 	}
 	
@@ -343,6 +568,7 @@ public class COSDictionary extends COSBase {
 	 */
 	public int size()
 	{
+		copyFrozenItems();
 		return items.size();
 	}
 	
@@ -450,13 +676,26 @@ public class COSDictionary extends COSBase {
 	}
 	
 	/**
-	 * This will get all of the values for the dictionary.
+	 * This will get all of the values for the dictionary. Entries removed
+	 * through the collection are recorded like those of {@link #removeItem(COSName)}.
 	 *
 	 * @return All the values for the dictionary.
 	 */
 	public Collection<COSBase> getValues()
 	{
-		return items.values();
+		copyFrozenItems();
+		return new AbstractCollection<COSBase>()
+		{
+			public Iterator<COSBase> iterator()
+			{
+				return new ChangeIterator<COSBase>( items.values().iterator() );
+			}
+			
+			public int size()
+			{
+				return items.size();
+			}
+		};
 	}
 	
 	/**
@@ -497,4 +736,86 @@ public class COSDictionary extends COSBase {
 		intVal = COSInteger.get(value);
 		setItem( key, intVal );
 	}
+	
+	/**
+	 * Iterator over the items of this dictionary which records its removals.
+	 */
+	private class ChangeIterator<T> implements Iterator<T>
+	{
+		private final Iterator<T> iterator;
+		
+		ChangeIterator( Iterator<T> iteratorValue )
+		{
+			iterator = iteratorValue;
+		}
+		
+		public boolean hasNext()
+		{
+			return iterator.hasNext();
+		}
+		
+		public T next()
+		{
+			return iterator.next();
+		}
+		
+		public void remove()
+		{
+			beforeChange();
+			iterator.remove();
+		}
+	}
+	
+	/**
+	 * Entry of this dictionary which records the changes of its value.
+	 */
+	private class ChangeEntry implements Map.Entry<COSName, COSBase>
+	{
+		private final Map.Entry<COSName, COSBase> entry;
+		
+		ChangeEntry( Map.Entry<COSName, COSBase> entryValue )
+		{
+			entry = entryValue;
+		}
+		
+		public COSName getKey()
+		{
+			return entry.getKey();
+		}
+		
+		public COSBase getValue()
+		{
+			return entry.getValue();
+		}
+		
+		public COSBase setValue( COSBase value )
+		{
+			if( value == null )
+			{
+				throw new NullPointerException( "Use removeItem to remove " + entry.getKey() );
+			}
+			beforeChange();
+			COSBase old = entry.setValue( value );
+			if( document != null )
+			{
+				document.trackChanges( value, COSDictionary.this );
+			}
+			return old;
+		}
+		
+		public boolean equals( Object o )
+		{
+			return entry.equals( o );
+		}
+		
+		public int hashCode()
+		{
+			return entry.hashCode();
+		}
+		
+		public String toString()
+		{
+			return entry.toString();
+		}
+	}
 }
@@ -2,7 +2,11 @@ package org.apache.pdfboxandroid.cos;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.pdfboxandroid.PDFBox;
@@ -10,8 +14,10 @@ import org.apache.pdfboxandroid.exceptions.COSVisitorException;
 import org.apache.pdfboxandroid.io.RandomAccess;
 import org.apache.pdfboxandroid.io.RandomAccessBuffer;
 import org.apache.pdfboxandroid.io.RandomAccessFile;
+import org.apache.pdfboxandroid.io.ScratchSpaceManager;
 import org.apache.pdfboxandroid.pdmodel.interactive.digitalsignature.SignatureInterface;
 import org.apache.pdfboxandroid.persistence.util.COSObjectKey;
+import org.apache.pdfboxandroid.persistence.util.COSXrefTable;
 
 import android.util.Log;
 
@@ -40,7 +46,7 @@ public class COSDocument extends COSBase {
     /**
      * Maps object and generation id to object byte offsets.
      */
-    private final Map<COSObjectKey, Long> xrefTable = new HashMap<COSObjectKey, Long>();
+    private final COSXrefTable xrefTable = new COSXrefTable();
     
     /**
      * Document trailer dictionary.
@@ -52,6 +58,29 @@ public class COSDocument extends COSBase {
      */
     private SignatureInterface signatureInterface;
     
+    /**
+     * Parser loading objects on first access, null if all objects are parsed upfront.
+     */
+    private ICOSParser parser;
+    
+    /**
+     * Manages the space of the scratch file used by the streams.
+     */
+    private final ScratchSpaceManager scratchSpace;
+    
+    /**
+     * Manages the decoded data of the streams in the scratch file.
+     */
+    private final DecodedStreamCache decodedStreamCache = new DecodedStreamCache();
+    
+    /**
+     * The indirect objects changed since the document was loaded or the changes
+     * were cleared, in the order of their first change.
+     */
+    private final Map<COSObjectKey, COSBase> changedObjects = new LinkedHashMap<COSObjectKey, COSBase>();
+    
+    private boolean trackingChanges = true;
+    
     /**
      * Constructor.  Uses memory to store stream.
      *
@@ -75,6 +104,7 @@ public class COSDocument extends COSBase {
     public COSDocument(RandomAccess scratchFileValue, boolean forceParsingValue) 
     {
         scratchFile = scratchFileValue;
+        scratchSpace = new ScratchSpaceManager( scratchFile );
         tmpFile = null;
     }
     
@@ -119,6 +149,7 @@ public class COSDocument extends COSBase {
     {
         tmpFile = File.createTempFile("pdfbox-", ".tmp", scratchDir);
         scratchFile = new RandomAccessFile(tmpFile, "rw");
+        scratchSpace = new ScratchSpaceManager( scratchFile );
     }
     
     /**
@@ -143,7 +174,7 @@ public class COSDocument extends COSBase {
     }
     
     /**
-     * Populate XRef HashMap with given values.
+     * Populate the xref table with given values.
      * Each entry maps ObjectKeys to byte offsets in the file.
      * @param xrefTableValues  xref table entries to be added
      */
@@ -157,7 +188,7 @@ public class COSDocument extends COSBase {
      * to byte offsets in the file.
      * @return mapping of ObjectsKeys to byte offsets
      */
-    public Map<COSObjectKey, Long> getXrefTable()
+    public COSXrefTable getXrefTable()
     {
         return xrefTable;
     }
@@ -182,16 +213,317 @@ public class COSDocument extends COSBase {
         {
             // this was a forward reference, make "proxy" object
             obj = new COSObject(null);
+            obj.setParser( parser );
             if( key != null )
             {
                 obj.setObjectNumber( COSInteger.get( key.getNumber() ) );
                 obj.setGenerationNumber( COSInteger.get( key.getGeneration() ) );
+                obj.setDocument( this );
                 objectPool.put(key, obj);
             }
         }
         return obj;
     }
     
+    /**
+     * Returns an object of this document sharing the given frozen object, e.g. of a
+     * template document, until it is changed. Copies of dictionaries and arrays
+     * copy the items of the frozen object the first time they are accessed, their
+     * direct children are copied the same way. A copy of a stream reads the encoded
+     * data of the frozen stream until new data is written to it. References are
+     * replaced by the objects of this document with the same number, strings are
+     * copied and numbers, names, booleans and null are shared.
+     *
+     * A copy is marked to be written by an incremental update when it is changed,
+     * together with the copies containing it as a direct object.
+     *
+     * @param frozenObject The object to be copied.
+     *
+     * @return The copy.
+     *
+     * @throws IOException If a frozen stream has no encoded data.
+     */
+    public COSBase copyOnWrite(COSBase frozenObject) throws IOException
+    {
+        if (frozenObject instanceof COSStream)
+        {
+            COSStream source = (COSStream)frozenObject;
+            COSStream stream = createCOSStream();
+            stream.shareItems(source, this, null);
+            stream.shareEncodedData(source);
+            stream.setDirect(source.isDirect());
+            return stream;
+        }
+        return copyOnWrite(frozenObject, null);
+    }
+    
+    /**
+     * Copies a frozen object which isn't a stream.
+     *
+     * @param frozenObject The object to be copied.
+     * @param container The copy containing the object as a direct object, or null.
+     * @return The copy.
+     */
+    COSBase copyOnWrite(COSBase frozenObject, COSBase container)
+    {
+        COSBase copy;
+        if (frozenObject instanceof COSObject)
+        {
+            COSObject reference = (COSObject)frozenObject;
+            if (reference.getObjectNumber() == null)
+            {
+                return copyOnWrite(reference.getObject(), container);
+            }
+            try
+            {
+                return getObjectFromPool(new COSObjectKey(reference.getObjectNumber().longValue(),
+                        reference.getGenerationNumber().longValue()));
+            }
+            catch (IOException e)
+            {
+                // creating a proxy object doesn't read anything
+                throw new RuntimeException(e);
+            }
+        }
+        else if (frozenObject instanceof COSStream)
+        {
+            // streams are indirect objects, never the children of another object
+            return frozenObject;
+        }
+        else if (frozenObject instanceof COSDictionary)
+        {
+            COSDictionary dictionary = new COSDictionary();
+            dictionary.shareItems((COSDictionary)frozenObject, this, container);
+            copy = dictionary;
+        }
+        else if (frozenObject instanceof COSArray)
+        {
+            COSArray array = new COSArray();
+            array.shareElements((COSArray)frozenObject, this, container);
+            copy = array;
+        }
+        else if (frozenObject instanceof COSString)
+        {
+            copy = new COSString((COSString)frozenObject);
+        }
+        else
+        {
+            return frozenObject;
+        }
+        // the writer keeps direct objects direct
+        copy.setDirect(frozenObject.isDirect());
+        return copy;
+    }
+    
+    /**
+     * This will get all of the objects of the pool, including the ones which
+     * haven't been loaded yet.
+     *
+     * @return A list of the objects in the pool.
+     */
+    public List<COSObject> getObjects()
+    {
+        return new ArrayList<COSObject>( objectPool.values() );
+    }
+    
+    /**
+     * Returns the indirect objects which have been changed since the document
+     * was loaded or {@link #clearChangedObjects()} was called. Changing a
+     * dictionary, array or stream of the pool, or one of their direct children,
+     * records the indirect object and marks it with
+     * {@link COSBase#setNeedToBeUpdate(boolean)}.
+     *
+     * @return The changed objects by their keys, in the order of their first change.
+     */
+    public Map<COSObjectKey, COSBase> getChangedObjects()
+    {
+        return Collections.unmodifiableMap( changedObjects );
+    }
+    
+    /**
+     * Returns an estimate of the number of bytes an incremental update writes
+     * for the changed objects, including their xref entries. Streams count with
+     * their encoded length, so the data of a changed stream may be encoded.
+     *
+     * @return The estimated size of the changed objects.
+     */
+    public long getChangedObjectsSize()
+    {
+        long size = 0;
+        for (COSBase object : changedObjects.values())
+        {
+            // "n g obj", "endobj" and the xref entry
+            size += 40 + estimateSize(object);
+        }
+        return size;
+    }
+    
+    private static long estimateSize(COSBase object)
+    {
+        if (object instanceof COSStream)
+        {
+            long length;
+            try
+            {
+                length = ((COSStream)object).getFilteredLength();
+            }
+            catch (IOException e)
+            {
+                length = 0;
+            }
+            return estimateDictionarySize((COSDictionary)object) + length + 20;
+        }
+        else if (object instanceof COSDictionary)
+        {
+            return estimateDictionarySize((COSDictionary)object);
+        }
+        else if (object instanceof COSArray)
+        {
+            long size = 2;
+            for (COSBase element : (COSArray)object)
+            {
+                // the writer writes the dictionaries of an array as references
+                size += 1 + (element instanceof COSDictionary ? 10 : estimateSize(element));
+            }
+            return size;
+        }
+        else if (object instanceof COSString)
+        {
+            return 2 + 2 * ((COSString)object).getBytes().length;
+        }
+        else if (object instanceof COSName)
+        {
+            return 1 + ((COSName)object).getName().length();
+        }
+        // numbers, booleans, null and references
+        return 10;
+    }
+    
+    private static long estimateDictionarySize(COSDictionary dictionary)
+    {
+        long size = 6;
+        for (Map.Entry<COSName, COSBase> entry : dictionary.entrySet())
+        {
+            COSBase value = entry.getValue();
+            size += 3 + entry.getKey().getName().length();
+            if (value instanceof COSDictionary && !value.isDirect())
+            {
+                size += 10;
+            }
+            else
+            {
+                size += estimateSize(value);
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * Forgets the recorded changes, e.g. after the changed objects have been saved,
+     * and resets their {@link COSBase#isNeedToBeUpdate()} flags.
+     */
+    public void clearChangedObjects()
+    {
+        for (COSBase object : changedObjects.values())
+        {
+            object.setNeedToBeUpdate(false);
+        }
+        changedObjects.clear();
+    }
+    
+    /**
+     * Enables or disables the recording of changes. The writer disables it while
+     * it adjusts the objects it writes, e.g. the length of the streams.
+     *
+     * @param tracking false to ignore changes
+     */
+    public void setTrackingChanges(boolean tracking)
+    {
+        trackingChanges = tracking;
+    }
+    
+    /**
+     * Returns true if changes of the objects of this document are recorded.
+     *
+     * @return true if changes are recorded
+     */
+    public boolean isTrackingChanges()
+    {
+        return trackingChanges;
+    }
+    
+    /**
+     * Lets a dictionary, array or stream of this document report its changes,
+     * other objects are ignored.
+     *
+     * @param object The object to be tracked.
+     * @param key The key of the object if it's an indirect object of the pool, or null.
+     * @param container The object containing the given one as a direct object, or null.
+     */
+    void trackChanges(COSBase object, COSObjectKey key, COSBase container)
+    {
+        if (object instanceof COSDictionary)
+        {
+            ((COSDictionary)object).trackChanges(this, key, container);
+        }
+        else if (object instanceof COSArray)
+        {
+            ((COSArray)object).trackChanges(this, key, container);
+        }
+    }
+    
+    /**
+     * Lets a direct child of a tracked object report its changes.
+     *
+     * @param object The child.
+     * @param container The object containing the child.
+     */
+    void trackChanges(COSBase object, COSBase container)
+    {
+        trackChanges(object, null, container);
+    }
+    
+    /**
+     * Records a changed indirect object.
+     *
+     * @param key The key of the object.
+     * @param object The object.
+     */
+    void objectChanged(COSObjectKey key, COSBase object)
+    {
+        if (!changedObjects.containsKey(key))
+        {
+            changedObjects.put(key, object);
+        }
+    }
+    
+    /**
+     * Sets the parser which loads the objects of this document on demand. All
+     * objects of the pool which haven't been parsed yet will be loaded using
+     * the given parser the first time they are accessed. The parser is closed
+     * together with this document.
+     *
+     * @param objectParser the parser used to dereference objects
+     */
+    public void setParser(ICOSParser objectParser)
+    {
+        parser = objectParser;
+        for (COSObject obj : objectPool.values())
+        {
+            obj.setParser(objectParser);
+        }
+    }
+    
+    /**
+     * Returns true if the objects of this document are parsed on demand.
+     *
+     * @return true if a parser for lazy loading is set
+     */
+    public boolean isLazy()
+    {
+        return parser != null;
+    }
+    
     /**
      * This will get the scratch file for this document.
      *
@@ -222,6 +554,11 @@ public class COSDocument extends COSBase {
     {
         if (!closed) 
         {
+            if (parser != null)
+            {
+                parser.close();
+                parser = null;
+            }
             scratchFile.close();
             if (tmpFile != null) 
             {
@@ -292,7 +629,44 @@ public class COSDocument extends COSBase {
      */
     public COSStream createCOSStream()
     {
-        return new COSStream( getScratchFile() );
+        COSStream stream = new COSStream( getScratchFile() );
+        stream.setScratchSpace( scratchSpace, decodedStreamCache );
+        return stream;
+    }
+    
+    /**
+     * Create a new COSStream with the given dictionary using the underlying scratch file.
+     * 
+     * @param dictionary the dictionary of the stream
+     * @return the new COSStream
+     */
+    public COSStream createCOSStream( COSDictionary dictionary )
+    {
+        COSStream stream = new COSStream( dictionary, getScratchFile() );
+        stream.setScratchSpace( scratchSpace, decodedStreamCache );
+        return stream;
+    }
+    
+    /**
+     * Returns the manager of the scratch file, which provides metrics about the
+     * live and wasted scratch space.
+     * 
+     * @return the scratch space manager
+     */
+    public ScratchSpaceManager getScratchSpace()
+    {
+        return scratchSpace;
+    }
+    
+    /**
+     * Returns the cache managing the decoded data of the streams of this document.
+     * Its maximum size limits the scratch space used for decoded data.
+     * 
+     * @return the decoded stream cache
+     */
+    public DecodedStreamCache getDecodedStreamCache()
+    {
+        return decodedStreamCache;
     }
     
     /**
@@ -330,6 +704,15 @@ public class COSDocument extends COSBase {
     {
         return signatureInterface;
     }
+
+    /**
+     * Sets the signature interface used to sign the document when it is saved incrementally.
+     * @param sigInterface the signature interface
+     */
+    public void setSignatureInterface(SignatureInterface sigInterface) 
+    {
+        signatureInterface = sigInterface;
+    }
     
     /**
      * @return Returns the headerString.
@@ -13,8 +13,41 @@ import org.apache.pdfboxandroid.exceptions.COSVisitorException;
  * 
  */
 public class COSFloat extends COSNumber {
+	private static final float[] FLOAT_POW10 =
+        { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+
+    private static final long[] LONG_POW10 = new long[19];
+
+    static
+    {
+        LONG_POW10[0] = 1;
+        for( int i = 1; i < LONG_POW10.length; i++ )
+        {
+            LONG_POW10[i] = LONG_POW10[i - 1] * 10;
+        }
+    }
+
+    /**
+     * The maximum number of digits of a decimal kept as unscaled value and scale.
+     */
+    static final int MAX_DIGITS = 18;
+
+    /**
+     * The value of numbers whose text can't be written from the unscaled value
+     * and the scale, e.g. numbers with an exponent or with too many digits.
+     */
 	private BigDecimal value;
 	private String valueAsString;
+
+    /**
+     * The decimal digits of the number and the number of fraction digits, the
+     * text of the number is written from them.
+     */
+    private long unscaledValue;
+    private int scale;
+    private boolean omitLeadingZero;
+
+    private float floatValue;
 	
 	/**
      * Constructor.
@@ -39,12 +72,28 @@ public class COSFloat extends COSNumber {
         {
             valueAsString = aFloat; 
             value = new BigDecimal( valueAsString );
+            floatValue = value.floatValue();
         }
         catch( NumberFormatException e )
         {
             throw new IOException( "Error expected floating point number actual='" +aFloat + "'" );
         }
     }
+
+    /**
+     * Constructor for a number parsed from a decimal without exponent.
+     *
+     * @param unscaled The digits of the number, at most {@link #MAX_DIGITS}.
+     * @param fractionDigits The number of fraction digits, at least 1.
+     * @param noLeadingZero true if the text of the number starts with the decimal point, e.g. ".5"
+     */
+    COSFloat( long unscaled, int fractionDigits, boolean noLeadingZero )
+    {
+        unscaledValue = unscaled;
+        scale = fractionDigits;
+        omitLeadingZero = noLeadingZero;
+        floatValue = toFloat( unscaled, fractionDigits );
+    }
     
     /**
      * Set the value of the float object.
@@ -53,10 +102,129 @@ public class COSFloat extends COSNumber {
      */
     public void setValue( float floatValue )
     {
-        // use a BigDecimal as intermediate state to avoid 
-        // a floating point string representation of the float value
-        value = new BigDecimal(String.valueOf(floatValue));
-        valueAsString = removeNullDigits(value.toPlainString());
+        if( !setShortestDecimal( floatValue ) )
+        {
+            // use a BigDecimal as intermediate state to avoid 
+            // a floating point string representation of the float value
+            value = new BigDecimal(String.valueOf(floatValue));
+            valueAsString = removeNullDigits(value.toPlainString());
+            this.floatValue = value.floatValue();
+        }
+    }
+
+    /**
+     * Takes the digits of the shortest decimal representation of the given float,
+     * written without exponent and without trailing zero fraction digits except
+     * for one after the decimal point.
+     *
+     * @return false if the decimal has too many digits, e.g. for very small floats
+     */
+    private boolean setShortestDecimal( float f )
+    {
+        // e.g. "-12.5", "1.0E-4" or "1.0E10"
+        String text = String.valueOf( f );
+        int length = text.length();
+        int i = text.charAt( 0 ) == '-' ? 1 : 0;
+        boolean negative = i == 1;
+        long unscaled = 0;
+        int digits = 0;
+        int fraction = -1;
+        for( ; i < length; i++ )
+        {
+            char c = text.charAt( i );
+            if( c >= '0' && c <= '9' )
+            {
+                if( digits > 0 || c != '0' )
+                {
+                    digits++;
+                }
+                unscaled = unscaled * 10 + ( c - '0' );
+                if( fraction >= 0 )
+                {
+                    fraction++;
+                }
+            }
+            else if( c == '.' && fraction < 0 )
+            {
+                fraction = 0;
+            }
+            else
+            {
+                break;
+            }
+        }
+        int exponent = 0;
+        if( i < length )
+        {
+            if( text.charAt( i ) != 'E' || ++i == length )
+            {
+                return false;
+            }
+            boolean negativeExponent = text.charAt( i ) == '-';
+            if( negativeExponent )
+            {
+                i++;
+            }
+            for( ; i < length; i++ )
+            {
+                char c = text.charAt( i );
+                if( c < '0' || c > '9' )
+                {
+                    return false;
+                }
+                exponent = exponent * 10 + ( c - '0' );
+            }
+            if( negativeExponent )
+            {
+                exponent = -exponent;
+            }
+        }
+        // NaN and the infinities have no decimal point
+        if( fraction < 0 || digits > MAX_DIGITS )
+        {
+            return false;
+        }
+        int newScale = fraction - exponent;
+        if( newScale < 0 )
+        {
+            if( digits - newScale > MAX_DIGITS )
+            {
+                return false;
+            }
+            unscaled *= LONG_POW10[-newScale];
+            newScale = 0;
+        }
+        while( newScale > 1 && unscaled % 10 == 0 )
+        {
+            unscaled /= 10;
+            newScale--;
+        }
+        if( newScale > MAX_DIGITS )
+        {
+            return false;
+        }
+        value = null;
+        valueAsString = null;
+        unscaledValue = negative ? -unscaled : unscaled;
+        scale = newScale;
+        omitLeadingZero = false;
+        // there is no negative zero, as with the BigDecimal
+        floatValue = unscaled == 0 ? 0f : f;
+        return true;
+    }
+
+    /**
+     * Returns the float nearest to the given decimal.
+     */
+    private static float toFloat( long unscaled, int fractionDigits )
+    {
+        long magnitude = Math.abs( unscaled );
+        if( magnitude <= ( 1 << 24 ) && fractionDigits < FLOAT_POW10.length )
+        {
+            // both operands are exact, so the quotient is rounded correctly
+            return unscaled / FLOAT_POW10[fractionDigits];
+        }
+        return BigDecimal.valueOf( unscaled, fractionDigits ).floatValue();
     }
     
     private String removeNullDigits(String value)
@@ -79,7 +247,7 @@ public class COSFloat extends COSNumber {
      */
     public float floatValue()
     {
-        return value.floatValue();
+        return floatValue;
     }
 
 	/**
@@ -89,7 +257,11 @@ public class COSFloat extends COSNumber {
      */
     public long longValue()
     {
-        return value.longValue();
+        if( value != null )
+        {
+            return value.longValue();
+        }
+        return unscaledValue / LONG_POW10[scale];
     }
     
     /**
@@ -99,7 +271,11 @@ public class COSFloat extends COSNumber {
      */
     public int intValue()
     {
-        return value.intValue();
+        if( value != null )
+        {
+            return value.intValue();
+        }
+        return (int)longValue();
     }
     
     /**
@@ -110,7 +286,43 @@ public class COSFloat extends COSNumber {
      */
     public void writePDF( OutputStream output ) throws IOException
     {
-        output.write(valueAsString.getBytes("ISO-8859-1"));
+        if( value != null )
+        {
+            output.write(valueAsString.getBytes("ISO-8859-1"));
+            return;
+        }
+        long magnitude = unscaledValue;
+        if( magnitude < 0 )
+        {
+            output.write( '-' );
+            magnitude = -magnitude;
+        }
+        long integerPart = magnitude / LONG_POW10[scale];
+        if( integerPart != 0 || !omitLeadingZero )
+        {
+            writeDigits( output, integerPart, 1 );
+        }
+        if( scale > 0 )
+        {
+            output.write( '.' );
+            writeDigits( output, magnitude % LONG_POW10[scale], scale );
+        }
+    }
+
+    /**
+     * Writes the digits of the given number, padded with leading zeros.
+     */
+    private static void writeDigits( OutputStream output, long number, int minDigits ) throws IOException
+    {
+        int digits = 1;
+        while( digits < LONG_POW10.length && number >= LONG_POW10[digits] )
+        {
+            digits++;
+        }
+        for( int i = Math.max( digits, minDigits ) - 1; i >= 0; i-- )
+        {
+            output.write( '0' + (int)( number / LONG_POW10[i] % 10 ) );
+        }
     }
 
     /**
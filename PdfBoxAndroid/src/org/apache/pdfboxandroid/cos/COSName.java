@@ -49,6 +49,22 @@ public final class COSName extends COSBase implements Comparable<COSName> {
 	 * A common COSName value.
 	 */
 	public static final COSName ASCENT = new COSName( "Ascent" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName ASCII85_DECODE = new COSName( "ASCII85Decode" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName ASCII85_DECODE_ABBREVIATION = new COSName( "A85" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName ASCII_HEX_DECODE = new COSName( "ASCIIHexDecode" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName ASCII_HEX_DECODE_ABBREVIATION = new COSName( "AHx" );
 	/**
 	 * A common COSName value.
 	 */
@@ -62,6 +78,10 @@ public final class COSName extends COSBase implements Comparable<COSName> {
 	 */
 	public static final COSName BBOX = new COSName( "BBox" );
 	/**
+	 * A common COSName value.
+	 */
+	public static final COSName BITS_PER_COMPONENT = new COSName( "BitsPerComponent" );
+	/**
      * A common COSName value.
      */
     public static final COSName BYTERANGE = new COSName("ByteRange");
@@ -82,6 +102,14 @@ public final class COSName extends COSBase implements Comparable<COSName> {
 	 */
 	public static final COSName CID_FONT_TYPE2 = new COSName( "CIDFontType2" );
 	/**
+	 * A common COSName value.
+	 */
+	public static final COSName COLORS = new COSName( "Colors" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName COLUMNS = new COSName( "Columns" );
+	/**
      * A common COSName value.
      */
     public static final COSName CONTENTS = new COSName( "Contents" );
@@ -89,6 +117,10 @@ public final class COSName extends COSBase implements Comparable<COSName> {
 	 * A common COSName value.
 	 */
 	public static final COSName DA = new COSName( "DA" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName DECODE_PARMS = new COSName( "DecodeParms" );
 	/**
 	 * A common COSName value.
 	 */
@@ -113,6 +145,14 @@ public final class COSName extends COSBase implements Comparable<COSName> {
      * A common COSName value.
      */
     public static final COSName DOC_TIME_STAMP = new COSName( "DocTimeStamp" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName DP = new COSName( "DP" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName EARLY_CHANGE = new COSName( "EarlyChange" );
 	/**
 	 * A common COSName value.
 	 */
@@ -121,10 +161,18 @@ public final class COSName extends COSBase implements Comparable<COSName> {
 	 * A common COSName value.
 	 */
 	public static final COSName FF = new COSName( "Ff" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName FIELDS = new COSName( "Fields" );
 	/**
 	 * A common COSName value.
 	 */
 	public static final COSName FILTER = new COSName( "Filter" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName FIRST = new COSName( "First" );
 	/**
 	 * A common COSName value.
 	 */
@@ -137,6 +185,10 @@ public final class COSName extends COSBase implements Comparable<COSName> {
      * A common COSName value.
      */
     public static final COSName FLATE_DECODE = new COSName( "FlateDecode" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName FLATE_DECODE_ABBREVIATION = new COSName( "Fl" );
 	/**
 	 * A common COSName value.
 	 */
@@ -205,6 +257,14 @@ public final class COSName extends COSBase implements Comparable<COSName> {
 	 * A common COSName value.
 	 */
 	public static final COSName LENGTH = new COSName( "Length" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName LZW_DECODE = new COSName( "LZWDecode" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName LZW_DECODE_ABBREVIATION = new COSName( "LZW" );
 	/**
 	 * A common COSName value.
 	 */
@@ -221,6 +281,10 @@ public final class COSName extends COSBase implements Comparable<COSName> {
 	 * A common COSName value.
 	 */
 	public static final COSName N = new COSName( "N" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName OBJ_STM = new COSName( "ObjStm" );
 	/**
 	 * A common COSName value.
 	 */
@@ -237,6 +301,10 @@ public final class COSName extends COSBase implements Comparable<COSName> {
 	 * A common COSName value.
 	 */
 	public static final COSName PDF_DOC_ENCODING = new COSName( "PDFDocEncoding" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName PREDICTOR = new COSName( "Predictor" );
 	/**
 	 * A common COSName value.
 	 */
@@ -258,6 +326,14 @@ public final class COSName extends COSBase implements Comparable<COSName> {
 	 */
 	public static final COSName ROOT = new COSName( "Root" );
 	/**
+	 * A common COSName value.
+	 */
+	public static final COSName RUN_LENGTH_DECODE = new COSName( "RunLengthDecode" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName RUN_LENGTH_DECODE_ABBREVIATION = new COSName( "RL" );
+	/**
      * A common COSName value.
      */
     public static final COSName SIG = new COSName("Sig");
@@ -277,6 +353,10 @@ public final class COSName extends COSBase implements Comparable<COSName> {
 	 * A common COSName value.
 	 */
 	public static final COSName SUBTYPE = new COSName( "Subtype" );
+	/**
+	 * A common COSName value.
+	 */
+	public static final COSName T = new COSName( "T" );
 	/**
 	 * A common COSName value.
 	 */
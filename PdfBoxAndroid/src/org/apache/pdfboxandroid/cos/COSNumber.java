@@ -70,4 +70,68 @@ public abstract class COSNumber extends COSBase {
      * @return The float value of this object.
      */
     public abstract float floatValue();
+
+    /**
+     * This factory method will get the appropriate number object from the bytes
+     * of a number token. Integers and decimals without exponent are parsed directly,
+     * the other forms are passed to {@link #get(String)}.
+     *
+     * @param bytes The buffer containing the number.
+     * @param offset The offset of the number in the buffer.
+     * @param length The length of the number.
+     *
+     * @return A number object, either float or int.
+     *
+     * @throws IOException If the bytes are not a number.
+     */
+    public static COSNumber get( byte[] bytes, int offset, int length ) throws IOException
+    {
+        int end = offset + length;
+        int i = offset;
+        boolean negative = length > 1 && bytes[i] == '-';
+        if( negative )
+        {
+            i++;
+        }
+        int firstDigit = i;
+        long unscaled = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for( ; i < end; i++ )
+        {
+            int c = bytes[i];
+            if( c >= '0' && c <= '9' )
+            {
+                unscaled = unscaled * 10 + ( c - '0' );
+                digits++;
+                if( fractionDigits >= 0 )
+                {
+                    fractionDigits++;
+                }
+            }
+            else if( c == '.' && fractionDigits < 0 )
+            {
+                fractionDigits = 0;
+            }
+            else
+            {
+                break;
+            }
+        }
+        if( i == end && digits > 0 && digits <= COSFloat.MAX_DIGITS )
+        {
+            if( fractionDigits < 0 )
+            {
+                return COSInteger.get( negative ? -unscaled : unscaled );
+            }
+            int integerDigits = digits - fractionDigits;
+            // the text of e.g. "5.", "007.5" or "-0.0" can't be written from the digits
+            if( fractionDigits > 0 && ( integerDigits <= 1 || bytes[firstDigit] != '0' ) &&
+                    !( negative && unscaled == 0 ) )
+            {
+                return new COSFloat( negative ? -unscaled : unscaled, fractionDigits, integerDigits == 0 );
+            }
+        }
+        return get( new String( bytes, offset, length, "ISO-8859-1" ) );
+    }
 }
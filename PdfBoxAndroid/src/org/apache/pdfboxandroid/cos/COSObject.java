@@ -2,13 +2,29 @@ package org.apache.pdfboxandroid.cos;
 
 import java.io.IOException;
 
+import org.apache.pdfboxandroid.PDFBox;
 import org.apache.pdfboxandroid.exceptions.COSVisitorException;
+import org.apache.pdfboxandroid.persistence.util.COSObjectKey;
+
+import android.util.Log;
 
 public class COSObject extends COSBase {
-	private COSBase baseObject;
+	private volatile COSBase baseObject;
 	private COSInteger objectNumber;
 	private COSInteger generationNumber;
 	
+	/**
+	 * The parser used to load the encapsulated object on first access, null
+	 * if the object has been loaded already or is not loaded lazily.
+	 */
+	private volatile ICOSParser parser;
+	
+	/**
+	 * The document whose pool contains this object, it records the changes of
+	 * the encapsulated object.
+	 */
+	private COSDocument document;
+	
 	/**
      * Constructor.
      *
@@ -31,6 +47,11 @@ public class COSObject extends COSBase {
     public void setObject( COSBase object ) throws IOException
     {
         baseObject = object;
+        if( document != null && objectNumber != null && generationNumber != null )
+        {
+            document.trackChanges( object, new COSObjectKey( objectNumber.longValue(),
+                    generationNumber.longValue() ), null );
+        }
         /*if( baseObject == null )
         {
             baseObject = object;
@@ -84,15 +105,78 @@ public class COSObject extends COSBase {
     }
 	
 	/**
-     * This will get the object that this object encapsulates.
+     * This will get the object that this object encapsulates. An object which
+     * is loaded lazily is parsed while holding the lock of the parser, so
+     * threads asking for it at the same time all get the same object.
      *
      * @return The encapsulated object.
      */
     public COSBase getObject()
     {
+        ICOSParser objectParser = parser;
+        if( baseObject == null && objectParser != null )
+        {
+            // the parser is locked anyway, locking this object as well could
+            // deadlock with a thread resolving a reference while parsing
+            synchronized( objectParser )
+            {
+                if( baseObject == null && parser != null )
+                {
+                    try
+                    {
+                        objectParser.dereferenceCOSObject( this );
+                    }
+                    catch( IOException e )
+                    {
+                        Log.w("Can't dereference object " + objectNumber + " " + generationNumber +
+                                ": " + e.getMessage(), PDFBox.LOG_TAG);
+                    }
+                    finally
+                    {
+                        // only try once, a missing or broken object stays null
+                        parser = null;
+                    }
+                }
+            }
+        }
         return baseObject;
     }
     
+    /**
+     * Sets the parser which loads the encapsulated object the first time
+     * {@link #getObject()} is called. The parser is ignored if the object
+     * has been set already.
+     *
+     * @param objectParser the parser, or null to disable lazy loading
+     */
+    public void setParser( ICOSParser objectParser )
+    {
+        if( baseObject == null )
+        {
+            parser = objectParser;
+        }
+    }
+    
+    /**
+     * Sets the document whose pool contains this object.
+     *
+     * @param doc The document.
+     */
+    void setDocument( COSDocument doc )
+    {
+        document = doc;
+    }
+    
+    /**
+     * Returns true if the encapsulated object is available without parsing.
+     *
+     * @return true if the object has been loaded already.
+     */
+    public boolean isLoaded()
+    {
+        return baseObject != null || parser == null;
+    }
+    
     /** Getter for property objectNumber.
      * @return Value of property objectNumber.
      */
@@ -109,6 +193,14 @@ public class COSObject extends COSBase {
         objectNumber = objectNum;
     }
     
+    /** Getter for property generationNumber.
+     * @return Value of property generationNumber.
+     */
+    public COSInteger getGenerationNumber()
+    {
+        return generationNumber;
+    }
+    
     /** Setter for property generationNumber.
      * @param generationNumberValue New value of property generationNumber.
      */
@@ -127,9 +219,10 @@ public class COSObject extends COSBase {
     public COSBase getItem( COSName key )
     {
         COSBase retval =null;
-        if( baseObject instanceof COSDictionary )
+        COSBase object = getObject();
+        if( object instanceof COSDictionary )
         {
-            retval = ((COSDictionary)baseObject).getItem( key );
+            retval = ((COSDictionary)object).getItem( key );
         }
         return retval;
     }
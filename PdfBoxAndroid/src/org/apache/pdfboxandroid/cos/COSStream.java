@@ -3,15 +3,21 @@ package org.apache.pdfboxandroid.cos;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import org.apache.pdfboxandroid.PDFBox;
+import org.apache.pdfboxandroid.exceptions.COSVisitorException;
 import org.apache.pdfboxandroid.filter.Filter;
 import org.apache.pdfboxandroid.filter.FilterManager;
 import org.apache.pdfboxandroid.io.RandomAccess;
 import org.apache.pdfboxandroid.io.RandomAccessFileInputStream;
 import org.apache.pdfboxandroid.io.RandomAccessFileOutputStream;
+import org.apache.pdfboxandroid.io.ScratchSpaceManager;
+
+import android.util.Log;
 
 /**
  * This class represents a stream object in a PDF document.
@@ -22,6 +28,12 @@ import org.apache.pdfboxandroid.io.RandomAccessFileOutputStream;
 public class COSStream extends COSDictionary {
 	private static final int BUFFER_SIZE=16384;
 	
+	/**
+	 * System property to throw an exception if a stream can't be decoded completely
+	 * instead of keeping the data decoded up to the error.
+	 */
+	public static final String PROP_STRICT_DECODE = "org.apache.pdfboxandroid.cosStream.strictDecode";
+	
 	private RandomAccess file;
 	
 	/**
@@ -34,6 +46,35 @@ public class COSStream extends COSDictionary {
      */
     private RandomAccessFileOutputStream unFilteredStream;
     
+    private boolean tolerantDecode = !Boolean.getBoolean( PROP_STRICT_DECODE );
+    
+    /**
+     * The number of bytes kept from a stream which could only be decoded partially,
+     * -1 if the stream was decoded completely.
+     */
+    private long salvagedLength = -1;
+    
+    /**
+     * The manager of the scratch file of the document, may be null.
+     */
+    private ScratchSpaceManager scratchSpace;
+    
+    /**
+     * The cache of the document managing the decoded data, may be null.
+     */
+    private DecodedStreamCache decodedStreamCache;
+    
+    /**
+     * The encoded data of another stream which is read but never written or
+     * released by this stream, null if all data is in the own scratch file.
+     */
+    private RandomAccessFileOutputStream sharedData;
+    
+    /**
+     * The file containing the shared data.
+     */
+    private RandomAccess sharedFile;
+    
     /**
      * Constructor.  Creates a new stream with an empty dictionary.
      *
@@ -70,10 +111,19 @@ public class COSStream extends COSDictionary {
      */
     public OutputStream createFilteredStream( COSBase expectedLength ) throws IOException
     {
-        filteredStream = new RandomAccessFileOutputStream( file );
+        beforeChange();
+        long lengthHint = expectedLength instanceof COSNumber ? ((COSNumber)expectedLength).longValue() : -1;
+        RandomAccessFileOutputStream newStream = createScratchStream( lengthHint );
+        OutputStream out = new ReplacingOutputStream( newStream, filteredStream, unFilteredStream );
+        if( decodedStreamCache != null )
+        {
+            decodedStreamCache.remove( this );
+        }
+        filteredStream = newStream;
         filteredStream.setExpectedLength( expectedLength );
         unFilteredStream = null;
-        return new BufferedOutputStream( filteredStream, BUFFER_SIZE );
+        salvagedLength = -1;
+        return out;
     }
     
     /**
@@ -92,11 +142,34 @@ public class COSStream extends COSDictionary {
         long position = filteredStream.getPosition();
         long length = filteredStream.getLength();
 
-        RandomAccessFileInputStream input =
-            new RandomAccessFileInputStream( file, position, length );
+        InputStream input = new RandomAccessFileInputStream( getFile( filteredStream ), position, length );
+        if( scratchSpace != null && filteredStream != sharedData )
+        {
+            input = new ScratchDataInputStream( input, filteredStream );
+        }
         return new BufferedInputStream( input, BUFFER_SIZE );
     }
     
+    /**
+     * This will get the stream with all of the filters applied without buffering,
+     * to copy the encoded data as it is, e.g. when the document is written. The
+     * data read from the parsed document is returned without being touched, only
+     * changed data is encoded first.
+     *
+     * @return the bytes of the physical (encoded) stream
+     *
+     * @throws IOException when encoding causes an exception
+     */
+    public RandomAccessFileInputStream getRawFilteredStream() throws IOException
+    {
+        if( filteredStream == null )
+        {
+            doEncode();
+        }
+        return new RandomAccessFileInputStream( getFile( filteredStream ),
+                filteredStream.getPosition(), filteredStream.getLength() );
+    }
+    
     /**
      * This will encode the logical byte stream applying all of the filters to the stream.
      *
@@ -155,11 +228,24 @@ public class COSStream extends COSDictionary {
         Filter filter = manager.getFilter( filterName );
         InputStream input;
 
+        RandomAccessFileOutputStream decoded = filteredStream;
         input = new BufferedInputStream(
-            new RandomAccessFileInputStream( file, filteredStream.getPosition(),
-                                                   filteredStream.getLength() ), BUFFER_SIZE );
-        filteredStream = new RandomAccessFileOutputStream( file );
-        filter.encode( input, filteredStream, this, filterIndex );
+            new RandomAccessFileInputStream( getFile( decoded ), decoded.getPosition(),
+                                                   decoded.getLength() ), BUFFER_SIZE );
+        filteredStream = createScratchStream( -1 );
+        try
+        {
+            filter.encode( input, filteredStream, this, filterIndex );
+        }
+        finally
+        {
+            filteredStream.close();
+            if( decoded != unFilteredStream )
+            {
+                // the output of the previous filter isn't needed anymore
+                releaseScratchStream( decoded );
+            }
+        }
     }
     
     /**
@@ -175,6 +261,14 @@ public class COSStream extends COSDictionary {
         if( unFilteredStream == null )
         {
             doDecode();
+            if( isDecodedDataCacheable() )
+            {
+                decodedStreamCache.add( this, unFilteredStream.getLengthWritten() );
+            }
+        }
+        else if( decodedStreamCache != null )
+        {
+            decodedStreamCache.touch( this );
         }
 
         //if unFilteredStream is still null then this stream has not been
@@ -183,8 +277,11 @@ public class COSStream extends COSDictionary {
         {
             long position = unFilteredStream.getPosition();
             long length = unFilteredStream.getLength();
-            RandomAccessFileInputStream input =
-                new RandomAccessFileInputStream( file, position, length );
+            InputStream input = new RandomAccessFileInputStream( getFile( unFilteredStream ), position, length );
+            if( scratchSpace != null && unFilteredStream != sharedData )
+            {
+                input = new ScratchDataInputStream( input, unFilteredStream );
+            }
             retval = new BufferedInputStream( input, BUFFER_SIZE );
         }
         else
@@ -219,6 +316,12 @@ public class COSStream extends COSDictionary {
     {
 // FIXME: We shouldn't keep the same reference?
         unFilteredStream = filteredStream;
+        salvagedLength = -1;
+        if( unFilteredStream == null )
+        {
+            //there is no data to decode
+            return;
+        }
 
         COSBase filters = getFilters();
         if( filters == null )
@@ -237,6 +340,11 @@ public class COSStream extends COSDictionary {
                 COSName filterName = (COSName)filterArray.get( i );
                 doDecode( filterName, i );
             }
+            if( salvagedLength != -1 )
+            {
+                // the partial data was passed through the remaining filters
+                salvagedLength = unFilteredStream.getLengthWritten();
+            }
         }
         else
         {
@@ -256,71 +364,258 @@ public class COSStream extends COSDictionary {
     {
         FilterManager manager = getFilterManager();
         Filter filter = manager.getFilter( filterName );
-        InputStream input;
 
-        boolean done = false;
-        IOException exception = null;
-        long position = unFilteredStream.getPosition();
-        long length = unFilteredStream.getLength();
-        // in case we need it later
-        long writtenLength = unFilteredStream.getLengthWritten();  
+        RandomAccessFileOutputStream encoded = unFilteredStream;
+        long position = encoded.getPosition();
+        // never read beyond the data which was actually written, the declared
+        // length of a damaged stream may be too large
+        long length = Math.min( encoded.getLength(), encoded.getLengthWritten() );
 
-        if( length == 0 )
+        unFilteredStream = createScratchStream( -1 );
+        try
         {
             //if the length is zero then don't bother trying to decode
             //some filters don't work when attempting to decode
             //with a zero length stream.  See zlib_error_01.pdf
-            unFilteredStream = new RandomAccessFileOutputStream( file );
-            done = true;
+            if( length > 0 )
+            {
+                decodeSinglePass( filter, filterName, filterIndex, getFile( encoded ), position, length );
+            }
         }
-        else
+        finally
         {
-            //ok this is a simple hack, sometimes we read a couple extra
-            //bytes that shouldn't be there, so we encounter an error we will just
-            //try again with one less byte.
-            for( int tryCount=0; !done && tryCount<5; tryCount++ )
+            unFilteredStream.close();
+            if( encoded != filteredStream )
             {
-                try
-                {
-                    input = new BufferedInputStream(
-                        new RandomAccessFileInputStream( file, position, length ), BUFFER_SIZE );
-                    unFilteredStream = new RandomAccessFileOutputStream( file );
-                    filter.decode( input, unFilteredStream, this, filterIndex );
-                    done = true;
-                }
-                catch( IOException io )
-                {
-                    length--;
-                    exception = io;
-                }
+                // the output of the previous filter isn't needed anymore
+                releaseScratchStream( encoded );
+            }
+        }
+    }
+    
+    /**
+     * Decodes the given part of the scratch file into the current unfiltered stream.
+     * The data is decoded in a single pass, in tolerant mode everything written
+     * before an error occurs is kept.
+     */
+    private void decodeSinglePass( Filter filter, COSName filterName, int filterIndex, RandomAccess source,
+        long position, long length ) throws IOException
+    {
+        InputStream input = new BufferedInputStream(
+            new RandomAccessFileInputStream( source, position, length ), BUFFER_SIZE );
+        try
+        {
+            filter.decode( input, unFilteredStream, this, filterIndex );
+        }
+        catch( IOException exception )
+        {
+            if( !tolerantDecode )
+            {
+                throw exception;
+            }
+            salvagedLength = unFilteredStream.getLengthWritten();
+            Log.w("Stream could only be decoded partially using " + filterName.getName() +
+                    ", salvaged " + salvagedLength + " bytes: " + exception.getMessage(), PDFBox.LOG_TAG);
+        }
+    }
+    
+    /**
+     * Enables or disables the tolerant decoding of this stream. If enabled a stream which
+     * can't be decoded completely is cut at the first error, otherwise the error is
+     * thrown. Tolerant decoding is enabled unless the system property
+     * {@link #PROP_STRICT_DECODE} is set.
+     *
+     * @param tolerant true to keep the data decoded before an error
+     */
+    public void setTolerantDecode( boolean tolerant )
+    {
+        tolerantDecode = tolerant;
+    }
+    
+    /**
+     * Returns true if a stream which can't be decoded completely is cut at the first error.
+     *
+     * @return true if tolerant decoding is enabled
+     */
+    public boolean isTolerantDecode()
+    {
+        return tolerantDecode;
+    }
+    
+    /**
+     * Returns the number of bytes kept when the stream was decoded in tolerant mode
+     * but one of its filters failed.
+     *
+     * @return the number of salvaged bytes, or -1 if the stream was decoded completely
+     */
+    public long getSalvagedLength()
+    {
+        return salvagedLength;
+    }
+    
+    /**
+     * Sets the managers of the scratch space and of the decoded data of this stream.
+     *
+     * @param manager The scratch space manager of the document this stream belongs to.
+     * @param cache The decoded stream cache of the document this stream belongs to.
+     */
+    void setScratchSpace( ScratchSpaceManager manager, DecodedStreamCache cache )
+    {
+        scratchSpace = manager;
+        decodedStreamCache = cache;
+    }
+    
+    /**
+     * Creates a stream writing to the scratch file. If the document manages the
+     * scratch space the stream reuses free space, otherwise it appends to the file.
+     */
+    private RandomAccessFileOutputStream createScratchStream( long expectedLength ) throws IOException
+    {
+        if( scratchSpace != null )
+        {
+            return scratchSpace.createOutputStream( expectedLength );
+        }
+        return new RandomAccessFileOutputStream( file );
+    }
+    
+    private void releaseScratchStream( RandomAccessFileOutputStream out )
+    {
+        if( scratchSpace != null && out != sharedData )
+        {
+            scratchSpace.release( out );
+        }
+    }
+    
+    /**
+     * Returns the file containing the given data of this stream.
+     */
+    private RandomAccess getFile( RandomAccessFileOutputStream data )
+    {
+        return data == sharedData ? sharedFile : file;
+    }
+    
+    /**
+     * Makes this stream use the encoded data of the given stream, e.g. of the
+     * template a document was created from. The data is only read, never copied,
+     * until new data is written to this stream. The given stream must not be
+     * changed as long as its data is shared, reading it from several threads is safe.
+     *
+     * @param source The stream whose encoded data is shared.
+     *
+     * @throws IOException If the given stream has no encoded data.
+     */
+    public void shareEncodedData( COSStream source ) throws IOException
+    {
+        RandomAccessFileOutputStream data = source.filteredStream;
+        if( data == null )
+        {
+            throw new IOException( "The stream has no encoded data to share" );
+        }
+        if( decodedStreamCache != null )
+        {
+            decodedStreamCache.remove( this );
+        }
+        releaseScratchStream( filteredStream );
+        releaseScratchStream( unFilteredStream );
+        sharedFile = source.getFile( data );
+        sharedData = data;
+        filteredStream = data;
+        unFilteredStream = null;
+        salvagedLength = -1;
+    }
+    
+    
+    /**
+     * Only data decoded from the filtered data can be dropped and decoded again.
+     */
+    private boolean isDecodedDataCacheable()
+    {
+        return decodedStreamCache != null && filteredStream != null &&
+                unFilteredStream != null && unFilteredStream != filteredStream;
+    }
+    
+    /**
+     * Drops the decoded data of this stream on behalf of the cache, it is decoded
+     * again the next time it is needed.
+     */
+    void evictDecodedData()
+    {
+        if( isDecodedDataCacheable() )
+        {
+            releaseScratchStream( unFilteredStream );
+            unFilteredStream = null;
+        }
+    }
+    
+    /**
+     * Output stream for new data of this stream. The replaced data is released when
+     * the stream is closed, so it can still be read while the new data is written.
+     */
+    private final class ReplacingOutputStream extends BufferedOutputStream
+    {
+        private RandomAccessFileOutputStream[] replaced;
+        
+        private ReplacingOutputStream( RandomAccessFileOutputStream out, RandomAccessFileOutputStream... replacedData )
+        {
+            super( out, BUFFER_SIZE );
+            replaced = replacedData;
+        }
+        
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                super.close();
             }
-            if( !done )
+            finally
             {
-                //if no good stream was found then lets try again but with the
-                //length of data that was actually read and not length
-                //defined in the dictionary
-                length = writtenLength;
-                for( int tryCount=0; !done && tryCount<5; tryCount++ )
+                if( replaced != null )
                 {
-                    try
-                    {
-                        input = new BufferedInputStream(
-                            new RandomAccessFileInputStream( file, position, length ), BUFFER_SIZE );
-                        unFilteredStream = new RandomAccessFileOutputStream( file );
-                        filter.decode( input, unFilteredStream, this, filterIndex );
-                        done = true;
-                    }
-                    catch( IOException io )
+                    for( RandomAccessFileOutputStream old : replaced )
                     {
-                        length--;
-                        exception = io;
+                        releaseScratchStream( old );
                     }
+                    replaced = null;
                 }
             }
         }
-        if( !done )
+    }
+    
+    /**
+     * Input stream on the data of this stream in the scratch file which fails if
+     * the data is released while it is being read, as the space may be reused.
+     */
+    private final class ScratchDataInputStream extends FilterInputStream
+    {
+        private final RandomAccessFileOutputStream data;
+        
+        private ScratchDataInputStream( InputStream in, RandomAccessFileOutputStream scratchData )
+        {
+            super( in );
+            data = scratchData;
+        }
+        
+        private void checkReleased() throws IOException
+        {
+            if( !scratchSpace.isLive( data ) )
+            {
+                throw new IOException( "The stream data was released while being read" );
+            }
+        }
+        
+        @Override
+        public int read() throws IOException
+        {
+            checkReleased();
+            return super.read();
+        }
+        
+        @Override
+        public int read( byte[] b, int off, int len ) throws IOException
         {
-            throw exception;
+            checkReleased();
+            return super.read( b, off, len );
         }
     }
     
@@ -343,9 +638,17 @@ public class COSStream extends COSDictionary {
      */
     public OutputStream createUnfilteredStream() throws IOException
     {
-        unFilteredStream = new RandomAccessFileOutputStream( file );
+        beforeChange();
+        RandomAccessFileOutputStream newStream = createScratchStream( -1 );
+        OutputStream out = new ReplacingOutputStream( newStream, filteredStream, unFilteredStream );
+        if( decodedStreamCache != null )
+        {
+            decodedStreamCache.remove( this );
+        }
+        unFilteredStream = newStream;
         filteredStream = null;
-        return new BufferedOutputStream( unFilteredStream, BUFFER_SIZE );
+        salvagedLength = -1;
+        return out;
     }
     
     /**
@@ -357,11 +660,38 @@ public class COSStream extends COSDictionary {
      */
     public void setFilters(COSBase filters) throws IOException
     {
+        if( unFilteredStream == null )
+        {
+            // don't lose stream contents
+            doDecode();
+        }
+        if( decodedStreamCache != null )
+        {
+            // the decoded data becomes the only copy and must not be evicted
+            decodedStreamCache.remove( this );
+        }
+        if( filteredStream != unFilteredStream )
+        {
+            releaseScratchStream( filteredStream );
+        }
         setItem(COSName.FILTER, filters);
         // kill cached filtered streams
         filteredStream = null;
     }
     
+    /**
+     * visitor pattern double dispatch method.
+     *
+     * @param visitor The object to notify when visiting this object.
+     * @return any object, depending on the visitor implementation, or null
+     * @throws COSVisitorException If an error occurs while visiting this object.
+     */
+    @Override
+    public Object accept(ICOSVisitor visitor) throws COSVisitorException
+    {
+        return visitor.visitFromStream(this);
+    }
+
     /**
      * This will get the length of the encoded stream.
      * 
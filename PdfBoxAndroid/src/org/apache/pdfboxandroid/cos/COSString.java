@@ -129,6 +129,19 @@ public class COSString extends COSBase {
         }
     }
     
+    /**
+     * Copy constructor.
+     * 
+     * @param string
+     *            The string to copy.
+     */
+    COSString(COSString string)
+    {
+        this(string.getBytes());
+        forceHexForm = string.forceHexForm;
+        isDictionary = string.isDictionary;
+    }
+    
     /**
      * Explicit constructor for ease of manual PDF construction.
      * 
@@ -0,0 +1,139 @@
+package org.apache.pdfboxandroid.cos;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the decoded data of the streams of a document which lives in
+ * the scratch file. If the decoded data of all streams exceeds the maximum size
+ * the data of the least recently used streams is dropped, it is decoded again
+ * the next time it is needed. The scratch space of dropped data is given back
+ * to the {@link org.apache.pdfboxandroid.io.ScratchSpaceManager} of the document
+ * and reused, so the scratch file doesn't grow when the same streams are decoded
+ * over and over again.
+ */
+public final class DecodedStreamCache {
+	/**
+     * System property to set the default maximum number of decoded bytes kept in the cache.
+     */
+    public static final String PROP_MAX_SIZE = "org.apache.pdfboxandroid.cos.decodedStreamCacheSize";
+
+    /**
+     * Default maximum number of decoded bytes kept in the cache.
+     */
+    public static final long DEFAULT_MAX_SIZE = 16L * 1024 * 1024;
+
+    private long maxSize = Long.getLong( PROP_MAX_SIZE, DEFAULT_MAX_SIZE ).longValue();
+    private long size = 0;
+
+    /**
+     * The cached streams in access order and the number of decoded bytes they hold.
+     */
+    private final LinkedHashMap<COSStream, Long> entries = new LinkedHashMap<COSStream, Long>( 16, 0.75f, true );
+
+    /**
+     * Sets the maximum number of decoded bytes kept in the cache. Streams are
+     * evicted immediately if the cache is larger than the new size.
+     *
+     * @param maxSizeValue The maximum size in bytes.
+     */
+    public synchronized void setMaxSize( long maxSizeValue )
+    {
+        if( maxSizeValue < 0 )
+        {
+            throw new IllegalArgumentException( "Invalid cache size: " + maxSizeValue );
+        }
+        maxSize = maxSizeValue;
+        evict( null );
+    }
+
+    /**
+     * Returns the maximum number of decoded bytes kept in the cache.
+     *
+     * @return The maximum size in bytes.
+     */
+    public synchronized long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of decoded bytes currently held by the cached streams.
+     *
+     * @return The size in bytes.
+     */
+    public synchronized long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the number of streams whose decoded data is currently cached.
+     *
+     * @return The number of streams.
+     */
+    public synchronized int getStreamCount()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Adds the freshly decoded data of the given stream and evicts the least
+     * recently used streams if the cache is full.
+     *
+     * @param stream The decoded stream.
+     * @param length The number of decoded bytes.
+     */
+    synchronized void add( COSStream stream, long length )
+    {
+        Long old = entries.put( stream, Long.valueOf( length ) );
+        if( old != null )
+        {
+            size -= old.longValue();
+        }
+        size += length;
+        evict( stream );
+    }
+
+    /**
+     * Marks the given stream as the most recently used one.
+     *
+     * @param stream The accessed stream.
+     */
+    synchronized void touch( COSStream stream )
+    {
+        entries.get( stream );
+    }
+
+    /**
+     * Removes the given stream from the cache without releasing its data.
+     *
+     * @param stream The stream to be removed.
+     */
+    synchronized void remove( COSStream stream )
+    {
+        Long length = entries.remove( stream );
+        if( length != null )
+        {
+            size -= length.longValue();
+        }
+    }
+
+    private void evict( COSStream keep )
+    {
+        Iterator<Map.Entry<COSStream, Long>> iter = entries.entrySet().iterator();
+        while( size > maxSize && iter.hasNext() )
+        {
+            Map.Entry<COSStream, Long> entry = iter.next();
+            COSStream stream = entry.getKey();
+            if( stream == keep )
+            {
+                continue;
+            }
+            iter.remove();
+            size -= entry.getValue().longValue();
+            stream.evictDecodedData();
+        }
+    }
+}
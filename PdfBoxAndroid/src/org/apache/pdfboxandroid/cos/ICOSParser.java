@@ -0,0 +1,27 @@
+package org.apache.pdfboxandroid.cos;
+
+import java.io.IOException;
+
+/**
+ * An interface for parsers which load the objects of a document on demand,
+ * the first time they are dereferenced.
+ */
+public interface ICOSParser {
+	/**
+     * Parses the given indirect object from the underlying source and sets it
+     * as the encapsulated object of the given proxy.
+     *
+     * @param obj The indirect object to be loaded.
+     * @return The parsed object or null if the object can not be found.
+     * @throws IOException If there is an error while parsing the object.
+     */
+    public COSBase dereferenceCOSObject( COSObject obj ) throws IOException;
+
+    /**
+     * Releases the source the objects are loaded from. Objects which have not
+     * been dereferenced yet can not be loaded afterwards.
+     *
+     * @throws IOException If there is an error closing the source.
+     */
+    public void close() throws IOException;
+}
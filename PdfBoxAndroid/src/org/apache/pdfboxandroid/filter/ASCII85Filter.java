@@ -0,0 +1,144 @@
+package org.apache.pdfboxandroid.filter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.pdfboxandroid.cos.COSDictionary;
+
+/**
+ * This is the used for the ASCII85Decode filter.
+ */
+public class ASCII85Filter implements Filter {
+	private static final int OFFSET = '!';
+
+    private static final int MAX_LINE_LENGTH = 72;
+
+    private static final long[] POWERS_OF_85 = { 85L * 85 * 85 * 85, 85L * 85 * 85, 85L * 85, 85L, 1L };
+
+    /**
+     * {@inheritDoc}
+     */
+    public void decode( InputStream compressedData, OutputStream result, COSDictionary options, int filterIndex )
+        throws IOException
+    {
+        int[] group = new int[ 5 ];
+        int count = 0;
+        int c;
+        while( ( c = compressedData.read() ) != -1 )
+        {
+            if( c == '~' )
+            {
+                // end of data marker "~>"
+                break;
+            }
+            if( c == 'z' && count == 0 )
+            {
+                result.write( 0 );
+                result.write( 0 );
+                result.write( 0 );
+                result.write( 0 );
+                continue;
+            }
+            if( c < '!' || c > 'u' )
+            {
+                // whitespace and other garbage is ignored
+                continue;
+            }
+            group[ count++ ] = c - OFFSET;
+            if( count == 5 )
+            {
+                writeGroup( group, 5, result );
+                count = 0;
+            }
+        }
+        if( count > 1 )
+        {
+            // pad the incomplete group with the highest digit
+            for( int i = count; i < 5; i++ )
+            {
+                group[ i ] = 'u' - OFFSET;
+            }
+            writeGroup( group, count, result );
+        }
+        result.flush();
+    }
+
+    /**
+     * Writes the first count-1 bytes of the value of the given base 85 group.
+     */
+    private static void writeGroup( int[] group, int count, OutputStream result ) throws IOException
+    {
+        long value = 0;
+        for( int i = 0; i < 5; i++ )
+        {
+            value += group[ i ] * POWERS_OF_85[ i ];
+        }
+        if( value > 0xffffffffL )
+        {
+            throw new IOException( "Invalid data in Ascii85 stream" );
+        }
+        for( int i = 0; i < count - 1; i++ )
+        {
+            result.write( (int)( value >>> ( 24 - 8 * i ) ) & 0xff );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void encode( InputStream rawData, OutputStream result, COSDictionary options, int filterIndex )
+        throws IOException
+    {
+        byte[] encoded = new byte[ 5 ];
+        int lineLength = 0;
+        long value = 0;
+        int count = 0;
+        int b;
+        while( ( b = rawData.read() ) != -1 )
+        {
+            value = ( value << 8 ) | b;
+            count++;
+            if( count == 4 )
+            {
+                if( value == 0 )
+                {
+                    result.write( 'z' );
+                    lineLength++;
+                }
+                else
+                {
+                    encodeGroup( value, encoded );
+                    result.write( encoded, 0, 5 );
+                    lineLength += 5;
+                }
+                if( lineLength >= MAX_LINE_LENGTH )
+                {
+                    result.write( '\n' );
+                    lineLength = 0;
+                }
+                value = 0;
+                count = 0;
+            }
+        }
+        if( count > 0 )
+        {
+            // pad with zeros and write count + 1 characters
+            value <<= 8 * ( 4 - count );
+            encodeGroup( value, encoded );
+            result.write( encoded, 0, count + 1 );
+        }
+        result.write( '~' );
+        result.write( '>' );
+        result.flush();
+    }
+
+    private static void encodeGroup( long value, byte[] encoded )
+    {
+        for( int i = 4; i >= 0; i-- )
+        {
+            encoded[ i ] = (byte)( value % 85 + OFFSET );
+            value /= 85;
+        }
+    }
+}
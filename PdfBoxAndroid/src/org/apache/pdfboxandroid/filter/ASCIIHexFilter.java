@@ -0,0 +1,103 @@
+package org.apache.pdfboxandroid.filter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.pdfboxandroid.PDFBox;
+import org.apache.pdfboxandroid.cos.COSDictionary;
+
+import android.util.Log;
+
+/**
+ * This is the used for the ASCIIHexDecode filter.
+ */
+public class ASCIIHexFilter implements Filter {
+	/**
+     * Lookup table for the value of a hex digit, -1 for other characters.
+     */
+    private static final int[] REVERSE_HEX = new int[ 128 ];
+
+    private static final byte[] HEX_DIGITS =
+        { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+    static
+    {
+        for( int i = 0; i < REVERSE_HEX.length; i++ )
+        {
+            REVERSE_HEX[i] = -1;
+        }
+        for( int i = 0; i < 10; i++ )
+        {
+            REVERSE_HEX['0' + i] = i;
+        }
+        for( int i = 0; i < 6; i++ )
+        {
+            REVERSE_HEX['A' + i] = 10 + i;
+            REVERSE_HEX['a' + i] = 10 + i;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void decode( InputStream compressedData, OutputStream result, COSDictionary options, int filterIndex )
+        throws IOException
+    {
+        int value = -1;
+        int c;
+        while( ( c = compressedData.read() ) != -1 )
+        {
+            if( c == '>' )
+            {
+                break;
+            }
+            if( isWhitespace( c ) )
+            {
+                continue;
+            }
+            int digit = c < 128 ? REVERSE_HEX[c] : -1;
+            if( digit == -1 )
+            {
+                Log.w("Invalid character in ASCIIHexDecode stream: " + c, PDFBox.LOG_TAG);
+                continue;
+            }
+            if( value == -1 )
+            {
+                value = digit << 4;
+            }
+            else
+            {
+                result.write( value + digit );
+                value = -1;
+            }
+        }
+        if( value != -1 )
+        {
+            // an odd number of digits, the missing last digit is 0
+            result.write( value );
+        }
+        result.flush();
+    }
+
+    private static boolean isWhitespace( int c )
+    {
+        return c == 0 || c == 9 || c == 10 || c == 12 || c == 13 || c == 32;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void encode( InputStream rawData, OutputStream result, COSDictionary options, int filterIndex )
+        throws IOException
+    {
+        int byteRead;
+        while( ( byteRead = rawData.read() ) != -1 )
+        {
+            result.write( HEX_DIGITS[ byteRead >> 4 ] );
+            result.write( HEX_DIGITS[ byteRead & 0x0f ] );
+        }
+        result.write( '>' );
+        result.flush();
+    }
+}
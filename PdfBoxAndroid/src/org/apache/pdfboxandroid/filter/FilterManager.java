@@ -1,9 +1,13 @@
 package org.apache.pdfboxandroid.filter;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.pdfboxandroid.cos.COSArray;
+import org.apache.pdfboxandroid.cos.COSBase;
+import org.apache.pdfboxandroid.cos.COSDictionary;
 import org.apache.pdfboxandroid.cos.COSName;
 
 /**
@@ -15,6 +19,50 @@ import org.apache.pdfboxandroid.cos.COSName;
 public class FilterManager {
 	private Map<COSName, Filter> filters = new HashMap<COSName, Filter>();
 	
+	/**
+     * Constructor, registers the standard filters.
+     */
+    public FilterManager()
+    {
+        FlateFilter flateFilter = new FlateFilter();
+        ASCIIHexFilter asciiHexFilter = new ASCIIHexFilter();
+        ASCII85Filter ascii85Filter = new ASCII85Filter();
+        LZWFilter lzwFilter = new LZWFilter();
+        RunLengthDecodeFilter runLengthFilter = new RunLengthDecodeFilter();
+
+        addFilter( COSName.FLATE_DECODE, flateFilter );
+        addFilter( COSName.FLATE_DECODE_ABBREVIATION, flateFilter );
+        addFilter( COSName.ASCII_HEX_DECODE, asciiHexFilter );
+        addFilter( COSName.ASCII_HEX_DECODE_ABBREVIATION, asciiHexFilter );
+        addFilter( COSName.ASCII85_DECODE, ascii85Filter );
+        addFilter( COSName.ASCII85_DECODE_ABBREVIATION, ascii85Filter );
+        addFilter( COSName.LZW_DECODE, lzwFilter );
+        addFilter( COSName.LZW_DECODE_ABBREVIATION, lzwFilter );
+        addFilter( COSName.RUN_LENGTH_DECODE, runLengthFilter );
+        addFilter( COSName.RUN_LENGTH_DECODE_ABBREVIATION, runLengthFilter );
+    }
+    
+    /**
+     * This will get all of the filters that are available in the system.
+     *
+     * @return All of the filters available in the system.
+     */
+    public Collection<Filter> getFilters()
+    {
+        return filters.values();
+    }
+    
+    /**
+     * This will add an available filter.
+     *
+     * @param filterName The name of the filter.
+     * @param filter The filter to use.
+     */
+    public void addFilter( COSName filterName, Filter filter )
+    {
+        filters.put( filterName, filter );
+    }
+	
 	/**
      * This will get a filter by name.
      *
@@ -34,4 +82,35 @@ public class FilterManager {
 
         return filter;
     }
+    
+    /**
+     * Returns the decode parameters of the filter with the given index.
+     * /DecodeParms (or /DP) is either a single dictionary or an array with an
+     * entry for each filter.
+     *
+     * @param options The stream dictionary.
+     * @param filterIndex The index of the filter.
+     * @return The decode parameters or null if there are none.
+     */
+    static COSDictionary getDecodeParams( COSDictionary options, int filterIndex )
+    {
+        COSBase params = options.getDictionaryObject( COSName.DECODE_PARMS, COSName.DP );
+        if( params instanceof COSDictionary )
+        {
+            return (COSDictionary)params;
+        }
+        else if( params instanceof COSArray )
+        {
+            COSArray paramsArray = (COSArray)params;
+            if( filterIndex < paramsArray.size() )
+            {
+                COSBase entry = paramsArray.getObject( filterIndex );
+                if( entry instanceof COSDictionary )
+                {
+                    return (COSDictionary)entry;
+                }
+            }
+        }
+        return null;
+    }
 }
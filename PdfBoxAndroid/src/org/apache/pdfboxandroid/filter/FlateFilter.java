@@ -0,0 +1,167 @@
+package org.apache.pdfboxandroid.filter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.pdfboxandroid.cos.COSDictionary;
+
+/**
+ * This is the used for the FlateDecode filter. Each thread reuses a single
+ * Inflater and Deflater instead of allocating new native zlib state for
+ * every stream.
+ */
+public class FlateFilter implements Filter {
+	/**
+     * System property to set the default compression level used by {@link #encode}.
+     */
+    public static final String PROP_DEFLATE_LEVEL = "org.apache.pdfboxandroid.filter.deflatelevel";
+
+    private static final int BUFFER_SIZE = 16384;
+
+    private static volatile int compressionLevel =
+            Integer.getInteger( PROP_DEFLATE_LEVEL, Deflater.DEFAULT_COMPRESSION ).intValue();
+
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>()
+    {
+        @Override
+        protected Inflater initialValue()
+        {
+            return new Inflater();
+        }
+    };
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>()
+    {
+        @Override
+        protected Deflater initialValue()
+        {
+            return new Deflater( compressionLevel );
+        }
+    };
+
+    /**
+     * Sets the compression level used when encoding streams.
+     *
+     * @param level The compression level from 0 (no compression) to 9 (best compression),
+     * or -1 for the default level of zlib.
+     */
+    public static void setCompressionLevel( int level )
+    {
+        if( level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION )
+        {
+            throw new IllegalArgumentException( "Invalid compression level: " + level );
+        }
+        compressionLevel = level;
+    }
+
+    /**
+     * Returns the compression level used when encoding streams.
+     *
+     * @return The compression level.
+     */
+    public static int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void decode( InputStream compressedData, OutputStream result, COSDictionary options, int filterIndex )
+        throws IOException
+    {
+        COSDictionary decodeParams = FilterManager.getDecodeParams( options, filterIndex );
+        OutputStream out = Predictor.wrapPredictor( result, decodeParams );
+        decompress( compressedData, out );
+        Predictor.finish( out );
+        result.flush();
+    }
+
+    /**
+     * Inflates the given data using the pooled inflater of the current thread.
+     *
+     * @throws EOFException If the data ends before the end of the deflate data.
+     */
+    private void decompress( InputStream in, OutputStream out ) throws IOException
+    {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        byte[] input = new byte[ BUFFER_SIZE ];
+        byte[] output = new byte[ BUFFER_SIZE ];
+        try
+        {
+            while( !inflater.finished() )
+            {
+                if( inflater.needsInput() )
+                {
+                    int read = in.read( input );
+                    if( read == -1 )
+                    {
+                        // the caller decides whether the data inflated so far is kept
+                        throw new EOFException( "FlateFilter: missing end of the deflate data" );
+                    }
+                    inflater.setInput( input, 0, read );
+                }
+                else if( inflater.needsDictionary() )
+                {
+                    throw new IOException( "FlateFilter: preset dictionaries aren't supported" );
+                }
+                int count = inflater.inflate( output );
+                if( count > 0 )
+                {
+                    out.write( output, 0, count );
+                }
+            }
+        }
+        catch( DataFormatException e )
+        {
+            throw new IOException( "FlateFilter: " + e.getMessage() );
+        }
+        finally
+        {
+            inflater.reset();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void encode( InputStream rawData, OutputStream result, COSDictionary options, int filterIndex )
+        throws IOException
+    {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setLevel( compressionLevel );
+        byte[] input = new byte[ BUFFER_SIZE ];
+        byte[] output = new byte[ BUFFER_SIZE ];
+        try
+        {
+            int read;
+            while( ( read = rawData.read( input ) ) != -1 )
+            {
+                deflater.setInput( input, 0, read );
+                while( !deflater.needsInput() )
+                {
+                    int count = deflater.deflate( output );
+                    result.write( output, 0, count );
+                }
+            }
+            deflater.finish();
+            while( !deflater.finished() )
+            {
+                int count = deflater.deflate( output );
+                result.write( output, 0, count );
+            }
+            result.flush();
+        }
+        finally
+        {
+            deflater.reset();
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package org.apache.pdfboxandroid.filter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.pdfboxandroid.PDFBox;
+import org.apache.pdfboxandroid.cos.COSDictionary;
+import org.apache.pdfboxandroid.cos.COSName;
+
+import android.util.Log;
+
+/**
+ * This is the used for the LZWDecode filter. The code table is kept in
+ * primitive arrays, every entry is stored as its prefix code and last byte.
+ */
+public class LZWFilter implements Filter {
+	/**
+     * The LZW clear table code.
+     */
+    public static final int CLEAR_TABLE = 256;
+
+    /**
+     * The LZW end of data code.
+     */
+    public static final int EOD = 257;
+
+    private static final int FIRST_FREE_CODE = 258;
+
+    private static final int MAX_TABLE_SIZE = 4096;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void decode( InputStream compressedData, OutputStream result, COSDictionary options, int filterIndex )
+        throws IOException
+    {
+        COSDictionary decodeParams = FilterManager.getDecodeParams( options, filterIndex );
+        int earlyChange = 1;
+        if( decodeParams != null )
+        {
+            earlyChange = decodeParams.getInt( COSName.EARLY_CHANGE, 1 );
+            if( earlyChange != 0 && earlyChange != 1 )
+            {
+                earlyChange = 1;
+            }
+        }
+        OutputStream out = Predictor.wrapPredictor( result, decodeParams );
+        doLZWDecode( compressedData, out, earlyChange );
+        Predictor.finish( out );
+        result.flush();
+    }
+
+    private void doLZWDecode( InputStream encoded, OutputStream decoded, int earlyChange ) throws IOException
+    {
+        int[] prefix = new int[ MAX_TABLE_SIZE ];
+        byte[] suffix = new byte[ MAX_TABLE_SIZE ];
+        byte[] firstByte = new byte[ MAX_TABLE_SIZE ];
+        int[] length = new int[ MAX_TABLE_SIZE ];
+        byte[] stack = new byte[ MAX_TABLE_SIZE ];
+        for( int i = 0; i < 256; i++ )
+        {
+            suffix[ i ] = (byte)i;
+            firstByte[ i ] = (byte)i;
+            length[ i ] = 1;
+        }
+
+        BitReader in = new BitReader( encoded );
+        int nextCode = FIRST_FREE_CODE;
+        int codeLength = 9;
+        int prevCode = -1;
+        int code;
+        while( ( code = in.readBits( codeLength ) ) != -1 )
+        {
+            if( code == CLEAR_TABLE )
+            {
+                nextCode = FIRST_FREE_CODE;
+                codeLength = 9;
+                prevCode = -1;
+                continue;
+            }
+            if( code == EOD )
+            {
+                break;
+            }
+            if( prevCode == -1 )
+            {
+                if( code > 255 )
+                {
+                    throw new IOException( "Invalid first LZW code " + code );
+                }
+                decoded.write( code );
+                prevCode = code;
+                continue;
+            }
+            byte newByte;
+            if( code < nextCode )
+            {
+                newByte = firstByte[ code ];
+                writeEntry( code, prefix, suffix, length, stack, decoded );
+            }
+            else if( code == nextCode )
+            {
+                // the entry being defined by this code
+                newByte = firstByte[ prevCode ];
+                writeEntry( prevCode, prefix, suffix, length, stack, decoded );
+                decoded.write( newByte );
+            }
+            else
+            {
+                throw new IOException( "Invalid LZW code " + code + ", next code is " + nextCode );
+            }
+            if( nextCode < MAX_TABLE_SIZE )
+            {
+                prefix[ nextCode ] = prevCode;
+                suffix[ nextCode ] = newByte;
+                firstByte[ nextCode ] = firstByte[ prevCode ];
+                length[ nextCode ] = length[ prevCode ] + 1;
+                nextCode++;
+            }
+            codeLength = calculateChunk( nextCode, earlyChange );
+            prevCode = code;
+        }
+        decoded.flush();
+    }
+
+    /**
+     * Writes the byte sequence of the given table entry.
+     */
+    private static void writeEntry( int code, int[] prefix, byte[] suffix, int[] length, byte[] stack,
+            OutputStream out ) throws IOException
+    {
+        int len = length[ code ];
+        int c = code;
+        for( int i = len - 1; i >= 0; i-- )
+        {
+            stack[ i ] = suffix[ c ];
+            c = prefix[ c ];
+        }
+        out.write( stack, 0, len );
+    }
+
+    /**
+     * Calculates the code length used for the next code.
+     *
+     * @param tabSize the size of the code table
+     * @param earlyChange 1 if the code length is increased one code early
+     * @return the number of bits of the next code
+     */
+    private static int calculateChunk( int tabSize, int earlyChange )
+    {
+        if( tabSize >= 2048 - earlyChange )
+        {
+            return 12;
+        }
+        if( tabSize >= 1024 - earlyChange )
+        {
+            return 11;
+        }
+        if( tabSize >= 512 - earlyChange )
+        {
+            return 10;
+        }
+        return 9;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void encode( InputStream rawData, OutputStream result, COSDictionary options, int filterIndex )
+        throws IOException
+    {
+        Map<Integer, Integer> codeTable = new HashMap<Integer, Integer>();
+        BitWriter out = new BitWriter( result );
+        out.writeBits( CLEAR_TABLE, 9 );
+        int nextCode = FIRST_FREE_CODE;
+        int prefixCode = -1;
+        int b;
+        while( ( b = rawData.read() ) != -1 )
+        {
+            if( prefixCode == -1 )
+            {
+                prefixCode = b;
+                continue;
+            }
+            Integer key = Integer.valueOf( ( prefixCode << 8 ) | b );
+            Integer code = codeTable.get( key );
+            if( code != null )
+            {
+                prefixCode = code.intValue();
+                continue;
+            }
+            out.writeBits( prefixCode, calculateChunk( nextCode - 1, 1 ) );
+            codeTable.put( key, Integer.valueOf( nextCode++ ) );
+            prefixCode = b;
+            if( nextCode >= MAX_TABLE_SIZE - 1 )
+            {
+                // table is full, start over
+                out.writeBits( CLEAR_TABLE, calculateChunk( nextCode - 1, 1 ) );
+                codeTable.clear();
+                nextCode = FIRST_FREE_CODE;
+            }
+        }
+        if( prefixCode != -1 )
+        {
+            out.writeBits( prefixCode, calculateChunk( nextCode - 1, 1 ) );
+        }
+        out.writeBits( EOD, calculateChunk( nextCode, 1 ) );
+        out.flush();
+        result.flush();
+    }
+
+    /**
+     * Reads codes of variable bit length, most significant bit first.
+     */
+    private static final class BitReader
+    {
+        private final InputStream in;
+        private int buffer = 0;
+        private int bitsInBuffer = 0;
+
+        private BitReader( InputStream input )
+        {
+            in = input;
+        }
+
+        private int readBits( int count ) throws IOException
+        {
+            while( bitsInBuffer < count )
+            {
+                int b = in.read();
+                if( b == -1 )
+                {
+                    if( bitsInBuffer > 0 && buffer != 0 )
+                    {
+                        Log.w("Premature end of LZW stream", PDFBox.LOG_TAG);
+                    }
+                    return -1;
+                }
+                buffer = ( buffer << 8 ) | b;
+                bitsInBuffer += 8;
+            }
+            int value = ( buffer >> ( bitsInBuffer - count ) ) & ( ( 1 << count ) - 1 );
+            bitsInBuffer -= count;
+            buffer &= ( 1 << bitsInBuffer ) - 1;
+            return value;
+        }
+    }
+
+    /**
+     * Writes codes of variable bit length, most significant bit first.
+     */
+    private static final class BitWriter
+    {
+        private final OutputStream out;
+        private int buffer = 0;
+        private int bitsInBuffer = 0;
+
+        private BitWriter( OutputStream output )
+        {
+            out = output;
+        }
+
+        private void writeBits( int value, int count ) throws IOException
+        {
+            buffer = ( buffer << count ) | value;
+            bitsInBuffer += count;
+            while( bitsInBuffer >= 8 )
+            {
+                out.write( ( buffer >> ( bitsInBuffer - 8 ) ) & 0xff );
+                bitsInBuffer -= 8;
+                buffer &= ( 1 << bitsInBuffer ) - 1;
+            }
+        }
+
+        private void flush() throws IOException
+        {
+            if( bitsInBuffer > 0 )
+            {
+                out.write( ( buffer << ( 8 - bitsInBuffer ) ) & 0xff );
+                bitsInBuffer = 0;
+                buffer = 0;
+            }
+        }
+    }
+}
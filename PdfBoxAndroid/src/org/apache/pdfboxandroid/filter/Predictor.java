@@ -0,0 +1,292 @@
+package org.apache.pdfboxandroid.filter;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.pdfboxandroid.cos.COSDictionary;
+import org.apache.pdfboxandroid.cos.COSName;
+
+/**
+ * Helper class to undo the TIFF and PNG predictors which may be applied to
+ * the data of FlateDecode and LZWDecode streams.
+ */
+public final class Predictor {
+	private Predictor()
+	{
+	}
+
+	/**
+     * Wraps the given stream so that the data written to it is decoded using the
+     * predictor given by the decode parameters. If no predictor is specified the
+     * given stream is returned unchanged.
+     *
+     * @param out The stream the decoded data is written to.
+     * @param decodeParams The decode parameters of the filter, may be null.
+     * @return The stream to write the predicted data to. If it isn't the given stream
+     * {@link PredictorOutputStream#finish()} must be called after the last byte.
+     */
+    static OutputStream wrapPredictor( OutputStream out, COSDictionary decodeParams )
+    {
+        if( decodeParams == null )
+        {
+            return out;
+        }
+        int predictor = decodeParams.getInt( COSName.PREDICTOR, 1 );
+        if( predictor <= 1 )
+        {
+            return out;
+        }
+        int colors = Math.min( decodeParams.getInt( COSName.COLORS, 1 ), 32 );
+        int bitsPerComponent = decodeParams.getInt( COSName.BITS_PER_COMPONENT, 8 );
+        int columns = decodeParams.getInt( COSName.COLUMNS, 1 );
+        return new PredictorOutputStream( out, predictor, colors, bitsPerComponent, columns );
+    }
+
+    /**
+     * Finishes the given stream if it was created by {@link #wrapPredictor(OutputStream, COSDictionary)}.
+     *
+     * @param out The stream returned by wrapPredictor.
+     * @throws IOException If there is an error writing the remaining data.
+     */
+    static void finish( OutputStream out ) throws IOException
+    {
+        if( out instanceof PredictorOutputStream )
+        {
+            ((PredictorOutputStream)out).finish();
+        }
+    }
+
+    /**
+     * Decodes a single row of data in place.
+     *
+     * @param predictor The predictor, for PNG predictors the per row algorithm (10-14).
+     * @param colors Number of color components per sample.
+     * @param bitsPerComponent Number of bits per color component.
+     * @param columns Number of samples per row.
+     * @param actline The current row.
+     * @param lastline The previous (already decoded) row, all zero for the first row.
+     */
+    static void decodePredictorRow( int predictor, int colors, int bitsPerComponent, int columns,
+            byte[] actline, byte[] lastline )
+    {
+        if( predictor == 1 )
+        {
+            // no prediction
+            return;
+        }
+        final int bitsPerPixel = colors * bitsPerComponent;
+        final int bytesPerPixel = ( bitsPerPixel + 7 ) / 8;
+        final int rowlength = actline.length;
+        switch( predictor )
+        {
+            case 2:
+                // TIFF predictor
+                if( bitsPerComponent == 8 )
+                {
+                    for( int p = bytesPerPixel; p < rowlength; p++ )
+                    {
+                        actline[p] = (byte)( actline[p] + actline[p - bytesPerPixel] );
+                    }
+                }
+                else if( bitsPerComponent == 16 )
+                {
+                    for( int p = bytesPerPixel; p < rowlength - 1; p += 2 )
+                    {
+                        int sub = ( ( actline[p - bytesPerPixel] & 0xff ) << 8 ) +
+                                ( actline[p - bytesPerPixel + 1] & 0xff );
+                        int raw = ( ( actline[p] & 0xff ) << 8 ) + ( actline[p + 1] & 0xff );
+                        int sum = raw + sub;
+                        actline[p] = (byte)( ( sum >> 8 ) & 0xff );
+                        actline[p + 1] = (byte)( sum & 0xff );
+                    }
+                }
+                else if( bitsPerComponent < 8 )
+                {
+                    decodeTiffSubByteRow( colors, bitsPerComponent, columns, actline );
+                }
+                break;
+            case 10:
+                // PNG NONE
+                break;
+            case 11:
+                // PNG SUB
+                for( int p = bytesPerPixel; p < rowlength; p++ )
+                {
+                    actline[p] = (byte)( actline[p] + actline[p - bytesPerPixel] );
+                }
+                break;
+            case 12:
+                // PNG UP
+                for( int p = 0; p < rowlength; p++ )
+                {
+                    actline[p] = (byte)( actline[p] + lastline[p] );
+                }
+                break;
+            case 13:
+                // PNG AVERAGE
+                for( int p = 0; p < rowlength; p++ )
+                {
+                    int left = p - bytesPerPixel >= 0 ? actline[p - bytesPerPixel] & 0xff : 0;
+                    int up = lastline[p] & 0xff;
+                    actline[p] = (byte)( ( actline[p] & 0xff ) + ( ( left + up ) / 2 ) );
+                }
+                break;
+            case 14:
+                // PNG PAETH
+                for( int p = 0; p < rowlength; p++ )
+                {
+                    int a = p - bytesPerPixel >= 0 ? actline[p - bytesPerPixel] & 0xff : 0;
+                    int b = lastline[p] & 0xff;
+                    int c = p - bytesPerPixel >= 0 ? lastline[p - bytesPerPixel] & 0xff : 0;
+                    int value = a + b - c;
+                    int absa = Math.abs( value - a );
+                    int absb = Math.abs( value - b );
+                    int absc = Math.abs( value - c );
+                    if( absa <= absb && absa <= absc )
+                    {
+                        actline[p] = (byte)( ( actline[p] & 0xff ) + a );
+                    }
+                    else if( absb <= absc )
+                    {
+                        actline[p] = (byte)( ( actline[p] & 0xff ) + b );
+                    }
+                    else
+                    {
+                        actline[p] = (byte)( ( actline[p] & 0xff ) + c );
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * TIFF predictor for components of 1, 2 or 4 bits.
+     */
+    private static void decodeTiffSubByteRow( int colors, int bitsPerComponent, int columns, byte[] actline )
+    {
+        final int mask = ( 1 << bitsPerComponent ) - 1;
+        final int bitsPerPixel = colors * bitsPerComponent;
+        for( int c = 1; c < columns; c++ )
+        {
+            for( int k = 0; k < colors; k++ )
+            {
+                int bitPos = c * bitsPerPixel + k * bitsPerComponent;
+                int prevBitPos = bitPos - bitsPerPixel;
+                int byteIndex = bitPos / 8;
+                int shift = 8 - bitsPerComponent - ( bitPos % 8 );
+                int prevShift = 8 - bitsPerComponent - ( prevBitPos % 8 );
+                if( byteIndex >= actline.length )
+                {
+                    return;
+                }
+                int value = ( actline[byteIndex] >> shift ) & mask;
+                int prev = ( actline[prevBitPos / 8] >> prevShift ) & mask;
+                int sum = ( value + prev ) & mask;
+                actline[byteIndex] = (byte)( ( actline[byteIndex] & ~( mask << shift ) ) | ( sum << shift ) );
+            }
+        }
+    }
+
+    /**
+     * Output stream which collects the written data row by row and writes the
+     * decoded rows to the underlying stream.
+     */
+    static final class PredictorOutputStream extends FilterOutputStream
+    {
+        // for PNG predictors the predictor of each row is given by its first byte
+        private final boolean isPng;
+        private int predictor;
+        private final int colors;
+        private final int bitsPerComponent;
+        private final int columns;
+        private byte[] currentRow;
+        private byte[] lastRow;
+        private int currentRowPos = 0;
+        private boolean predictorRead = false;
+
+        PredictorOutputStream( OutputStream out, int predictor, int colors, int bitsPerComponent, int columns )
+        {
+            super( out );
+            this.predictor = predictor;
+            this.isPng = predictor >= 10;
+            this.colors = colors;
+            this.bitsPerComponent = bitsPerComponent;
+            this.columns = columns;
+            int rowLength = ( colors * bitsPerComponent * columns + 7 ) / 8;
+            currentRow = new byte[ rowLength ];
+            lastRow = new byte[ rowLength ];
+        }
+
+        @Override
+        public void write( int b ) throws IOException
+        {
+            if( isPng && !predictorRead )
+            {
+                // PNG predictor values are stored as 0-4, map them to 10-14
+                predictor = ( b & 0xff ) + 10;
+                predictorRead = true;
+                return;
+            }
+            currentRow[ currentRowPos++ ] = (byte)b;
+            if( currentRowPos == currentRow.length )
+            {
+                flushRow();
+            }
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len ) throws IOException
+        {
+            int end = off + len;
+            int pos = off;
+            while( pos < end )
+            {
+                if( isPng && !predictorRead )
+                {
+                    write( b[ pos++ ] );
+                    continue;
+                }
+                int count = Math.min( end - pos, currentRow.length - currentRowPos );
+                System.arraycopy( b, pos, currentRow, currentRowPos, count );
+                currentRowPos += count;
+                pos += count;
+                if( currentRowPos == currentRow.length )
+                {
+                    flushRow();
+                }
+            }
+        }
+
+        private void flushRow() throws IOException
+        {
+            decodePredictorRow( predictor, colors, bitsPerComponent, columns, currentRow, lastRow );
+            out.write( currentRow, 0, currentRowPos );
+            byte[] tmp = lastRow;
+            lastRow = currentRow;
+            currentRow = tmp;
+            currentRowPos = 0;
+            predictorRead = false;
+        }
+
+        /**
+         * Writes an incomplete last row as it is.
+         *
+         * @throws IOException If there is an error writing the data.
+         */
+        void finish() throws IOException
+        {
+            if( currentRowPos > 0 )
+            {
+                Arrays.fill( currentRow, currentRowPos, currentRow.length, (byte)0 );
+                decodePredictorRow( predictor, colors, bitsPerComponent, columns, currentRow, lastRow );
+                out.write( currentRow, 0, currentRowPos );
+                currentRowPos = 0;
+            }
+            out.flush();
+        }
+    }
+}
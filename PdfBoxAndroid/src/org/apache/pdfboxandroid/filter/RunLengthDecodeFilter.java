@@ -0,0 +1,113 @@
+package org.apache.pdfboxandroid.filter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.pdfboxandroid.cos.COSDictionary;
+
+/**
+ * This is a filter for the RunLengthDecode filter.
+ */
+public class RunLengthDecodeFilter implements Filter {
+	private static final int RUN_LENGTH_EOD = 128;
+
+    /**
+     * The maximum number of bytes of a single run.
+     */
+    private static final int MAX_RUN = 128;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void decode( InputStream compressedData, OutputStream result, COSDictionary options, int filterIndex )
+        throws IOException
+    {
+        int dupAmount;
+        byte[] buffer = new byte[ MAX_RUN ];
+        while( ( dupAmount = compressedData.read() ) != -1 && dupAmount != RUN_LENGTH_EOD )
+        {
+            if( dupAmount <= 127 )
+            {
+                int amountToCopy = dupAmount + 1;
+                int compressedRead = 0;
+                while( compressedRead < amountToCopy )
+                {
+                    int count = compressedData.read( buffer, compressedRead, amountToCopy - compressedRead );
+                    if( count == -1 )
+                    {
+                        break;
+                    }
+                    compressedRead += count;
+                }
+                result.write( buffer, 0, compressedRead );
+                if( compressedRead < amountToCopy )
+                {
+                    break;
+                }
+            }
+            else
+            {
+                int dupByte = compressedData.read();
+                if( dupByte == -1 )
+                {
+                    break;
+                }
+                for( int i = 0; i < 257 - dupAmount; i++ )
+                {
+                    result.write( dupByte );
+                }
+            }
+        }
+        result.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void encode( InputStream rawData, OutputStream result, COSDictionary options, int filterIndex )
+        throws IOException
+    {
+        byte[] literal = new byte[ MAX_RUN ];
+        int literalLength = 0;
+        int previous = rawData.read();
+        while( previous != -1 )
+        {
+            int runLength = 1;
+            int next;
+            while( ( next = rawData.read() ) == previous && runLength < MAX_RUN )
+            {
+                runLength++;
+            }
+            if( runLength > 1 )
+            {
+                if( literalLength > 0 )
+                {
+                    result.write( literalLength - 1 );
+                    result.write( literal, 0, literalLength );
+                    literalLength = 0;
+                }
+                result.write( 257 - runLength );
+                result.write( previous );
+            }
+            else
+            {
+                literal[ literalLength++ ] = (byte)previous;
+                if( literalLength == MAX_RUN )
+                {
+                    result.write( literalLength - 1 );
+                    result.write( literal, 0, literalLength );
+                    literalLength = 0;
+                }
+            }
+            previous = next;
+        }
+        if( literalLength > 0 )
+        {
+            result.write( literalLength - 1 );
+            result.write( literal, 0, literalLength );
+        }
+        result.write( RUN_LENGTH_EOD );
+        result.flush();
+    }
+}
@@ -0,0 +1,580 @@
+package org.apache.pdfboxandroid.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The source the parsers read from. The data is read in blocks into a window
+ * buffer, so that reading, peeking and pushing back a byte only moves an index
+ * into the buffer. A source over a {@link RandomAccessRead} is seekable, seeking
+ * to an offset within the window doesn't read anything.
+ *
+ * Bytes pushed back need not be the bytes which were read, the source then returns
+ * the pushed back bytes like a {@link java.io.PushbackInputStream}. The source
+ * belongs to one parser and isn't synchronized.
+ */
+public class BufferedSource {
+	/**
+     * The default size of the window buffer.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 16384;
+
+    private final InputStream input;
+
+    /**
+     * The input if it supports seek operations, it is read directly then.
+     */
+    private final RandomAccessRead raInput;
+
+    private byte[] buffer;
+
+    /**
+     * The index of the next byte to be read.
+     */
+    private int position = 0;
+
+    /**
+     * The number of valid bytes in the buffer.
+     */
+    private int limit = 0;
+
+    /**
+     * The offset of the first byte of the buffer in the data. The input is always
+     * positioned at bufferOffset + limit.
+     */
+    private long bufferOffset = 0;
+
+    /**
+     * True if the window may contain pushed back bytes which differ from the data.
+     */
+    private boolean pushedBack = false;
+
+    /**
+     * Constructor. The source is seekable if the input implements {@link RandomAccessRead}.
+     *
+     * @param in The input stream.
+     *
+     * @throws IOException If the input is null or its position can't be determined.
+     */
+    public BufferedSource( InputStream in ) throws IOException
+    {
+        this( in, DEFAULT_BUFFER_SIZE );
+    }
+
+    /**
+     * Constructor. The source is seekable if the input implements {@link RandomAccessRead}.
+     *
+     * @param in The input stream.
+     * @param bufferSize The initial size of the window buffer.
+     *
+     * @throws IOException If the input is null or its position can't be determined.
+     */
+    public BufferedSource( InputStream in, int bufferSize ) throws IOException
+    {
+        if( in == null )
+        {
+            throw new IOException( "Error: input was null" );
+        }
+        input = in;
+        raInput = in instanceof RandomAccessRead ? (RandomAccessRead)in : null;
+        buffer = new byte[Math.max( 16, bufferSize )];
+        if( raInput != null )
+        {
+            bufferOffset = raInput.getPosition();
+        }
+    }
+
+    /**
+     * Constructor of a seekable source.
+     *
+     * @param in The random access data, read from its current position.
+     *
+     * @throws IOException If the input is null or its position can't be determined.
+     */
+    public BufferedSource( RandomAccessRead in ) throws IOException
+    {
+        this( in, DEFAULT_BUFFER_SIZE );
+    }
+
+    /**
+     * Constructor of a seekable source.
+     *
+     * @param in The random access data, read from its current position.
+     * @param bufferSize The initial size of the window buffer.
+     *
+     * @throws IOException If the input is null or its position can't be determined.
+     */
+    public BufferedSource( RandomAccessRead in, int bufferSize ) throws IOException
+    {
+        if( in == null )
+        {
+            throw new IOException( "Error: input was null" );
+        }
+        input = null;
+        raInput = in;
+        buffer = new byte[Math.max( 16, bufferSize )];
+        bufferOffset = in.getPosition();
+    }
+
+    /**
+     * Reads from the input into the buffer until at least the given number of
+     * bytes are available or the end of the data is reached. A part of the bytes
+     * already read is kept in front of the current position, so that they can be
+     * pushed back without copying.
+     *
+     * @param count The number of bytes needed.
+     * @return The number of available bytes, less than the given count only at the end of the data.
+     */
+    private int ensureAvailable( int count ) throws IOException
+    {
+        int available = limit - position;
+        if( available >= count )
+        {
+            return available;
+        }
+        if( buffer.length - position < count )
+        {
+            int start = Math.max( 0, position - ( buffer.length >> 3 ) );
+            if( buffer.length - position + start < count )
+            {
+                byte[] newBuffer = new byte[Math.max( buffer.length * 2, position - start + count )];
+                System.arraycopy( buffer, start, newBuffer, 0, limit - start );
+                buffer = newBuffer;
+            }
+            else
+            {
+                System.arraycopy( buffer, start, buffer, 0, limit - start );
+            }
+            bufferOffset += start;
+            position -= start;
+            limit -= start;
+        }
+        while( available < count )
+        {
+            int read = readInput( buffer, limit, buffer.length - limit );
+            if( read <= 0 )
+            {
+                break;
+            }
+            limit += read;
+            available += read;
+        }
+        return available;
+    }
+
+    private int readInput( byte[] b, int off, int len ) throws IOException
+    {
+        return raInput != null ? raInput.read( b, off, len ) : input.read( b, off, len );
+    }
+
+    /**
+     * Reads the next byte.
+     *
+     * @return The next byte or -1 at the end of the data.
+     *
+     * @throws IOException If there is an error reading from the input.
+     */
+    public int read() throws IOException
+    {
+        if( position == limit && ensureAvailable( 1 ) == 0 )
+        {
+            return -1;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    /**
+     * Reads bytes into the given array, the array is filled unless the end of the data is reached.
+     *
+     * @param b The array to fill.
+     * @return The number of bytes read or -1 at the end of the data.
+     *
+     * @throws IOException If there is an error reading from the input.
+     */
+    public int read( byte[] b ) throws IOException
+    {
+        return read( b, 0, b.length );
+    }
+
+    /**
+     * Reads bytes into the given array, the given number of bytes is read unless
+     * the end of the data is reached.
+     *
+     * @param b The array to fill.
+     * @param off The index of the first byte to fill.
+     * @param len The number of bytes to read.
+     * @return The number of bytes read or -1 at the end of the data.
+     *
+     * @throws IOException If there is an error reading from the input.
+     */
+    public int read( byte[] b, int off, int len ) throws IOException
+    {
+        if( len == 0 )
+        {
+            return 0;
+        }
+        int total = 0;
+        while( total < len )
+        {
+            if( position == limit )
+            {
+                if( len - total >= buffer.length )
+                {
+                    // large reads bypass the buffer
+                    int read = readInput( b, off + total, len - total );
+                    if( read <= 0 )
+                    {
+                        break;
+                    }
+                    bufferOffset += limit + read;
+                    position = 0;
+                    limit = 0;
+                    total += read;
+                    continue;
+                }
+                if( ensureAvailable( 1 ) == 0 )
+                {
+                    break;
+                }
+            }
+            int count = Math.min( limit - position, len - total );
+            System.arraycopy( buffer, position, b, off + total, count );
+            position += count;
+            total += count;
+        }
+        return total == 0 ? -1 : total;
+    }
+
+    /**
+     * Reads the given number of bytes.
+     *
+     * @param length The number of bytes to be read.
+     * @return An array containing the bytes read.
+     *
+     * @throws IOException If the end of the data is reached before.
+     */
+    public byte[] readFully( int length ) throws IOException
+    {
+        byte[] data = new byte[length];
+        if( length > 0 && read( data, 0, length ) < length )
+        {
+            throw new EOFException( "Premature end of file" );
+        }
+        return data;
+    }
+
+    /**
+     * Returns the next byte without reading it.
+     *
+     * @return The next byte or -1 at the end of the data.
+     *
+     * @throws IOException If there is an error reading from the input.
+     */
+    public int peek() throws IOException
+    {
+        if( position == limit && ensureAvailable( 1 ) == 0 )
+        {
+            return -1;
+        }
+        return buffer[position] & 0xff;
+    }
+
+    /**
+     * Tells if the end of the data is reached.
+     *
+     * @return true if there are no more bytes to read.
+     *
+     * @throws IOException If there is an error reading from the input.
+     */
+    public boolean isEOF() throws IOException
+    {
+        return peek() == -1;
+    }
+
+    /**
+     * Skips the given number of bytes.
+     *
+     * @param n The number of bytes to skip.
+     * @return The number of bytes skipped, less than n only at the end of the data.
+     *
+     * @throws IOException If there is an error reading from the input.
+     */
+    public long skip( long n ) throws IOException
+    {
+        long skipped = 0;
+        while( skipped < n && ( position < limit || ensureAvailable( 1 ) > 0 ) )
+        {
+            int count = (int)Math.min( limit - position, n - skipped );
+            position += count;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    /**
+     * Pushes back a byte, it is the next byte read.
+     *
+     * @param b The byte to push back.
+     *
+     * @throws IOException If there is an error pushing back the byte.
+     */
+    public void unread( int b ) throws IOException
+    {
+        if( position > 0 )
+        {
+            position--;
+            if( buffer[position] != (byte)b )
+            {
+                buffer[position] = (byte)b;
+                pushedBack = true;
+            }
+        }
+        else
+        {
+            unread( new byte[] { (byte)b }, 0, 1 );
+        }
+    }
+
+    /**
+     * Pushes back the given bytes, they are the next bytes read.
+     *
+     * @param b The bytes to push back.
+     *
+     * @throws IOException If there is an error pushing back the bytes.
+     */
+    public void unread( byte[] b ) throws IOException
+    {
+        unread( b, 0, b.length );
+    }
+
+    /**
+     * Pushes back the given bytes, they are the next bytes read.
+     *
+     * @param b The array containing the bytes to push back.
+     * @param off The index of the first byte to push back.
+     * @param len The number of bytes to push back.
+     *
+     * @throws IOException If there is an error pushing back the bytes.
+     */
+    public void unread( byte[] b, int off, int len ) throws IOException
+    {
+        if( len <= 0 )
+        {
+            return;
+        }
+        if( position >= len )
+        {
+            position -= len;
+            for( int i = 0; i < len; i++ )
+            {
+                if( buffer[position + i] != b[off + i] )
+                {
+                    buffer[position + i] = b[off + i];
+                    pushedBack = true;
+                }
+            }
+            return;
+        }
+        // the bytes don't fit in front of the position, move the unread bytes behind them
+        int remaining = limit - position;
+        byte[] target = buffer;
+        if( len + remaining > buffer.length )
+        {
+            target = new byte[Math.max( buffer.length * 2, len + remaining )];
+        }
+        System.arraycopy( buffer, position, target, len, remaining );
+        System.arraycopy( b, off, target, 0, len );
+        buffer = target;
+        bufferOffset += position - len;
+        position = 0;
+        limit = len + remaining;
+        pushedBack = true;
+    }
+
+    /**
+     * Returns the offset of the next byte to be read.
+     *
+     * @return The offset in the data.
+     */
+    public long getOffset()
+    {
+        return bufferOffset + position;
+    }
+
+    /**
+     * Returns true if the source supports {@link #seek(long)}.
+     *
+     * @return true if the input implements {@link RandomAccessRead}.
+     */
+    public boolean isSeekable()
+    {
+        return raInput != null;
+    }
+
+    /**
+     * Returns the length of the data of a seekable source.
+     *
+     * @return The number of bytes of the data.
+     *
+     * @throws IOException If the source isn't seekable or the length can't be determined.
+     */
+    public long length() throws IOException
+    {
+        if( raInput == null )
+        {
+            throw new IOException( "Provided stream of type " + input.getClass().getSimpleName() +
+                                   " is not seekable." );
+        }
+        return raInput.length();
+    }
+
+    /**
+     * Moves to the given offset, pushed back bytes are dropped. The bytes in the
+     * window are kept, seeking to an offset within the window doesn't read anything.
+     *
+     * @param newOffset The offset of the next byte to be read.
+     *
+     * @throws IOException If the source isn't seekable or the input can't seek.
+     */
+    public void seek( long newOffset ) throws IOException
+    {
+        if( raInput == null )
+        {
+            throw new IOException( "Provided stream of type " + input.getClass().getSimpleName() +
+                                   " is not seekable." );
+        }
+        if( !pushedBack && newOffset >= bufferOffset && newOffset <= bufferOffset + limit )
+        {
+            position = (int)( newOffset - bufferOffset );
+            return;
+        }
+        raInput.seek( newOffset );
+        bufferOffset = newOffset;
+        position = 0;
+        limit = 0;
+        pushedBack = false;
+    }
+
+    /**
+     * Skips white space and comments like the parsers do, that is the bytes 0, 9,
+     * 10, 12, 13 and 32 and everything from a '%' to the end of its line.
+     *
+     * @return The next byte, which is not read, or -1 at the end of the data.
+     *
+     * @throws IOException If there is an error reading from the input.
+     */
+    public int skipSpaces() throws IOException
+    {
+        boolean comment = false;
+        while( position < limit || ensureAvailable( 1 ) > 0 )
+        {
+            int c = buffer[position] & 0xff;
+            if( comment )
+            {
+                comment = c != 10 && c != 13;
+            }
+            else if( c == 37 )
+            {
+                comment = true;
+            }
+            else if( c != 32 && c != 10 && c != 13 && c != 0 && c != 9 && c != 12 )
+            {
+                return c;
+            }
+            position++;
+        }
+        return -1;
+    }
+
+    /**
+     * Copies the bytes up to the first occurrence of one of the given keywords to
+     * the given stream. The source is positioned at the start of the keyword found.
+     *
+     * @param out The stream the bytes are written to.
+     * @param keywords The keywords to search for, none of them may be empty.
+     * @return true if a keyword was found, false if the end of the data was reached
+     *         and all remaining bytes have been copied.
+     *
+     * @throws IOException If there is an error reading or writing the data.
+     */
+    public boolean copyUntil( OutputStream out, byte[]... keywords ) throws IOException
+    {
+        int maxLength = 0;
+        for( byte[] keyword : keywords )
+        {
+            maxLength = Math.max( maxLength, keyword.length );
+        }
+        while( true )
+        {
+            int available = ensureAvailable( maxLength );
+            if( available == 0 )
+            {
+                return false;
+            }
+            // a keyword starting behind this index may extend past the available bytes
+            int end = available < maxLength ? limit : limit - maxLength + 1;
+            for( int i = position; i < end; i++ )
+            {
+                for( byte[] keyword : keywords )
+                {
+                    if( buffer[i] == keyword[0] && startsWith( i, keyword ) )
+                    {
+                        out.write( buffer, position, i - position );
+                        position = i;
+                        return true;
+                    }
+                }
+            }
+            out.write( buffer, position, end - position );
+            position = end;
+            if( available < maxLength )
+            {
+                return false;
+            }
+        }
+    }
+
+    private boolean startsWith( int index, byte[] keyword )
+    {
+        if( limit - index < keyword.length )
+        {
+            return false;
+        }
+        for( int i = 1; i < keyword.length; i++ )
+        {
+            if( buffer[index + i] != keyword[i] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Closes the input.
+     *
+     * @throws IOException If there is an error closing the input.
+     */
+    public void close() throws IOException
+    {
+        if( raInput != null )
+        {
+            raInput.close();
+        }
+        else
+        {
+            input.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "BufferedSource at offset " + getOffset();
+    }
+}
@@ -169,6 +169,12 @@ public class RandomAccessBuffer implements RandomAccess {
         // calculate the chunk list index
         bufferListIndex = (int)(position / BUFFER_SIZE);
         currentBufferPointer = position % BUFFER_SIZE;
+        // seeking beyond the end is allowed, as with a file the gap reads as zeros once written
+        while (bufferListIndex > bufferListMaxIndex)
+        {
+            bufferList.add(new byte[BUFFER_SIZE]);
+            bufferListMaxIndex++;
+        }
         currentBuffer = bufferList.get(bufferListIndex);
     }
 
@@ -209,4 +215,59 @@ public class RandomAccessBuffer implements RandomAccess {
         pointer++;
         return currentBuffer[(int)currentBufferPointer++] & 0xff;
     }
+
+    
+    /**
+     * {@inheritDoc}
+     */
+    public int read(byte[] b, int offset, int length) throws IOException
+    {
+        if (length == 0)
+        {
+            return 0;
+        }
+        if (pointer >= this.size)
+        {
+            return -1;
+        }
+        int maxLength = (int)Math.min(length, this.size - pointer);
+        int bytesRead = 0;
+        while (bytesRead < maxLength)
+        {
+            if (currentBufferPointer >= BUFFER_SIZE)
+            {
+                // there is always a following chunk as pointer < size
+                currentBuffer = bufferList.get(++bufferListIndex);
+                currentBufferPointer = 0;
+            }
+            int count = (int)Math.min(maxLength - bytesRead, BUFFER_SIZE - currentBufferPointer);
+            System.arraycopy(currentBuffer, (int)currentBufferPointer, b, offset + bytesRead, count);
+            currentBufferPointer += count;
+            bytesRead += count;
+        }
+        pointer += bytesRead;
+        return bytesRead;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public long skip(long n) throws IOException
+    {
+        if (n <= 0)
+        {
+            return 0;
+        }
+        long skipped = Math.max(0, Math.min(n, this.size - pointer));
+        seek(pointer + skipped);
+        return skipped;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public long getPosition() throws IOException
+    {
+        return pointer;
+    }
 }
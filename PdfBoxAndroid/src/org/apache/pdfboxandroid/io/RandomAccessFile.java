@@ -3,6 +3,7 @@ package org.apache.pdfboxandroid.io;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 
 public class RandomAccessFile implements RandomAccess {
 	private java.io.RandomAccessFile ras;
@@ -35,12 +36,13 @@ public class RandomAccessFile implements RandomAccess {
         ras.seek(position);
     }
 
-//    /**
-//     * {@inheritDoc}
-//     */
-//    public long getPosition() throws IOException {
-//        return ras.getFilePointer();
-//    }
+    /**
+     * {@inheritDoc}
+     */
+    public long getPosition() throws IOException
+    {
+        return ras.getFilePointer();
+    }
     
     /**
      * {@inheritDoc}
@@ -50,13 +52,28 @@ public class RandomAccessFile implements RandomAccess {
         return ras.read();
     }
 
-//    /**
-//     * {@inheritDoc}
-//     */
-//    public int read(byte[] b, int offset, int length) throws IOException
-//    {
-//        return ras.read(b, offset, length);
-//    }
+    /**
+     * {@inheritDoc}
+     */
+    public int read(byte[] b, int offset, int length) throws IOException
+    {
+        return ras.read(b, offset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long skip(long n) throws IOException
+    {
+        if (n <= 0)
+        {
+            return 0;
+        }
+        long position = ras.getFilePointer();
+        long skipped = Math.max(0, Math.min(n, ras.length() - position));
+        ras.seek(position + skipped);
+        return skipped;
+    }
 
     /**
      * {@inheritDoc}
@@ -81,4 +98,27 @@ public class RandomAccessFile implements RandomAccess {
     {
         ras.write(b);
     }
+
+    /**
+     * Transfers a section of the file to the given channel without copying it
+     * to the heap. The file pointer isn't changed.
+     *
+     * @param position The position of the section.
+     * @param count The length of the section.
+     * @param target The channel to write to.
+     * @throws IOException If there is an error reading or writing the data.
+     */
+    public void transferTo(long position, long count, WritableByteChannel target) throws IOException
+    {
+        long transferred = 0;
+        while (transferred < count)
+        {
+            long n = ras.getChannel().transferTo(position + transferred, count - transferred, target);
+            if (n <= 0)
+            {
+                throw new IOException("Unexpected end of file at " + (position + transferred));
+            }
+            transferred += n;
+        }
+    }
 }
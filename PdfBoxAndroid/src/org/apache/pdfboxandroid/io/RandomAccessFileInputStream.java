@@ -2,6 +2,8 @@ package org.apache.pdfboxandroid.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * This class allows a section of a RandomAccessFile to be accessed as an
@@ -46,4 +48,86 @@ public class RandomAccessFileInputStream extends InputStream {
             return retval;
         }
     }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public int available()
+    {
+        return (int)Math.min( endPosition - currentPosition, Integer.MAX_VALUE );
+    }
+    
+    /**
+     * Reads a block of bytes with a single seek on the underlying file.
+     * 
+     * {@inheritDoc}
+     */
+    public int read( byte[] b, int offset, int length ) throws IOException
+    {
+        //only allow a read of the amount available.
+        if( length > available() )
+        {
+            length = available();
+        }
+        int amountRead = -1;
+        //client asked for something more than zero, so read from file
+        if( available() > 0 )
+        {
+            synchronized(file)
+            {
+                file.seek( currentPosition );
+                amountRead = file.read( b, offset, length );
+            }
+        }
+        //update the current cursor position.
+        if( amountRead > 0 )
+        {
+            currentPosition += amountRead;
+        }
+        return amountRead;
+    }
+    
+    /**
+     * Copies the remaining bytes to the given stream in large blocks. If the
+     * underlying file is a {@link RandomAccessFile} and the channel of the target
+     * is given, the bytes are transferred by the file system instead.
+     *
+     * @param out The stream to write to.
+     * @param channel The channel of the stream, or null.
+     * @return The number of bytes copied.
+     * @throws IOException If there is an error reading or writing the data.
+     */
+    public long writeTo( OutputStream out, FileChannel channel ) throws IOException
+    {
+        long remaining = endPosition - currentPosition;
+        if( channel != null && file instanceof RandomAccessFile )
+        {
+            out.flush();
+            synchronized(file)
+            {
+                ((RandomAccessFile)file).transferTo( currentPosition, remaining, channel );
+            }
+            currentPosition = endPosition;
+            return remaining;
+        }
+        byte[] buffer = new byte[ (int)Math.max( 1, Math.min( remaining, 65536 ) ) ];
+        long written = 0;
+        int amountRead;
+        while( ( amountRead = read( buffer, 0, buffer.length ) ) > 0 )
+        {
+            out.write( buffer, 0, amountRead );
+            written += amountRead;
+        }
+        return written;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    public long skip( long amountToSkip )
+    {
+        long amountSkipped = Math.max( 0, Math.min( amountToSkip, endPosition - currentPosition ) );
+        currentPosition += amountSkipped;
+        return amountSkipped;
+    }
 }
@@ -19,6 +19,8 @@ public class RandomAccessFileOutputStream extends OutputStream {
     private long position;
     private long lengthWritten = 0;
     private COSBase expectedLength = null;
+    private long capacity = -1;
+    private ScratchSpaceManager manager = null;
     
     /**
      * Constructor to create an output stream that will write to the end of a
@@ -34,17 +36,104 @@ public class RandomAccessFileOutputStream extends OutputStream {
         //first get the position that we will be writing to
         position = raf.length();
     }
+    
+    /**
+     * Constructor to create an output stream that will write to a run of blocks
+     * handed out by the given manager.
+     *
+     * @param manager The manager of the scratch file.
+     * @param raf The file to write to.
+     * @param regionPosition The start of the run.
+     * @param regionCapacity The number of bytes available in the run.
+     */
+    RandomAccessFileOutputStream( ScratchSpaceManager manager, RandomAccess raf,
+            long regionPosition, long regionCapacity )
+    {
+        this.manager = manager;
+        file = raf;
+        position = regionPosition;
+        capacity = regionCapacity;
+    }
 	
 	/**
      * {@inheritDoc}
      */
     public void write( int b ) throws IOException
     {
+        ensureCapacity( 1 );
         file.seek( position+lengthWritten );
         lengthWritten++;
         file.write( b );
     }
     
+    /**
+     * Writes a block of bytes with a single seek on the underlying file.
+     * 
+     * {@inheritDoc}
+     */
+    public void write( byte[] b, int offset, int length ) throws IOException
+    {
+        ensureCapacity( length );
+        file.seek( position+lengthWritten );
+        lengthWritten += length;
+        file.write( b, offset, length );
+    }
+    
+    /**
+     * Asks the manager for more space if the run doesn't have room for the
+     * given number of bytes.
+     */
+    private void ensureCapacity( long count ) throws IOException
+    {
+        if( manager != null && lengthWritten + count > capacity )
+        {
+            manager.grow( this, lengthWritten + count );
+        }
+    }
+    
+    /**
+     * Copies the data written so far to a new run of blocks.
+     *
+     * @param newPosition The start of the new run.
+     * @param newCapacity The number of bytes available in the new run.
+     * @throws IOException If there is an error copying the data.
+     */
+    void moveTo( long newPosition, long newCapacity ) throws IOException
+    {
+        byte[] buffer = new byte[ (int)Math.min( Math.max( lengthWritten, 1 ), 16384 ) ];
+        long copied = 0;
+        while( copied < lengthWritten )
+        {
+            int chunk = (int)Math.min( buffer.length, lengthWritten - copied );
+            file.seek( position + copied );
+            int read = file.read( buffer, 0, chunk );
+            if( read <= 0 )
+            {
+                throw new IOException( "Unable to move stream data at " + ( position + copied ) );
+            }
+            file.seek( newPosition + copied );
+            file.write( buffer, 0, read );
+            copied += read;
+        }
+        position = newPosition;
+        capacity = newCapacity;
+    }
+    
+    /**
+     * Releases the unused space of a managed run, no more data may be written
+     * to this stream afterwards.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if( manager != null )
+        {
+            manager.trim( this );
+        }
+    }
+    
     /**
      * This will set the expected length of this stream.
      *
@@ -100,4 +189,20 @@ public class RandomAccessFileOutputStream extends OutputStream {
     {
         return lengthWritten;
     }
+    
+    /**
+     * The number of bytes of the run of blocks this stream writes to, -1 if the
+     * stream simply writes to the end of the file.
+     *
+     * @return The capacity of the run.
+     */
+    public long getCapacity()
+    {
+        return capacity;
+    }
+    
+    void setCapacity( long newCapacity )
+    {
+        capacity = newCapacity;
+    }
 }
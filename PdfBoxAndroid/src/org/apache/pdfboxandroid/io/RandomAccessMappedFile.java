@@ -0,0 +1,259 @@
+package org.apache.pdfboxandroid.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.pdfboxandroid.PDFBox;
+
+import android.util.Log;
+
+/**
+ * A read only {@link RandomAccessRead} backed by memory mapped segments of a file.
+ * Reading doesn't need a system call per byte, the data is served from the page
+ * cache of the operating system. Files larger than a single mapping (2 GB) are
+ * split into several segments which are mapped the first time they are accessed.
+ * All segments are unmapped when the file is closed.
+ */
+public class RandomAccessMappedFile implements RandomAccessRead {
+	/**
+     * Default size of a single mapped segment.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private final java.io.RandomAccessFile ras;
+    private final FileChannel channel;
+    private final long length;
+    private final int segmentSize;
+    private final MappedByteBuffer[] segments;
+
+    private long position = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param file The file to read the data from.
+     * @throws IOException If the file can't be opened.
+     */
+    public RandomAccessMappedFile(File file) throws IOException
+    {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file The file to read the data from.
+     * @param segmentSizeValue The maximum number of bytes mapped by a single segment.
+     * @throws IOException If the file can't be opened.
+     */
+    public RandomAccessMappedFile(File file, int segmentSizeValue) throws IOException
+    {
+        if (segmentSizeValue <= 0)
+        {
+            throw new IllegalArgumentException("Segment size must be positive: " + segmentSizeValue);
+        }
+        ras = new java.io.RandomAccessFile(file, "r");
+        channel = ras.getChannel();
+        length = channel.size();
+        segmentSize = segmentSizeValue;
+        long segmentCount = (length + segmentSize - 1) / segmentSize;
+        if (segmentCount > Integer.MAX_VALUE)
+        {
+            ras.close();
+            throw new IOException("File too large to be mapped: " + file);
+        }
+        segments = new MappedByteBuffer[(int) segmentCount];
+    }
+
+    private void checkClosed() throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("RandomAccessMappedFile already closed");
+        }
+    }
+
+    /**
+     * Returns the segment containing the given position, maps it if necessary.
+     */
+    private MappedByteBuffer getSegment(int index) throws IOException
+    {
+        MappedByteBuffer segment = segments[index];
+        if (segment == null)
+        {
+            long start = (long) index * segmentSize;
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, length - start));
+            segments[index] = segment;
+        }
+        return segment;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int read() throws IOException
+    {
+        checkClosed();
+        if (position >= length)
+        {
+            return -1;
+        }
+        MappedByteBuffer segment = getSegment((int) (position / segmentSize));
+        int b = segment.get((int) (position % segmentSize)) & 0xff;
+        position++;
+        return b;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int read(byte[] b, int offset, int len) throws IOException
+    {
+        checkClosed();
+        if (len == 0)
+        {
+            return 0;
+        }
+        if (position >= length)
+        {
+            return -1;
+        }
+        int toRead = (int) Math.min(len, length - position);
+        int done = 0;
+        while (done < toRead)
+        {
+            MappedByteBuffer segment = getSegment((int) (position / segmentSize));
+            int segmentOffset = (int) (position % segmentSize);
+            int count = Math.min(toRead - done, segment.limit() - segmentOffset);
+            segment.position(segmentOffset);
+            segment.get(b, offset + done, count);
+            done += count;
+            position += count;
+        }
+        return done;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void seek(long newPosition) throws IOException
+    {
+        if (newPosition < 0)
+        {
+            throw new IOException("Invalid position " + newPosition);
+        }
+        position = newPosition;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long skip(long n) throws IOException
+    {
+        checkClosed();
+        if (n <= 0)
+        {
+            return 0;
+        }
+        long skipped = Math.max(0, Math.min(n, length - position));
+        position += skipped;
+        return skipped;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long length() throws IOException
+    {
+        return length;
+    }
+
+    /**
+     * Unmaps all segments and closes the file. The mapped memory is released
+     * immediately instead of waiting for the garbage collector.
+     *
+     * @throws IOException If there is an error closing the file.
+     */
+    public void close() throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+        for (int i = 0; i < segments.length; i++)
+        {
+            if (segments[i] != null)
+            {
+                unmap(segments[i]);
+                segments[i] = null;
+            }
+        }
+        channel.close();
+        ras.close();
+    }
+
+    /**
+     * Releases a mapped buffer. There is no public API to do so, thus the known
+     * implementation specific ways are tried: sun.misc.Unsafe.invokeCleaner (Java 9+),
+     * the buffer's cleaner (Java 8) and the free method of the Android runtime.
+     * If all of them fail the mapping is released by the garbage collector.
+     */
+    private static void unmap(ByteBuffer buffer)
+    {
+        try
+        {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        }
+        catch (Exception e)
+        {
+            // not available, try the next method
+        }
+        try
+        {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null)
+            {
+                Method clean = cleaner.getClass().getMethod("clean");
+                clean.setAccessible(true);
+                clean.invoke(cleaner);
+                return;
+            }
+        }
+        catch (Exception e)
+        {
+            // not available, try the next method
+        }
+        try
+        {
+            Method free = buffer.getClass().getMethod("free");
+            free.setAccessible(true);
+            free.invoke(buffer);
+        }
+        catch (Exception e)
+        {
+            Log.w("Unable to unmap buffer, it will be released by the garbage collector", PDFBox.LOG_TAG);
+        }
+    }
+}
@@ -10,4 +10,13 @@ public interface RandomAccessRead extends SequentialRead {
      * @throws IOException If there is an error while seeking.
      */
     public void seek(long position) throws IOException;
+    
+    /**
+     * Returns offset of next byte to be returned by a read method.
+     *
+     * @return offset of next byte which will be returned with next {@link #read()}
+     *         (if no more bytes are left it returns a value &gt;= length of source)
+     * @throws IOException If there is an error determining the position.
+     */
+    public long getPosition() throws IOException;
 }
@@ -0,0 +1,319 @@
+package org.apache.pdfboxandroid.io;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Manages the space of a scratch file shared by many streams. The space is handed
+ * out in runs of page-sized blocks. Released runs are kept in a free list and reused
+ * for new data, so rewriting a stream doesn't grow the scratch file by another copy.
+ *
+ * A stream which outgrows its run is extended in place if the following space is
+ * free, otherwise it is moved to a larger run.
+ */
+public class ScratchSpaceManager {
+	/**
+     * Default size of a single block.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+
+    private final RandomAccess file;
+    private final int pageSize;
+
+    /**
+     * End of the space handed out so far.
+     */
+    private long end = 0;
+
+    /**
+     * The largest end of the handed out space so far.
+     */
+    private long highWater = 0;
+
+    /**
+     * Free runs of blocks, position mapped to length.
+     */
+    private final TreeMap<Long, Long> freeRuns = new TreeMap<Long, Long>();
+
+    /**
+     * The streams currently owning a run of blocks.
+     */
+    private final Map<RandomAccessFileOutputStream, Boolean> liveStreams =
+            new IdentityHashMap<RandomAccessFileOutputStream, Boolean>();
+
+    /**
+     * Constructor.
+     *
+     * @param scratchFile The scratch file to manage.
+     */
+    public ScratchSpaceManager( RandomAccess scratchFile )
+    {
+        this( scratchFile, DEFAULT_PAGE_SIZE );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param scratchFile The scratch file to manage.
+     * @param pageSizeValue The size of a single block.
+     */
+    public ScratchSpaceManager( RandomAccess scratchFile, int pageSizeValue )
+    {
+        if( pageSizeValue <= 0 )
+        {
+            throw new IllegalArgumentException( "Page size must be positive: " + pageSizeValue );
+        }
+        file = scratchFile;
+        pageSize = pageSizeValue;
+    }
+
+    /**
+     * Returns the managed scratch file.
+     *
+     * @return The scratch file.
+     */
+    public RandomAccess getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Returns the size of a single block.
+     *
+     * @return The page size.
+     */
+    public int getPageSize()
+    {
+        return pageSize;
+    }
+
+    /**
+     * Creates an output stream writing to a free run of blocks.
+     *
+     * @param expectedLength The expected number of bytes, -1 if unknown.
+     * @return The new output stream.
+     * @throws IOException If there is an error accessing the scratch file.
+     */
+    public synchronized RandomAccessFileOutputStream createOutputStream( long expectedLength )
+        throws IOException
+    {
+        long capacity = roundUp( Math.max( expectedLength, 1 ) );
+        RandomAccessFileOutputStream out =
+                new RandomAccessFileOutputStream( this, file, allocate( capacity ), capacity );
+        liveStreams.put( out, Boolean.TRUE );
+        return out;
+    }
+
+    /**
+     * Gives the blocks of the given stream back to the free list. Nothing happens if
+     * the stream isn't managed by this instance or has already been released.
+     *
+     * @param out The stream whose data isn't needed anymore.
+     */
+    public synchronized void release( RandomAccessFileOutputStream out )
+    {
+        if( out != null && liveStreams.remove( out ) != null )
+        {
+            free( out.getPosition(), out.getCapacity() );
+        }
+    }
+
+    /**
+     * Returns true if the given stream is managed by this instance and hasn't been released.
+     *
+     * @param out The stream to check.
+     * @return true if the data of the stream is still valid
+     */
+    public synchronized boolean isLive( RandomAccessFileOutputStream out )
+    {
+        return liveStreams.containsKey( out );
+    }
+
+    /**
+     * Makes room for the given number of bytes in the run of the given stream.
+     *
+     * @param out The stream which needs more space.
+     * @param required The total number of bytes needed.
+     * @throws IOException If there is an error moving the data.
+     */
+    synchronized void grow( RandomAccessFileOutputStream out, long required ) throws IOException
+    {
+        long position = out.getPosition();
+        long capacity = out.getCapacity();
+        // grow exponentially to keep the number of moves low
+        long newCapacity = roundUp( Math.max( required, capacity * 2 ) );
+        if( position + capacity >= end )
+        {
+            end = position + newCapacity;
+            highWater = Math.max( highWater, end );
+            out.setCapacity( newCapacity );
+            return;
+        }
+        Long next = freeRuns.get( Long.valueOf( position + capacity ) );
+        if( next != null && capacity + next.longValue() >= roundUp( required ) )
+        {
+            freeRuns.remove( Long.valueOf( position + capacity ) );
+            long grown = Math.min( newCapacity, capacity + next.longValue() );
+            free( position + grown, capacity + next.longValue() - grown );
+            out.setCapacity( grown );
+            return;
+        }
+        long newPosition = allocate( newCapacity );
+        out.moveTo( newPosition, newCapacity );
+        free( position, capacity );
+    }
+
+    /**
+     * Releases the unused blocks at the end of the run of the given stream once it is complete.
+     *
+     * @param out The completely written stream.
+     */
+    synchronized void trim( RandomAccessFileOutputStream out )
+    {
+        if( !liveStreams.containsKey( out ) )
+        {
+            return;
+        }
+        long used = roundUp( Math.max( out.getLengthWritten(), 1 ) );
+        long capacity = out.getCapacity();
+        if( used < capacity )
+        {
+            out.setCapacity( used );
+            free( out.getPosition() + used, capacity - used );
+        }
+    }
+
+    private long allocate( long size ) throws IOException
+    {
+        long fileLength = file.length();
+        if( fileLength > highWater )
+        {
+            // never hand out space which has been written without this manager
+            long oldEnd = end;
+            end = roundUp( fileLength );
+            free( oldEnd, highWater - oldEnd );
+            highWater = end;
+        }
+        Map.Entry<Long, Long> bestFit = null;
+        for( Map.Entry<Long, Long> entry : freeRuns.entrySet() )
+        {
+            long length = entry.getValue().longValue();
+            if( length >= size && ( bestFit == null || length < bestFit.getValue().longValue() ) )
+            {
+                bestFit = entry;
+            }
+        }
+        if( bestFit == null )
+        {
+            long position = end;
+            end += size;
+            highWater = Math.max( highWater, end );
+            return position;
+        }
+        // the values are read before removing the entry, the map may reuse the entry object
+        long position = bestFit.getKey().longValue();
+        long length = bestFit.getValue().longValue();
+        freeRuns.remove( bestFit.getKey() );
+        if( length > size )
+        {
+            freeRuns.put( Long.valueOf( position + size ), Long.valueOf( length - size ) );
+        }
+        return position;
+    }
+
+    private void free( long position, long length )
+    {
+        if( length <= 0 )
+        {
+            return;
+        }
+        // NavigableMap isn't available before API level 9
+        SortedMap<Long, Long> head = freeRuns.headMap( Long.valueOf( position + 1 ) );
+        if( !head.isEmpty() )
+        {
+            Long previous = head.lastKey();
+            long previousLength = freeRuns.get( previous ).longValue();
+            if( previous.longValue() + previousLength == position )
+            {
+                position = previous.longValue();
+                length += previousLength;
+                freeRuns.remove( previous );
+            }
+        }
+        Long next = freeRuns.remove( Long.valueOf( position + length ) );
+        if( next != null )
+        {
+            length += next.longValue();
+        }
+        if( position + length >= end )
+        {
+            // the run is at the end of the handed out space, append from there again
+            end = position;
+        }
+        else
+        {
+            freeRuns.put( Long.valueOf( position ), Long.valueOf( length ) );
+        }
+    }
+
+    private long roundUp( long size )
+    {
+        return ( size + pageSize - 1 ) / pageSize * pageSize;
+    }
+
+    /**
+     * Returns the number of bytes holding the data of live streams.
+     *
+     * @return The live bytes.
+     */
+    public synchronized long getLiveBytes()
+    {
+        long live = 0;
+        for( RandomAccessFileOutputStream out : liveStreams.keySet() )
+        {
+            live += out.getLengthWritten();
+        }
+        return live;
+    }
+
+    /**
+     * Returns the number of bytes in the free list.
+     *
+     * @return The free bytes.
+     */
+    public synchronized long getFreeBytes()
+    {
+        long free = 0;
+        for( Long length : freeRuns.values() )
+        {
+            free += length.longValue();
+        }
+        return free;
+    }
+
+    /**
+     * Returns the number of bytes of the scratch file which don't hold live data,
+     * i.e. free blocks, unused space at the end of runs and data written without
+     * this manager.
+     *
+     * @return The wasted bytes.
+     * @throws IOException If the length of the scratch file can't be determined.
+     */
+    public synchronized long getWastedBytes() throws IOException
+    {
+        return Math.max( 0, file.length() - getLiveBytes() );
+    }
+
+    /**
+     * Returns the number of streams currently owning blocks.
+     *
+     * @return The number of live streams.
+     */
+    public synchronized int getLiveStreamCount()
+    {
+        return liveStreams.size();
+    }
+}
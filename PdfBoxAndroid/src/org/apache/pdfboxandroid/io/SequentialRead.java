@@ -19,6 +19,28 @@ public interface SequentialRead {
      */
     public int read() throws IOException;
     
+    /**
+     * Read a buffer of data.
+     *
+     * @param b The buffer to write the data to.
+     * @param offset Offset into the buffer to start writing.
+     * @param length The amount of data to attempt to read.
+     * @return The number of bytes that were actually read, or -1 if the end
+     * of the data has been reached.
+     * @throws IOException If there was an error while reading the data.
+     */
+    public int read(byte[] b, int offset, int length) throws IOException;
+    
+    /**
+     * Skips over a number of bytes without reading them.
+     *
+     * @param n The number of bytes to skip.
+     * @return The number of bytes actually skipped, less than n only at the
+     * end of the data.
+     * @throws IOException If there is an error while skipping.
+     */
+    public long skip(long n) throws IOException;
+    
     /**
      * The total number of bytes that are available.
      *
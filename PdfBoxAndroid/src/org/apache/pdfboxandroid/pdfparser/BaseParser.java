@@ -1,6 +1,5 @@
 package org.apache.pdfboxandroid.pdfparser;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -19,9 +18,9 @@ import org.apache.pdfboxandroid.cos.COSNumber;
 import org.apache.pdfboxandroid.cos.COSObject;
 import org.apache.pdfboxandroid.cos.COSStream;
 import org.apache.pdfboxandroid.cos.COSString;
-import org.apache.pdfboxandroid.exceptions.WrappedIOException;
-import org.apache.pdfboxandroid.io.PushBackInputStream;
+import org.apache.pdfboxandroid.io.BufferedSource;
 import org.apache.pdfboxandroid.io.RandomAccess;
+import org.apache.pdfboxandroid.io.RandomAccessRead;
 import org.apache.pdfboxandroid.persistence.util.COSObjectKey;
 
 import android.util.Log;
@@ -40,7 +39,10 @@ public abstract class BaseParser {
 	
 	/**
      * system property allowing to define size of push back buffer.
+     *
+     * @deprecated The source grows its buffer as needed, the property isn't used.
      */
+    @Deprecated
     public static final String PROP_PUSHBACK_SIZE = "org.apache.pdfboxandroid.baseParser.pushBackSize";
 	
 	private static final int E = 'e';
@@ -118,7 +120,24 @@ public abstract class BaseParser {
     /**
      * This is the stream that will be read from.
      */
-    protected PushBackInputStream pdfSource;
+    protected BufferedSource pdfSource;
+
+    /**
+     * The bytes of the name or keyword being read.
+     */
+    private byte[] tokenBuffer = new byte[32];
+
+    /**
+     * The names read by this parser.
+     */
+    private final TokenTable<COSName> names = new TokenTable<COSName>()
+    {
+        @Override
+        protected COSName create( String name )
+        {
+            return COSName.getPDFName( name );
+        }
+    };
     
     /**
      * Constructor.
@@ -132,8 +151,22 @@ public abstract class BaseParser {
     public BaseParser(InputStream input, boolean forceParsingValue)
             throws IOException
     {
-        this.pdfSource = new PushBackInputStream(
-                new BufferedInputStream(input, 16384),  Integer.getInteger( PROP_PUSHBACK_SIZE, 65536 ) );
+        this.pdfSource = new BufferedSource( input );
+        this.forceParsing = forceParsingValue;
+    }
+
+    /**
+     * Constructor of a parser which can seek in its input.
+     *
+     * @param input The random access data to read from, starting at its current position.
+     * @param forceParsingValue flag to skip malformed or otherwise unparseable
+     *                     input where possible
+     * @throws IOException If there is an error reading the input.
+     */
+    protected BaseParser(RandomAccessRead input, boolean forceParsingValue)
+            throws IOException
+    {
+        this.pdfSource = new BufferedSource( input );
         this.forceParsing = forceParsingValue;
     }
     
@@ -154,31 +187,7 @@ public abstract class BaseParser {
      */
     protected void skipSpaces() throws IOException
     {
-        //log( "skipSpaces() " + pdfSource );
-        int c = pdfSource.read();
-        // identical to, but faster as: isWhiteSpace(c) || c == 37
-        while(c == 0 || c == 9 || c == 12  || c == 10
-                || c == 13 || c == 32 || c == 37)//37 is the % character, a comment
-        {
-            if ( c == 37 )
-            {
-                // skip past the comment section
-                c = pdfSource.read();
-                while(!isEOL(c) && c != -1)
-                {
-                    c = pdfSource.read();
-                }
-            }
-            else
-            {
-                c = pdfSource.read();
-            }
-        }
-        if (c != -1)
-        {
-            pdfSource.unread(c);
-        }
-        //log( "skipSpaces() done peek='" + (char)pdfSource.peek() + "'" );
+        pdfSource.skipSpaces();
     }
     
     /**
@@ -199,9 +208,20 @@ public abstract class BaseParser {
      * @throws IOException throws by the {@link #pdfSource} methods.
      */
     protected final StringBuilder readStringNumber() throws IOException
+    {
+        return new StringBuilder( getTokenString( readNumberToken() ) );
+    }
+
+    /**
+     * Reads a token like {@link #readStringNumber()} into the token buffer.
+     *
+     * @return The length of the token.
+     * @throws IOException throws by the {@link #pdfSource} methods.
+     */
+    private int readNumberToken() throws IOException
     {
         int lastByte = 0;
-        StringBuilder buffer = new StringBuilder();
+        int length = 0;
         while( (lastByte = pdfSource.read() ) != 32 &&
                 lastByte != 10 &&
                 lastByte != 13 &&
@@ -209,13 +229,50 @@ public abstract class BaseParser {
                 lastByte != 0 && //See sourceforge bug 853328
                 lastByte != -1 )
         {
-            buffer.append( (char)lastByte );
+            length = appendToToken( length, lastByte );
         }
         if( lastByte != -1 )
         {
             pdfSource.unread( lastByte );
         }
-        return buffer;
+        return length;
+    }
+
+    /**
+     * Parses the integer in the token buffer like {@link Long#parseLong(String)}.
+     *
+     * @return The integer or null if the token isn't an integer which fits into a long.
+     */
+    private Long parseLongToken( int length ) throws IOException
+    {
+        int i = 0;
+        boolean negative = length > 1 && tokenBuffer[0] == '-';
+        if( negative || ( length > 1 && tokenBuffer[0] == '+' ) )
+        {
+            i++;
+        }
+        if( length == 0 || length - i > 18 )
+        {
+            try
+            {
+                return Long.valueOf( getTokenString( length ) );
+            }
+            catch( NumberFormatException e )
+            {
+                return null;
+            }
+        }
+        long value = 0;
+        for( ; i < length; i++ )
+        {
+            int c = tokenBuffer[i];
+            if( c < '0' || c > '9' )
+            {
+                return null;
+            }
+            value = value * 10 + ( c - '0' );
+        }
+        return negative ? -value : value;
     }
     
     /**
@@ -226,20 +283,131 @@ public abstract class BaseParser {
      * @throws IOException If there is an error reading from the stream.
      */
     protected String readString() throws IOException
+    {
+        return getTokenString( readKeyword() );
+    }
+
+    /**
+     * Reads the next string from the stream like {@link #readString()}, but
+     * keeps its bytes in the token buffer instead of creating a string.
+     *
+     * @return The length of the string.
+     *
+     * @throws IOException If there is an error reading from the stream.
+     */
+    final int readKeyword() throws IOException
     {
         skipSpaces();
-        StringBuilder buffer = new StringBuilder();
+        int length = 0;
         int c = pdfSource.read();
         while( !isEndOfName((char)c) && !isClosing(c) && c != -1 )
         {
-            buffer.append( (char)c );
+            length = appendToToken( length, c );
             c = pdfSource.read();
         }
         if (c != -1)
         {
             pdfSource.unread(c);
         }
-        return buffer.toString();
+        return length;
+    }
+
+    /**
+     * Appends a byte to the token buffer, the buffer grows as needed.
+     *
+     * @param length The current length of the token.
+     * @param c The byte to be appended.
+     * @return The new length of the token.
+     */
+    final int appendToToken( int length, int c )
+    {
+        if( length == tokenBuffer.length )
+        {
+            byte[] buffer = new byte[length * 2];
+            System.arraycopy( tokenBuffer, 0, buffer, 0, length );
+            tokenBuffer = buffer;
+        }
+        tokenBuffer[length] = (byte)c;
+        return length + 1;
+    }
+
+    /**
+     * Tells if the token buffer contains the given keyword.
+     *
+     * @param length The length of the token.
+     * @param keyword The keyword, which consists of ASCII characters.
+     * @return true if the token equals the keyword
+     */
+    final boolean isKeyword( int length, String keyword )
+    {
+        if( length != keyword.length() )
+        {
+            return false;
+        }
+        for( int i = 0; i < length; i++ )
+        {
+            if( tokenBuffer[i] != keyword.charAt( i ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells if the token buffer contains only control characters and spaces,
+     * i.e. if the token would be empty after trimming it.
+     *
+     * @param length The length of the token.
+     * @return true if the token is blank
+     */
+    final boolean isBlankToken( int length )
+    {
+        for( int i = 0; i < length; i++ )
+        {
+            if( ( tokenBuffer[i] & 0xff ) > ' ' )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the token in the token buffer as string.
+     *
+     * @param length The length of the token.
+     * @return The token.
+     * @throws IOException If the encoding isn't supported.
+     */
+    final String getTokenString( int length ) throws IOException
+    {
+        return new String( tokenBuffer, 0, length, "ISO-8859-1" );
+    }
+
+    /**
+     * Returns the number in the token buffer.
+     *
+     * @param length The length of the token.
+     * @return The number.
+     * @throws IOException If the token isn't a number.
+     */
+    final COSNumber getNumberToken( int length ) throws IOException
+    {
+        return COSNumber.get( tokenBuffer, 0, length );
+    }
+
+    /**
+     * Returns the interned token of the given table for the token buffer.
+     *
+     * @param table The table of the tokens.
+     * @param length The length of the token.
+     * @return The token.
+     * @throws IOException If there is an error creating the token.
+     */
+    final <T> T getToken( TokenTable<T> table, int length ) throws IOException
+    {
+        return table.get( tokenBuffer, length );
     }
     
     /**
@@ -282,20 +450,14 @@ public abstract class BaseParser {
     protected long readLong() throws IOException
     {
         skipSpaces();
-        long retval = 0;
-
-        StringBuilder longBuffer = readStringNumber();
-
-        try
-        {
-            retval = Long.parseLong( longBuffer.toString() );
-        }
-        catch( NumberFormatException e )
+        int length = readNumberToken();
+        Long retval = parseLongToken( length );
+        if( retval == null )
         {
-            pdfSource.unread(longBuffer.toString().getBytes("ISO-8859-1"));
-            throw new IOException( "Error: Expected a long type, actual='" + longBuffer + "'" );
+            pdfSource.unread( tokenBuffer, 0, length );
+            throw new IOException( "Error: Expected a long type, actual='" + getTokenString( length ) + "'" );
         }
-        return retval;
+        return retval.longValue();
     }
     
     /**
@@ -308,20 +470,14 @@ public abstract class BaseParser {
     protected int readInt() throws IOException
     {
         skipSpaces();
-        int retval = 0;
-
-        StringBuilder intBuffer = readStringNumber();
-
-        try
-        {
-            retval = Integer.parseInt( intBuffer.toString() );
-        }
-        catch( NumberFormatException e )
+        int length = readNumberToken();
+        Long retval = parseLongToken( length );
+        if( retval == null || retval.longValue() != retval.intValue() )
         {
-            pdfSource.unread(intBuffer.toString().getBytes("ISO-8859-1"));
-            throw new IOException( "Error: Expected an integer type, actual='" + intBuffer + "'" );
+            pdfSource.unread( tokenBuffer, 0, length );
+            throw new IOException( "Error: Expected an integer type, actual='" + getTokenString( length ) + "'" );
         }
-        return retval;
+        return retval.intValue();
     }
     
     /**
@@ -471,10 +627,10 @@ public abstract class BaseParser {
             break;
         case 'n':   // null
         {
-            String nullString = readString();
-            if( !nullString.equals( NULL) )
+            int length = readKeyword();
+            if( !isKeyword( length, NULL ) )
             {
-                throw new IOException("Expected='null' actual='" + nullString + "'");
+                throw new IOException("Expected='null' actual='" + getTokenString( length ) + "'");
             }
             retval = COSNull.NULL;
             break;
@@ -515,7 +671,7 @@ public abstract class BaseParser {
         {
             if( Character.isDigit(c) || c == '-' || c == '+' || c == '.')
             {
-                StringBuilder buf = new StringBuilder();
+                int length = 0;
                 int ic = pdfSource.read();
                 c = (char)ic;
                 while( Character.isDigit( c )||
@@ -525,7 +681,7 @@ public abstract class BaseParser {
                         c == 'E' ||
                         c == 'e' )
                 {
-                    buf.append( c );
+                    length = appendToToken( length, c );
                     ic = pdfSource.read();
                     c = (char)ic;
                 }
@@ -533,7 +689,7 @@ public abstract class BaseParser {
                 {
                     pdfSource.unread( ic );
                 }
-                retval = COSNumber.get( buf.toString() );
+                retval = getNumberToken( length );
             }
             else
             {
@@ -990,22 +1146,20 @@ public abstract class BaseParser {
      */
     protected COSName parseCOSName() throws IOException
     {
-        COSName retval = null;
         int c = pdfSource.read();
         if( (char)c != '/')
         {
             throw new IOException("expected='/' actual='" + (char)c + "'-" + c + " " + pdfSource );
         }
         // costruisce il nome
-        StringBuilder buffer = new StringBuilder();
+        int length = 0;
         c = pdfSource.read();
         while( c != -1 )
         {
-            char ch = (char)c;
-            if(ch == '#')
+            if(c == '#')
             {
-                char ch1 = (char)pdfSource.read();
-                char ch2 = (char)pdfSource.read();
+                int ch1 = pdfSource.read();
+                int ch2 = pdfSource.read();
 
                 // Prior to PDF v1.2, the # was not a special character.  Also,
                 // it has been observed that various PDF tools do not follow the
@@ -1014,33 +1168,28 @@ public abstract class BaseParser {
                 // interpret the # as an escape only when it is followed by two
                 // valid hex digits.
                 //
-                if (isHexDigit(ch1) && isHexDigit(ch2))
+                if (isHexDigit((char)ch1) && isHexDigit((char)ch2))
                 {
-                    String hex = "" + ch1 + ch2;
-                    try
-                    {
-                        buffer.append( (char) Integer.parseInt(hex, 16));
-                    }
-                    catch (NumberFormatException e)
-                    {
-                        throw new IOException("Error: expected hex number, actual='" + hex + "'");
-                    }
+                    length = appendToToken( length, Character.digit( ch1, 16 ) * 16 + Character.digit( ch2, 16 ) );
                     c = pdfSource.read();
                 }
                 else
                 {
-                    pdfSource.unread(ch2);
+                    if (ch2 != -1)
+                    {
+                        pdfSource.unread(ch2);
+                    }
                     c = ch1;
-                    buffer.append( ch );
+                    length = appendToToken( length, '#' );
                 }
             }
-            else if (isEndOfName(ch))
+            else if (isEndOfName((char)c))
             {
                 break;
             }
             else
             {
-                buffer.append( ch );
+                length = appendToToken( length, c );
                 c = pdfSource.read();
             }
         }
@@ -1048,8 +1197,7 @@ public abstract class BaseParser {
         {
             pdfSource.unread(c);
         }
-        retval = COSName.getPDFName( buffer.toString() );
-        return retval;
+        return getToken( names, length );
     }
     
     private static boolean isHexDigit(char ch)
@@ -1120,6 +1268,22 @@ public abstract class BaseParser {
         return COSString.createFromHexString( sBuf.toString(), forceParsing );
     }
     
+    /**
+     * Returns the value of an indirect /Length entry of a stream dictionary.
+     * The sequential parser can't rely on indirect lengths (see
+     * {@link #parseCOSStream(COSDictionary, RandomAccess)}) and returns -1 so that
+     * the stream data is scanned for 'endstream'. Parsers which know the final
+     * xref table may resolve the reference.
+     *
+     * @param lengthObject the indirect length object
+     * @return the stream length or -1 if it is unknown
+     * @throws IOException If there is an error resolving the length.
+     */
+    protected int getIndirectStreamLength( COSObject lengthObject ) throws IOException
+    {
+        return -1;
+    }
+    
     /**
      * This will read a COSStream from the input stream.
      *
@@ -1132,7 +1296,15 @@ public abstract class BaseParser {
      */
     protected COSStream parseCOSStream( COSDictionary dic, RandomAccess file ) throws IOException
     {
-        COSStream stream = new COSStream( dic, file );
+        COSStream stream;
+        if( document != null && file == document.getScratchFile() )
+        {
+            stream = document.createCOSStream( dic );
+        }
+        else
+        {
+            stream = new COSStream( dic, file );
+        }
         OutputStream out = null;
         try
         {
@@ -1206,6 +1378,10 @@ public abstract class BaseParser {
 //            {
 //                length = ( (COSNumber) ( (COSObject) streamLength ).getObject() ).intValue();
 //            } 
+            else if ( streamLength instanceof COSObject )
+            {
+                length = getIndirectStreamLength( (COSObject) streamLength );
+            }
             
             if ( length == -1 )
             {
@@ -1216,6 +1392,7 @@ public abstract class BaseParser {
             else
             {
                 // Copy length bytes over:
+                long dataOffset = pdfSource.getOffset();
                 int left = length;
                 while ( left > 0 )
                 {
@@ -1265,27 +1442,24 @@ public abstract class BaseParser {
                         Log.w("Specified stream length " + length 
                                 + " is wrong. Fall back to reading stream until 'endstream'.", PDFBox.LOG_TAG);
                         
-                        // push back all read stream bytes
-                        // we got a buffered stream wrapper around filteredStream thus first flush to underlying stream
-                        out.flush();
-                        InputStream writtenStreamBytes = stream.getFilteredStream();
-                        ByteArrayOutputStream     bout = new ByteArrayOutputStream( length );
-                        
-                        while ( ( readCount = writtenStreamBytes.read( strmBuf ) ) >= 0 )
+                        if ( pdfSource.isSeekable() )
                         {
-                            bout.write( strmBuf, 0, readCount );
+                            pdfSource.seek( dataOffset );
                         }
-                        try
+                        else
                         {
+                            // push back all read stream bytes
+                            // we got a buffered stream wrapper around filteredStream thus first flush to underlying stream
+                            out.flush();
+                            InputStream writtenStreamBytes = stream.getFilteredStream();
+                            ByteArrayOutputStream     bout = new ByteArrayOutputStream( length );
+                            
+                            while ( ( readCount = writtenStreamBytes.read( strmBuf ) ) >= 0 )
+                            {
+                                bout.write( strmBuf, 0, readCount );
+                            }
                             pdfSource.unread( bout.toByteArray() );
                         }
-                        catch ( IOException ioe )
-                        {
-                            throw new WrappedIOException( "Could not push back " + bout.size() + 
-                                                          " bytes in order to reparse stream. " +
-                                                          "Try increasing push back buffer using system property " +
-                                                          PROP_PUSHBACK_SIZE, ioe );
-                        }
                         // create new filtered stream
                         out = stream.createFilteredStream( streamLength );
                         // scan until we find endstream:
@@ -1354,8 +1528,8 @@ public abstract class BaseParser {
      * and just close off objects with an "endobj" tag so we have to handle
      * this case as well.
      * 
-     * This method is optimized using buffered IO and reduced number of
-     * byte compare operations.
+     * The source is scanned in its buffer, the bytes before the keyword are
+     * written as they are found.
      * 
      * @param out  stream we write out to.
      * 
@@ -1363,99 +1537,7 @@ public abstract class BaseParser {
      */
     private void readUntilEndStream( final OutputStream out ) throws IOException
     {
-
-        int bufSize;
-        int charMatchCount = 0;
-        byte[] keyw = ENDSTREAM;
-        
-        final int quickTestOffset = 5;  // last character position of shortest keyword ('endobj')
-        
-        // read next chunk into buffer; already matched chars are added to beginning of buffer
-        while ( ( bufSize = pdfSource.read( strmBuf, charMatchCount, strmBufLen - charMatchCount ) ) > 0 ) 
-        {
-            bufSize += charMatchCount;
-            
-            int bIdx = charMatchCount;
-            int quickTestIdx;
-        
-            // iterate over buffer, trying to find keyword match
-            for ( int maxQuicktestIdx = bufSize - quickTestOffset; bIdx < bufSize; bIdx++ ) 
-            {
-                // reduce compare operations by first test last character we would have to
-                // match if current one matches; if it is not a character from keywords
-                // we can move behind the test character;
-                // this shortcut is inspired by Boyer–Moore string search algorithm
-                // and can reduce parsing time by approx. 20%
-                if ( ( charMatchCount == 0 ) &&
-                         ( ( quickTestIdx = bIdx + quickTestOffset ) < maxQuicktestIdx ) ) 
-                {
-                    
-                    final byte ch = strmBuf[quickTestIdx];
-                    if ( ( ch > 't' ) || ( ch < 'a' ) ) 
-                    {
-                        // last character we would have to match if current character would match
-                        // is not a character from keywords -> jump behind and start over
-                        bIdx = quickTestIdx;
-                        continue;
-                    }
-                }
-                
-                final byte ch = strmBuf[bIdx];  // could be negative - but we only compare to ASCII
-            
-                if ( ch == keyw[ charMatchCount ] ) 
-                {
-                    if ( ++charMatchCount == keyw.length ) 
-                    {
-                        // match found
-                        bIdx++;
-                        break;
-                    }
-                } 
-                else 
-                {
-                    if ( ( charMatchCount == 3 ) && ( ch == ENDOBJ[ charMatchCount ] ) ) 
-                    {
-                        // maybe ENDSTREAM is missing but we could have ENDOBJ
-                        keyw = ENDOBJ;
-                        charMatchCount++;
-                        
-                    } 
-                    else 
-                    {
-                        // no match; incrementing match start by 1 would be dumb since we already know matched chars
-                        // depending on current char read we may already have beginning of a new match:
-                        // 'e': first char matched;
-                        // 'n': if we are at match position idx 7 we already read 'e' thus 2 chars matched
-                        // for each other char we have to start matching first keyword char beginning with next 
-                        // read position
-                        charMatchCount = ( ch == E ) ? 1 : ( ( ch == N ) && ( charMatchCount == 7 ) ) ? 2 : 0;
-                        // search again for 'endstream'
-                        keyw = ENDSTREAM;
-                    }
-                } 
-            }  // for
-            
-            int contentBytes = Math.max( 0, bIdx - charMatchCount );
-            
-            // write buffer content until first matched char to output stream
-            if ( contentBytes > 0 )
-            {
-                out.write( strmBuf, 0, contentBytes );
-            }
-            if ( charMatchCount == keyw.length ) 
-            {
-                // keyword matched; unread matched keyword (endstream/endobj) and following buffered content
-                pdfSource.unread( strmBuf, contentBytes, bufSize - contentBytes );
-                break;
-                
-            } 
-            else 
-            {
-                // copy matched chars at start of buffer
-                System.arraycopy( keyw, 0, strmBuf, 0, charMatchCount );
-            }
-            
-        }  // while
+        pdfSource.copyUntil( out, ENDSTREAM, ENDOBJ );
     }
     
     /**
@@ -0,0 +1,24 @@
+package org.apache.pdfboxandroid.pdfparser;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.pdfboxandroid.cos.COSBase;
+import org.apache.pdfboxandroid.util.PDFOperator;
+
+/**
+ * An interface for visiting the operators of a content stream while it is
+ * parsed, see {@link PDFStreamParser#parse(IPDFOperatorVisitor)}.
+ */
+public interface IPDFOperatorVisitor {
+	/**
+     * Notification of an operator and the operands preceding it.
+     *
+     * @param operator The operator, the BI operator carries the parameters and
+     *                 the data of its inline image.
+     * @param operands The operands of the operator. The list is reused for the next
+     *                 operator, it must be copied if it is needed after the call.
+     * @throws IOException If there is an error processing the operator.
+     */
+    public void visitOperator( PDFOperator operator, List<COSBase> operands ) throws IOException;
+}
@@ -0,0 +1,627 @@
+package org.apache.pdfboxandroid.pdfparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.pdfboxandroid.PDFBox;
+import org.apache.pdfboxandroid.cos.COSBase;
+import org.apache.pdfboxandroid.cos.COSDictionary;
+import org.apache.pdfboxandroid.cos.COSDocument;
+import org.apache.pdfboxandroid.cos.COSName;
+import org.apache.pdfboxandroid.cos.COSNumber;
+import org.apache.pdfboxandroid.cos.COSObject;
+import org.apache.pdfboxandroid.cos.COSStream;
+import org.apache.pdfboxandroid.cos.ICOSParser;
+import org.apache.pdfboxandroid.io.RandomAccess;
+import org.apache.pdfboxandroid.io.RandomAccessMappedFile;
+import org.apache.pdfboxandroid.io.RandomAccessRead;
+import org.apache.pdfboxandroid.persistence.util.COSObjectKey;
+import org.apache.pdfboxandroid.persistence.util.COSXrefTable;
+
+import android.util.Log;
+
+/**
+ * PDFParser implementation which doesn't read the whole file upfront. Only the
+ * trailer and the chain of xref tables/streams (found via startxref and the
+ * /Prev entries) are read while parsing. Every other object is parsed from
+ * its xref offset the first time it is dereferenced using
+ * {@link COSObject#getObject()}.
+ *
+ * If the cross reference information is missing or broken the whole document
+ * is read using the sequential parser instead. If a single xref entry doesn't
+ * point to its object, the object is searched near the offset of the entry and
+ * then in the whole file.
+ */
+public class NonSequentialPDFParser extends PDFParser implements ICOSParser {
+	/**
+     * Number of bytes at the end of the file which are searched for startxref first.
+     */
+    private static final int DEFAULT_TRAIL_BYTECOUNT = 2048;
+
+    /**
+     * Number of bytes at the end of the file which are searched for startxref at most.
+     */
+    private static final int MAX_TRAIL_BYTECOUNT = 65536;
+
+    private static final char[] STARTXREF_MARKER = new char[] { 's', 't', 'a', 'r', 't', 'x', 'r', 'e', 'f' };
+
+    private static final char[] EOF_MARKER = new char[] { '%', '%', 'E', 'O', 'F' };
+
+    private static final String OBJ_STRING = "obj";
+
+    private static final String STREAM_STRING = "stream";
+
+    /**
+     * Number of bytes before and after a wrong xref offset which are searched for the object.
+     */
+    private static final int OBJECT_SEARCH_RANGE = 1024;
+
+    private static final int SCAN_BUFFER_SIZE = 65536;
+
+    /**
+     * Maximum length of 'num gen obj', the scanned chunks of the file overlap by it.
+     */
+    private static final int MAX_HEADER_LENGTH = 64;
+
+    private final RandomAccessRead raSource;
+
+    private final RandomAccess scratchFile;
+
+    /**
+     * Loads the objects stored in object streams, created when the first one is requested.
+     */
+    private ObjectStreamResolver objectStreamResolver;
+
+    /**
+     * The offsets of all objects found by scanning the whole file, created when the
+     * first object can't be found near its xref offset.
+     */
+    private Map<COSObjectKey, Long> scannedOffsets;
+
+    /**
+     * Constructs parser for the given file using the given scratch file. The
+     * file is read through memory mapped segments.
+     *
+     * @param inFile the PDF file to be read
+     * @param scratch the scratch file to store the streams, or null to use memory
+     *
+     * @throws IOException If there is an error opening the file.
+     */
+    public NonSequentialPDFParser(File inFile, RandomAccess scratch) throws IOException
+    {
+        this(new RandomAccessMappedFile(inFile), scratch);
+    }
+
+    /**
+     * Constructs parser for the given random access data.
+     *
+     * @param source the PDF data to be read, it is closed together with the document
+     * @param scratch the scratch file to store the streams, or null to use memory
+     *
+     * @throws IOException If there is an error initializing the parser.
+     */
+    public NonSequentialPDFParser(RandomAccessRead source, RandomAccess scratch) throws IOException
+    {
+        this(source, scratch, FORCE_PARSING);
+    }
+
+    /**
+     * Constructs parser for the given random access data.
+     *
+     * @param source the PDF data to be read, it is closed together with the document
+     * @param scratch the scratch file to store the streams, or null to use memory
+     * @param force When true, the sequential fallback parser will skip corrupt pdf objects
+     *
+     * @throws IOException If there is an error initializing the parser.
+     */
+    public NonSequentialPDFParser(RandomAccessRead source, RandomAccess scratch, boolean force)
+            throws IOException
+    {
+        super(source, force);
+        raSource = source;
+        scratchFile = scratch;
+    }
+
+    /**
+     * Reads the header, the trailer and the xref information. All other objects are
+     * parsed the first time they are accessed, thus the source is kept open until
+     * the document is closed.
+     *
+     * @throws IOException If there is an error reading from the source.
+     */
+    @Override
+    public void parse() throws IOException
+    {
+        try
+        {
+            initialParse();
+        }
+        catch( IOException e )
+        {
+            parseSequentially( e );
+        }
+        catch( RuntimeException e )
+        {
+            parseSequentially( e );
+        }
+    }
+
+    private void initialParse() throws IOException
+    {
+        document = scratchFile == null ? new COSDocument() : new COSDocument( scratchFile );
+        setDocument( document );
+
+        parseHeader();
+
+        long startXrefOffset = getStartxrefOffset();
+        Set<Long> visited = new HashSet<Long>();
+        long prev = startXrefOffset;
+        while( prev > 0 )
+        {
+            if( !visited.add( prev ) )
+            {
+                Log.w("Circular /Prev reference to xref at offset " + prev, PDFBox.LOG_TAG);
+                break;
+            }
+            prev = parseXrefSection( prev, visited );
+        }
+
+        xrefTrailerResolver.setStartxref( startXrefOffset );
+        COSDictionary trailer = xrefTrailerResolver.getTrailer();
+        // entries pointing outside of the file are repaired when their objects are loaded
+        COSXrefTable xrefTable = xrefTrailerResolver.getXrefTable();
+        document.setTrailer( trailer );
+        document.addXRefTable( xrefTable );
+        document.setStartXref( startXrefOffset );
+
+        if( !( trailer.getItem( COSName.ROOT ) instanceof COSObject ) )
+        {
+            throw new IOException( "Missing root object specification in trailer" );
+        }
+
+        // from now on objects are parsed when they are accessed
+        document.setParser( this );
+        readVersionInTrailer( trailer );
+    }
+
+    /**
+     * Repair fallback: reads the whole document from the beginning using the
+     * sequential parser. The new document uses the same scratch file.
+     */
+    private void parseSequentially( Exception cause ) throws IOException
+    {
+        Log.w("Can't read cross reference information (" + cause.getMessage() +
+                "), falling back to sequential parsing", PDFBox.LOG_TAG);
+        if( document != null )
+        {
+            // closing the document would close the scratch file of the caller
+            // and this parser, it is dropped after detaching its objects instead
+            document.setParser( null );
+            document = null;
+        }
+        if( objectStreamResolver != null )
+        {
+            objectStreamResolver.close();
+            objectStreamResolver = null;
+        }
+        xrefTrailerResolver = new XrefTrailerResolver();
+        setScratchFile( scratchFile );
+        pdfSource.seek( 0 );
+        super.parse();
+    }
+
+    /**
+     * Looks for the last startxref keyword at the end of the file and returns its value.
+     * The tail of the file is scanned backwards, the startxref keyword has to precede
+     * the last %%EOF marker if there is one. If it isn't found in the last few kilobytes
+     * the scanned part is extended, some files have a lot of garbage at their end.
+     *
+     * @return the offset of the last xref table/stream
+     * @throws IOException If startxref can't be found.
+     */
+    private long getStartxrefOffset() throws IOException
+    {
+        long fileLen = raSource.length();
+        int trailByteCount = (int) Math.min( fileLen, DEFAULT_TRAIL_BYTECOUNT );
+        while( true )
+        {
+            long trailOffset = fileLen - trailByteCount;
+            pdfSource.seek( trailOffset );
+            byte[] buf = pdfSource.readFully( trailByteCount );
+
+            int eofPos = lastIndexOf( EOF_MARKER, buf, buf.length );
+            int pos = lastIndexOf( STARTXREF_MARKER, buf, eofPos < 0 ? buf.length : eofPos );
+            if( pos >= 0 )
+            {
+                pdfSource.seek( trailOffset + pos );
+                if( !parseStartXref() )
+                {
+                    throw new IOException( "Can't read startxref at offset " + ( trailOffset + pos ) );
+                }
+                return document.getStartXref();
+            }
+            if( trailByteCount >= Math.min( fileLen, MAX_TRAIL_BYTECOUNT ) )
+            {
+                throw new IOException( "Missing 'startxref' marker." );
+            }
+            trailByteCount = (int) Math.min( Math.min( fileLen, MAX_TRAIL_BYTECOUNT ), trailByteCount * 4L );
+        }
+    }
+
+    /**
+     * Searches the last occurrence of the pattern which ends before the given index.
+     *
+     * @return the start index of the last match or -1 if there is none
+     */
+    private static int lastIndexOf( final char[] pattern, final byte[] buf, final int endOff )
+    {
+        for( int start = endOff - pattern.length; start >= 0; start-- )
+        {
+            int i = 0;
+            while( i < pattern.length && buf[ start + i ] == pattern[ i ] )
+            {
+                i++;
+            }
+            if( i == pattern.length )
+            {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the xref table and trailer or the xref stream at the given offset.
+     *
+     * @param offset the offset of the xref section
+     * @param visited the offsets of the xref sections parsed before
+     * @return the value of the /Prev entry or -1 if there is none
+     * @throws IOException If there is no valid xref section at the given offset.
+     */
+    private long parseXrefSection( long offset, Set<Long> visited ) throws IOException
+    {
+        checkXrefOffset( offset );
+        pdfSource.seek( offset );
+        skipSpaces();
+        if( pdfSource.peek() == 'x' )
+        {
+            if( !parseXrefTable( offset ) )
+            {
+                throw new IOException( "Expected xref table at offset " + offset );
+            }
+            skipSpaces();
+            if( !parseTrailer() )
+            {
+                throw new IOException( "Expected trailer after xref table at offset " + offset );
+            }
+            COSDictionary trailer = xrefTrailerResolver.getCurrentTrailer();
+
+            // hybrid files keep the entries of compressed objects in an additional xref stream
+            long xrefStmOffset = trailer.getLong( COSName.XREF_STM, -1L );
+            if( xrefStmOffset > 0 && visited.add( xrefStmOffset ) )
+            {
+                checkXrefOffset( xrefStmOffset );
+                parseXrefStream( parseXrefObjStream( xrefStmOffset ), xrefStmOffset );
+            }
+            return trailer.getLong( COSName.PREV, -1L );
+        }
+        else
+        {
+            COSStream xrefStream = parseXrefObjStream( offset );
+            parseXrefStream( xrefStream, offset );
+            return xrefStream.getLong( COSName.PREV, -1L );
+        }
+    }
+
+    /**
+     * Checks that the given offset of an xref section lies within the file before
+     * anything is parsed there.
+     */
+    private void checkXrefOffset( long offset ) throws IOException
+    {
+        if( offset <= 0 || offset >= raSource.length() )
+        {
+            throw new IOException( "XRef offset " + offset + " is outside of the file" );
+        }
+    }
+
+    /**
+     * Parses the xref stream object at the given offset. The dictionary is checked
+     * before the data of the stream is read.
+     */
+    private COSStream parseXrefObjStream( long offset ) throws IOException
+    {
+        pdfSource.seek( offset );
+        parseObjectHeader( null, offset );
+        skipSpaces();
+        COSBase dict = parseDirObject();
+        if( !isXrefStreamDictionary( dict ) || !readString().equals( STREAM_STRING ) )
+        {
+            throw new IOException( "Expected xref stream at offset " + offset );
+        }
+        unreadStreamKeyword();
+        return parseCOSStream( (COSDictionary) dict, document.getScratchFile() );
+    }
+
+    /**
+     * Tells if the given object may be the dictionary of an xref stream, that is a
+     * dictionary with a /W entry and, if it has a type, with the type /XRef.
+     */
+    private static boolean isXrefStreamDictionary( COSBase dict )
+    {
+        if( !( dict instanceof COSDictionary ) )
+        {
+            return false;
+        }
+        COSBase type = ( (COSDictionary) dict ).getItem( COSName.TYPE );
+        return ( (COSDictionary) dict ).getItem( COSName.W ) != null &&
+                ( type == null || COSName.XREF.equals( type ) );
+    }
+
+    /**
+     * Parses 'num gen obj'.
+     *
+     * @param key the expected object key, or null if it isn't checked
+     * @param offset the offset the object starts at, used for error messages
+     */
+    private void parseObjectHeader( COSObjectKey key, long offset ) throws IOException
+    {
+        skipSpaces();
+        long number = readObjectNumber();
+        int genNum = readGenerationNumber();
+        String objectKey = readString( 3 );
+        if( !objectKey.equals( OBJ_STRING ) )
+        {
+            throw new IOException( "expected='obj' actual='" + objectKey + "' at offset " + offset );
+        }
+        if( key != null && ( number != key.getNumber() || genNum != key.getGeneration() ) )
+        {
+            throw new IOException( "XRef entry of " + key + " points to object " +
+                    number + " " + genNum + " at offset " + offset );
+        }
+    }
+
+    /**
+     * Parses 'num gen obj', the following object and, if present, the attached stream.
+     *
+     * @param key the expected object key, or null if it isn't checked
+     * @param offset the offset the object starts at, used for error messages
+     */
+    private COSBase parseObjectHeaderAndBody( COSObjectKey key, long offset ) throws IOException
+    {
+        parseObjectHeader( key, offset );
+        skipSpaces();
+        COSBase pb = parseDirObject();
+        String endObjectKey = readString();
+        if( endObjectKey.equals( STREAM_STRING ) )
+        {
+            unreadStreamKeyword();
+            if( !( pb instanceof COSDictionary ) )
+            {
+                throw new IOException( "stream not preceded by dictionary at offset " + offset );
+            }
+            pb = parseCOSStream( (COSDictionary) pb, document.getScratchFile() );
+        }
+        return pb;
+    }
+
+    /**
+     * Pushes back the stream keyword which has been read, parseCOSStream() reads it again.
+     */
+    private void unreadStreamKeyword() throws IOException
+    {
+        pdfSource.unread( STREAM_STRING.getBytes( "ISO-8859-1" ) );
+        pdfSource.unread( ' ' );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized COSBase dereferenceCOSObject( COSObject obj ) throws IOException
+    {
+        COSObjectKey key = new COSObjectKey( obj.getObjectNumber().longValue(),
+                obj.getGenerationNumber().longValue() );
+        long offset = document.getXrefTable().getOffset( key.getNumber(), key.getGeneration() );
+        if( offset == COSXrefTable.NOT_FOUND || offset == 0 )
+        {
+            // references to undefined objects are treated as references to the null object
+            return null;
+        }
+        if( offset < 0 )
+        {
+            // the object is stored in a compressed object stream
+            if( objectStreamResolver == null )
+            {
+                objectStreamResolver = new ObjectStreamResolver( document, forceParsing );
+            }
+            return objectStreamResolver.dereferenceCOSObject( obj );
+        }
+
+        // dereferencing may happen while another object is parsed, e.g. for an indirect /Length
+        long savedOffset = pdfSource.getOffset();
+        try
+        {
+            long objectOffset = offset;
+            if( !isObjectHeaderAt( key, offset ) )
+            {
+                objectOffset = findObjectOffset( key, offset );
+                if( objectOffset < 0 )
+                {
+                    throw new IOException( "Object " + key + " not found, its xref entry points to offset " +
+                            offset );
+                }
+                Log.w("XRef entry of " + key + " points to offset " + offset + ", object found at offset " +
+                        objectOffset, PDFBox.LOG_TAG);
+                document.getXrefTable().setOffset( key.getNumber(), key.getGeneration(), objectOffset );
+            }
+            pdfSource.seek( objectOffset );
+            COSBase parsed = parseObjectHeaderAndBody( key, objectOffset );
+            obj.setObject( parsed );
+            return parsed;
+        }
+        finally
+        {
+            pdfSource.seek( savedOffset );
+        }
+    }
+
+    /**
+     * Tells if the header of the given object is found at the given offset.
+     */
+    private boolean isObjectHeaderAt( COSObjectKey key, long offset ) throws IOException
+    {
+        if( offset >= raSource.length() )
+        {
+            return false;
+        }
+        pdfSource.seek( offset );
+        try
+        {
+            parseObjectHeader( key, offset );
+            return true;
+        }
+        catch( IOException e )
+        {
+            return false;
+        }
+        catch( IllegalArgumentException e )
+        {
+            // too many digits for an object number
+            return false;
+        }
+    }
+
+    /**
+     * Searches the header of an object whose xref entry is wrong, first near the
+     * given offset, then in the whole file. The last object with the given key
+     * wins, as with an incremental update.
+     *
+     * @return the offset of the object or -1 if it can't be found
+     */
+    private long findObjectOffset( COSObjectKey key, long offset ) throws IOException
+    {
+        long length = raSource.length();
+        if( offset < length )
+        {
+            Map<COSObjectKey, Long> near = new HashMap<COSObjectKey, Long>();
+            scanObjectHeaders( Math.max( 0, offset - OBJECT_SEARCH_RANGE ),
+                    Math.min( length, offset + OBJECT_SEARCH_RANGE ), near );
+            Long found = near.get( key );
+            if( found != null )
+            {
+                return found.longValue();
+            }
+        }
+        if( scannedOffsets == null )
+        {
+            scannedOffsets = new HashMap<COSObjectKey, Long>();
+            scanObjectHeaders( 0, length, scannedOffsets );
+        }
+        Long found = scannedOffsets.get( key );
+        return found != null ? found.longValue() : -1;
+    }
+
+    /**
+     * Collects the offsets of all 'num gen obj' headers between the given offsets.
+     */
+    private void scanObjectHeaders( long start, long end, Map<COSObjectKey, Long> headers ) throws IOException
+    {
+        byte[] buffer = new byte[ SCAN_BUFFER_SIZE ];
+        long chunkStart = start;
+        while( chunkStart < end )
+        {
+            int length = (int) Math.min( buffer.length, end - chunkStart );
+            pdfSource.seek( chunkStart );
+            length = pdfSource.read( buffer, 0, length );
+            if( length <= 0 )
+            {
+                break;
+            }
+            boolean lastChunk = chunkStart + length >= end;
+            for( int i = 0; i + 3 <= length; i++ )
+            {
+                if( buffer[i] != 'o' || buffer[i + 1] != 'b' || buffer[i + 2] != 'j' )
+                {
+                    continue;
+                }
+                if( i + 3 < length ? !isDelimiter( buffer[i + 3] ) : !lastChunk )
+                {
+                    // e.g. 'objstm', or the keyword continues in the next chunk
+                    continue;
+                }
+                // walk back over the whitespace, the generation, the whitespace and the number
+                int genEnd = skipBackwards( buffer, i - 1, false );
+                int genStart = skipBackwards( buffer, genEnd, true ) + 1;
+                int numberEnd = skipBackwards( buffer, genStart - 1, false );
+                int pos = skipBackwards( buffer, numberEnd, true );
+                int numberStart = pos + 1;
+                if( genEnd == i - 1 || genStart > genEnd || genEnd - genStart >= 5 ||
+                        numberEnd == genStart - 1 || numberStart > numberEnd || numberEnd - numberStart >= 10 ||
+                        pos >= 0 && !isDelimiter( buffer[pos] ) || pos < 0 && chunkStart > start )
+                {
+                    continue;
+                }
+                long number = Long.parseLong( new String( buffer, numberStart, numberEnd - numberStart + 1,
+                        "ISO-8859-1" ) );
+                int generation = Integer.parseInt( new String( buffer, genStart, genEnd - genStart + 1,
+                        "ISO-8859-1" ) );
+                headers.put( new COSObjectKey( number, generation ), Long.valueOf( chunkStart + numberStart ) );
+            }
+            if( lastChunk )
+            {
+                break;
+            }
+            chunkStart += length - MAX_HEADER_LENGTH;
+        }
+    }
+
+    /**
+     * Tells if the given byte ends a keyword or a number.
+     */
+    private boolean isDelimiter( byte b )
+    {
+        return isWhitespace( b ) || isEndOfName( (char) b ) || b == '%';
+    }
+
+    /**
+     * Skips digits or whitespace backwards starting at the given index.
+     *
+     * @return the index of the first byte which isn't skipped, -1 at the start of the buffer
+     */
+    private int skipBackwards( byte[] buffer, int pos, boolean digits )
+    {
+        while( pos >= 0 && ( digits ? buffer[pos] >= '0' && buffer[pos] <= '9' : isWhitespace( buffer[pos] ) ) )
+        {
+            pos--;
+        }
+        return pos;
+    }
+
+    /**
+     * Resolves indirect stream lengths as soon as the xref table is known.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected int getIndirectStreamLength( COSObject lengthObject ) throws IOException
+    {
+        COSBase length = lengthObject.getObject();
+        return length instanceof COSNumber ? ( (COSNumber) length ).intValue() : -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException
+    {
+        if( objectStreamResolver != null )
+        {
+            objectStreamResolver.close();
+        }
+        pdfSource.close();
+    }
+}
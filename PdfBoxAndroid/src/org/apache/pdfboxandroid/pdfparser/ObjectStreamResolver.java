@@ -0,0 +1,160 @@
+package org.apache.pdfboxandroid.pdfparser;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.pdfboxandroid.PDFBox;
+import org.apache.pdfboxandroid.cos.COSBase;
+import org.apache.pdfboxandroid.cos.COSDocument;
+import org.apache.pdfboxandroid.cos.COSObject;
+import org.apache.pdfboxandroid.cos.COSStream;
+import org.apache.pdfboxandroid.cos.ICOSParser;
+import org.apache.pdfboxandroid.persistence.util.COSObjectKey;
+import org.apache.pdfboxandroid.persistence.util.COSXrefTable;
+
+import android.util.Log;
+
+/**
+ * Loads the objects stored in compressed object streams on demand. The xref
+ * table of the document maps those objects to the negated number of their
+ * object stream. An object stream is decoded when the first of its members is
+ * requested and is kept for its siblings; the least recently used object
+ * streams are released if more than the configured number are open.
+ */
+public class ObjectStreamResolver implements ICOSParser {
+	/**
+     * Default number of decoded object streams kept open.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 16;
+
+    private final COSDocument document;
+    private final boolean forceParsing;
+    private final Map<Long, PDFObjectStreamParser> parsers;
+
+    /**
+     * Constructor.
+     *
+     * @param doc The document whose compressed objects are to be loaded.
+     * @param forceParsingValue flag to skip malformed or otherwise unparseable
+     *                     input where possible
+     */
+    public ObjectStreamResolver( COSDocument doc, boolean forceParsingValue )
+    {
+        this( doc, forceParsingValue, DEFAULT_CACHE_SIZE );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param doc The document whose compressed objects are to be loaded.
+     * @param forceParsingValue flag to skip malformed or otherwise unparseable
+     *                     input where possible
+     * @param cacheSize The maximum number of decoded object streams kept open.
+     */
+    public ObjectStreamResolver( COSDocument doc, boolean forceParsingValue, final int cacheSize )
+    {
+        document = doc;
+        forceParsing = forceParsingValue;
+        parsers = new LinkedHashMap<Long, PDFObjectStreamParser>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Long, PDFObjectStreamParser> eldest )
+            {
+                if( size() > cacheSize )
+                {
+                    closeParser( eldest.getValue() );
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns true if the xref table of the given document contains objects
+     * stored in object streams.
+     *
+     * @param doc The document to check.
+     * @return true if there are compressed objects
+     */
+    public static boolean hasCompressedObjects( COSDocument doc )
+    {
+        return doc.getXrefTable().hasCompressedObjects();
+    }
+
+    /**
+     * Loads the given object if the xref table maps it to an object stream.
+     *
+     * {@inheritDoc}
+     */
+    public synchronized COSBase dereferenceCOSObject( COSObject obj ) throws IOException
+    {
+        long objectNumber = obj.getObjectNumber().longValue();
+        long offset = document.getXrefTable().getOffset( objectNumber, obj.getGenerationNumber().longValue() );
+        if( offset == COSXrefTable.NOT_FOUND || offset >= 0 )
+        {
+            // not a compressed object
+            return null;
+        }
+        COSBase parsed = parseCompressedObject( objectNumber, -offset );
+        obj.setObject( parsed );
+        return parsed;
+    }
+
+    /**
+     * Parses an object of the given object stream, the object stream is decoded
+     * if none of its members has been requested recently.
+     *
+     * @param objectNumber The number of the requested object.
+     * @param objectStreamNumber The number of the object stream containing the object.
+     * @return The parsed object or null if it isn't part of the object stream.
+     * @throws IOException If there is an error decoding the object stream or parsing the object.
+     */
+    public synchronized COSBase parseCompressedObject( long objectNumber, long objectStreamNumber )
+        throws IOException
+    {
+        Long streamKey = Long.valueOf( objectStreamNumber );
+        PDFObjectStreamParser parser = parsers.get( streamKey );
+        if( parser == null )
+        {
+            COSBase objectStream = document.getObjectFromPool( new COSObjectKey( objectStreamNumber, 0 ) ).getObject();
+            if( !( objectStream instanceof COSStream ) )
+            {
+                throw new IOException( "Object stream " + objectStreamNumber + " of object " +
+                        objectNumber + " can't be found" );
+            }
+            parser = new PDFObjectStreamParser( (COSStream)objectStream, document, forceParsing );
+            parsers.put( streamKey, parser );
+        }
+        return parser.parseObject( objectNumber );
+    }
+
+    private static void closeParser( PDFObjectStreamParser parser )
+    {
+        try
+        {
+            parser.close();
+        }
+        catch( IOException e )
+        {
+            Log.w("Error closing object stream parser: " + e.getMessage(), PDFBox.LOG_TAG);
+        }
+    }
+
+    /**
+     * Releases all decoded object streams.
+     *
+     * {@inheritDoc}
+     */
+    public synchronized void close() throws IOException
+    {
+        for( PDFObjectStreamParser parser : parsers.values() )
+        {
+            closeParser( parser );
+        }
+        parsers.clear();
+    }
+}
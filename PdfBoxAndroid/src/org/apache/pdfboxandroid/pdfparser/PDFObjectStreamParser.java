@@ -0,0 +1,123 @@
+package org.apache.pdfboxandroid.pdfparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.pdfboxandroid.cos.COSBase;
+import org.apache.pdfboxandroid.cos.COSDocument;
+import org.apache.pdfboxandroid.cos.COSName;
+import org.apache.pdfboxandroid.cos.COSStream;
+import org.apache.pdfboxandroid.io.RandomAccessBuffer;
+import org.apache.pdfboxandroid.io.RandomAccessRead;
+
+/**
+ * This will parse the objects of a compressed object stream (/Type /ObjStm).
+ * The stream is decoded once and only its header, the object numbers and
+ * offsets of the members, is parsed upfront. A member is parsed when it is
+ * requested by seeking to its offset, so all members share the decoded data.
+ */
+public class PDFObjectStreamParser extends BaseParser {
+	private final long[] objectNumbers;
+    private final long[] offsets;
+
+    /**
+     * Constructor.
+     *
+     * @param strm The object stream to parse.
+     * @param doc The document the object stream belongs to.
+     * @param forceParsing flag to skip malformed or otherwise unparseable
+     *                     input where possible
+     * @throws IOException If there is an error decoding the stream or reading its header.
+     */
+    public PDFObjectStreamParser( COSStream strm, COSDocument doc, boolean forceParsing )
+            throws IOException
+    {
+        this( decode( strm ), strm, doc, forceParsing );
+    }
+
+    private PDFObjectStreamParser( RandomAccessRead input, COSStream strm, COSDocument doc,
+            boolean forceParsing ) throws IOException
+    {
+        super( input, forceParsing );
+        setDocument( doc );
+
+        int numberOfObjects = strm.getInt( COSName.N, -1 );
+        int first = strm.getInt( COSName.FIRST, -1 );
+        if( numberOfObjects < 0 || first < 0 )
+        {
+            throw new IOException( "Invalid object stream, /N=" + numberOfObjects + " /First=" + first );
+        }
+        objectNumbers = new long[ numberOfObjects ];
+        offsets = new long[ numberOfObjects ];
+        for( int i = 0; i < numberOfObjects; i++ )
+        {
+            objectNumbers[i] = readObjectNumber();
+            offsets[i] = first + readLong();
+        }
+    }
+
+    /**
+     * Copies the decoded data of the object stream to a seekable buffer.
+     */
+    private static RandomAccessRead decode( COSStream strm ) throws IOException
+    {
+        RandomAccessBuffer buffer = new RandomAccessBuffer();
+        InputStream input = strm.getUnfilteredStream();
+        try
+        {
+            byte[] bytes = new byte[ 16384 ];
+            int read;
+            while( ( read = input.read( bytes ) ) != -1 )
+            {
+                buffer.write( bytes, 0, read );
+            }
+        }
+        finally
+        {
+            input.close();
+        }
+        buffer.seek( 0 );
+        return buffer;
+    }
+
+    /**
+     * Returns the numbers of the objects stored in the object stream.
+     *
+     * @return The object numbers in the order of the header.
+     */
+    public long[] getObjectNumbers()
+    {
+        return objectNumbers.clone();
+    }
+
+    /**
+     * Parses a single object of the object stream.
+     *
+     * @param objectNumber The number of the object.
+     * @return The parsed object or null if the object isn't part of the object stream.
+     * @throws IOException If there is an error parsing the object.
+     */
+    public COSBase parseObject( long objectNumber ) throws IOException
+    {
+        // the members are usually stored in ascending order and are few, a linear search is fine
+        for( int i = 0; i < objectNumbers.length; i++ )
+        {
+            if( objectNumbers[i] == objectNumber )
+            {
+                pdfSource.seek( offsets[i] );
+                return parseDirObject();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Releases the decoded data.
+     *
+     * @throws IOException If there is an error closing the data.
+     */
+    public void close() throws IOException
+    {
+        pdfSource.close();
+    }
+}
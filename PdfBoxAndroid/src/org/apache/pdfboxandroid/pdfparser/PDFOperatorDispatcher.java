@@ -0,0 +1,62 @@
+package org.apache.pdfboxandroid.pdfparser;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfboxandroid.cos.COSBase;
+import org.apache.pdfboxandroid.util.PDFOperator;
+
+/**
+ * A visitor which passes each operator to the visitor registered for its name,
+ * operators without a registered visitor go to the default visitor if there is one.
+ */
+public class PDFOperatorDispatcher implements IPDFOperatorVisitor {
+	private final Map<String, IPDFOperatorVisitor> visitors = new HashMap<String, IPDFOperatorVisitor>();
+    private IPDFOperatorVisitor defaultVisitor = null;
+
+    /**
+     * Registers the visitor of the given operator, replacing the previous one.
+     *
+     * @param operator The name of the operator, e.g. "Tf".
+     * @param visitor The visitor of the operator or null to remove it.
+     */
+    public void setVisitor( String operator, IPDFOperatorVisitor visitor )
+    {
+        if( visitor == null )
+        {
+            visitors.remove( operator );
+        }
+        else
+        {
+            visitors.put( operator, visitor );
+        }
+    }
+
+    /**
+     * Sets the visitor of the operators which have no visitor of their own.
+     *
+     * @param visitor The default visitor or null to skip those operators.
+     */
+    public void setDefaultVisitor( IPDFOperatorVisitor visitor )
+    {
+        defaultVisitor = visitor;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void visitOperator( PDFOperator operator, List<COSBase> operands ) throws IOException
+    {
+        IPDFOperatorVisitor visitor = visitors.get( operator.getOperation() );
+        if( visitor == null )
+        {
+            visitor = defaultVisitor;
+        }
+        if( visitor != null )
+        {
+            visitor.visitOperator( operator, operands );
+        }
+    }
+}
@@ -19,6 +19,7 @@ import org.apache.pdfboxandroid.cos.COSObject;
 import org.apache.pdfboxandroid.cos.COSStream;
 import org.apache.pdfboxandroid.exceptions.WrappedIOException;
 import org.apache.pdfboxandroid.io.RandomAccess;
+import org.apache.pdfboxandroid.io.RandomAccessRead;
 import org.apache.pdfboxandroid.pdmodel.PDDocument;
 import org.apache.pdfboxandroid.persistence.util.COSObjectKey;
 
@@ -84,6 +85,30 @@ public class PDFParser extends BaseParser {
         super(input, force);
 //        this.raf = rafi;
     }
+
+    /**
+     * Constructor of a parser which can seek in its input.
+     *
+     * @param input The random access data that contains the PDF document.
+     * @param force When true, the parser will skip corrupt pdf objects and
+     * will continue parsing at the next object in the file
+     *
+     * @throws IOException If there is an error initializing the parser.
+     */
+    protected PDFParser(RandomAccessRead input, boolean force) throws IOException
+    {
+        super(input, force);
+    }
+
+    /**
+     * Sets the scratch file of the document created by {@link #parse()}.
+     *
+     * @param scratch The scratch file to store the streams, or null to use memory.
+     */
+    void setScratchFile(RandomAccess scratch)
+    {
+        raf = scratch;
+    }
     
     /**
      * This will parse the stream and populate the COSDocument object.  This will close
@@ -178,10 +203,11 @@ public class PDFParser extends BaseParser {
             document.setTrailer( xrefTrailerResolver.getTrailer() );
             document.addXRefTable( xrefTrailerResolver.getXrefTable() );
 
-//            if( !document.isEncrypted() )
-//            {
-//                document.dereferenceObjectStreams();
-//            }
+            // objects stored in object streams are parsed the first time they are accessed
+            if( ObjectStreamResolver.hasCompressedObjects( document ) )
+            {
+                document.setParser( new ObjectStreamResolver( document, forceParsing ) );
+            }
             ConflictObj.resolveConflicts(document, conflictList);
         }
         catch( Throwable t )
@@ -568,7 +594,7 @@ public class PDFParser extends BaseParser {
      *
      * @param parsedTrailer the parsed catalog in the trailer
      */
-    private void readVersionInTrailer(COSDictionary parsedTrailer)
+    protected void readVersionInTrailer(COSDictionary parsedTrailer)
     {
         COSObject root = (COSObject) parsedTrailer.getItem(COSName.ROOT);
         if (root != null)
@@ -642,8 +668,7 @@ public class PDFParser extends BaseParser {
                     {
                         long currOffset = Long.parseLong(splitString[0]);
                         int currGenID = Integer.parseInt(splitString[1]);
-                        COSObjectKey objKey = new COSObjectKey(currObjID, currGenID);
-                        xrefTrailerResolver.setXRef(objKey, currOffset);
+                        xrefTrailerResolver.setXRef(currObjID, currGenID, currOffset);
                     }
                     catch(NumberFormatException e)
                     {
@@ -667,7 +692,7 @@ public class PDFParser extends BaseParser {
         return true;
     }
     
-    private void parseHeader() throws IOException
+    protected void parseHeader() throws IOException
     {
         // read first line
         String header = readLine();
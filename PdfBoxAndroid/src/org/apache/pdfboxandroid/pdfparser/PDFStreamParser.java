@@ -4,14 +4,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.apache.pdfboxandroid.cos.COSBase;
 import org.apache.pdfboxandroid.cos.COSBoolean;
 import org.apache.pdfboxandroid.cos.COSDictionary;
 import org.apache.pdfboxandroid.cos.COSName;
 import org.apache.pdfboxandroid.cos.COSNull;
-import org.apache.pdfboxandroid.cos.COSNumber;
 import org.apache.pdfboxandroid.cos.COSObject;
 import org.apache.pdfboxandroid.cos.COSStream;
 import org.apache.pdfboxandroid.io.RandomAccess;
@@ -28,6 +29,28 @@ public class PDFStreamParser extends BaseParser {
 	private List<Object> streamObjects = new ArrayList<Object>( 100 );
     private RandomAccess file;
     private PDFOperator lastBIToken = null;
+
+    /**
+     * The operators read by this parser.
+     */
+    private final TokenTable<PDFOperator> operators = new TokenTable<PDFOperator>()
+    {
+        @Override
+        protected PDFOperator create( String operator )
+        {
+            return PDFOperator.getOperator( operator );
+        }
+
+        /**
+         * BI and ID operators carry the data of their inline image.
+         */
+        @Override
+        protected boolean isCacheable( PDFOperator operator )
+        {
+            String operation = operator.getOperation();
+            return !operation.equals( "BI" ) && !operation.equals( "ID" );
+        }
+    };
     
     /**
      * Constructor that takes a stream to parse.
@@ -123,6 +146,101 @@ public class PDFStreamParser extends BaseParser {
         }
     }
     
+    /**
+     * Parses the stream and passes each operator with its operands to the given
+     * visitor, only the operands of the current operator are kept in memory. The
+     * tokens aren't collected, {@link #getTokens()} stays empty. This will close
+     * the stream when it is finished parsing.
+     *
+     * @param visitor The visitor of the operators.
+     *
+     * @throws IOException If there is an error parsing the stream or the visitor fails.
+     */
+    public void parse( IPDFOperatorVisitor visitor ) throws IOException
+    {
+        try
+        {
+            List<COSBase> operands = new ArrayList<COSBase>();
+            Object token = null;
+            while( (token = parseNextToken()) != null )
+            {
+                if( token instanceof PDFOperator )
+                {
+                    visitor.visitOperator( (PDFOperator)token, operands );
+                    operands.clear();
+                }
+                else
+                {
+                    operands.add( (COSBase)token );
+                }
+            }
+        }
+        finally
+        {
+            pdfSource.close();
+        }
+    }
+
+    /**
+     * Returns an iterator which parses the tokens of the stream one at a time
+     * instead of collecting them first. The stream is closed when the last token
+     * has been read. Errors are thrown as RuntimeExceptions wrapping the IOException.
+     *
+     * @return An iterator over the tokens of the stream.
+     */
+    public Iterator<Object> getTokenIterator()
+    {
+        return new Iterator<Object>()
+        {
+            private Object token;
+            private boolean finished = false;
+
+            private void tryNext()
+            {
+                if( token != null || finished )
+                {
+                    return;
+                }
+                try
+                {
+                    token = parseNextToken();
+                    if( token == null )
+                    {
+                        finished = true;
+                        pdfSource.close();
+                    }
+                }
+                catch( IOException e )
+                {
+                    throw new RuntimeException( e );
+                }
+            }
+
+            public boolean hasNext()
+            {
+                tryNext();
+                return token != null;
+            }
+
+            public Object next()
+            {
+                tryNext();
+                Object next = token;
+                if( next == null )
+                {
+                    throw new NoSuchElementException();
+                }
+                token = null;
+                return next;
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
     /**
      * This will parse the next token in the stream.
      *
@@ -181,46 +299,46 @@ public class PDFStreamParser extends BaseParser {
                 break;
             case 'n':   // null
             {
-                String nullString = readString();
-                if( nullString.equals( "null") )
+                int length = readKeyword();
+                if( isKeyword( length, "null" ) )
                 {
                     retval = COSNull.NULL;
                 }
                 else
                 {
-                    retval = PDFOperator.getOperator( nullString );
+                    retval = getToken( operators, length );
                 }
                 break;
             }
             case 't':
             case 'f':
             {
-                String next = readString();
-                if( next.equals( "true" ) )
+                int length = readKeyword();
+                if( isKeyword( length, "true" ) )
                 {
                     retval = COSBoolean.TRUE;
                     break;
                 }
-                else if( next.equals( "false" ) )
+                else if( isKeyword( length, "false" ) )
                 {
                     retval = COSBoolean.FALSE;
                 }
                 else
                 {
-                    retval = PDFOperator.getOperator( next );
+                    retval = getToken( operators, length );
                 }
                 break;
             }
             case 'R':
             {
-                String line = readString();
-                if( line.equals( "R" ) )
+                int length = readKeyword();
+                if( isKeyword( length, "R" ) )
                 {
                     retval = new COSObject( null );
                 }
                 else
                 {
-                    retval = PDFOperator.getOperator( line );
+                    retval = getToken( operators, length );
                 }
                 break;
             }
@@ -240,14 +358,13 @@ public class PDFStreamParser extends BaseParser {
             {
                 /* We will be filling buf with the rest of the number.  Only
                  * allow 1 "." and "-" and "+" at start of number. */
-                StringBuffer buf = new StringBuffer();
-                buf.append( c );
+                int length = appendToToken( 0, c );
                 pdfSource.read();
 
                 boolean dotNotRead = (c != '.');
                 while( Character.isDigit(( c = (char)pdfSource.peek()) ) || (dotNotRead && (c == '.')) )
                 {
-                    buf.append( c );
+                    length = appendToToken( length, c );
                     pdfSource.read();
 
                     if (dotNotRead && (c == '.'))
@@ -255,15 +372,15 @@ public class PDFStreamParser extends BaseParser {
                         dotNotRead = false;
                     }
                 }
-                retval = COSNumber.get( buf.toString() );
+                retval = getNumberToken( length );
                 break;
             }
             case 'B':
             {
-                String next = readString();
-                retval = PDFOperator.getOperator( next );
+                int length = readKeyword();
+                retval = getToken( operators, length );
 
-                if( next.equals( "BI" ) )
+                if( isKeyword( length, "BI" ) )
                 {
                     lastBIToken = (PDFOperator)retval;
                     COSDictionary imageParams = new COSDictionary();
@@ -341,15 +458,15 @@ public class PDFStreamParser extends BaseParser {
             default:
             {
                 //we must be an operator
-                String operator = readOperator();
-                if( operator.trim().length() == 0 )
+                int length = readOperatorBytes();
+                if( isBlankToken( length ) )
                 {
                     //we have a corrupt stream, stop reading here
                     retval = null;
                 }
                 else
                 {
-                    retval = PDFOperator.getOperator( operator );
+                    retval = getToken( operators, length );
                 }
             }
 
@@ -366,12 +483,22 @@ public class PDFStreamParser extends BaseParser {
      * @throws IOException If there is an error reading from the stream.
      */
     protected String readOperator() throws IOException
+    {
+        return getTokenString( readOperatorBytes() );
+    }
+
+    /**
+     * Reads an operator like {@link #readOperator()} into the token buffer.
+     *
+     * @return The length of the operator.
+     *
+     * @throws IOException If there is an error reading from the stream.
+     */
+    private int readOperatorBytes() throws IOException
     {
         skipSpaces();
 
-        //average string size is around 2 and the normal string buffer size is
-        //about 16 so lets save some space.
-        StringBuffer buffer = new StringBuffer(4);
+        int length = 0;
         int nextChar = pdfSource.peek();
         while(
             nextChar != -1 && // EOF
@@ -384,19 +511,19 @@ public class PDFStreamParser extends BaseParser {
             (nextChar < '0' ||
              nextChar > '9' ) )
         {
-            char currentChar = (char)pdfSource.read();
+            int currentChar = pdfSource.read();
             nextChar = pdfSource.peek();
-            buffer.append( currentChar );
+            length = appendToToken( length, currentChar );
             // Type3 Glyph description has operators with a number in the name
             if (currentChar == 'd' && (nextChar == '0' || nextChar == '1') ) 
             {
-                buffer.append( (char)pdfSource.read() );
+                length = appendToToken( length, pdfSource.read() );
                 nextChar = pdfSource.peek();
             }
         }
-        return buffer.toString();
+        return length;
     }
-    
+
     /**
      * This will get the tokens that were parsed from the stream.
      *
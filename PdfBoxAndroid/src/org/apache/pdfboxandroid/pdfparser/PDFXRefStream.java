@@ -64,10 +64,17 @@ public class PDFXRefStream implements PDFXRef {
             value.nextFree = entry.getKey().getNumber();
             streamData.put((int)value.nextFree, value);
         }
+        else if (entry.getObjectStreamNumber() >= 0)
+        {
+            // an object stored in an object stream, the offset is its index within the stream
+            ObjectStreamReference value = new ObjectStreamReference();
+            value.objectNumberOfObjectStream = entry.getObjectStreamNumber();
+            value.offset = entry.getOffset();
+            streamData.put((int)entry.getKey().getNumber(), value);
+        }
         else
         {
-            // we don't care for ObjectStreamReferences for now and only handle
-            // normal references that would be f-Entrys in the xref table.
+            // a normal reference that would be a n-Entry in the xref table.
             NormalReference value = new NormalReference();
             value.genNumber = entry.getKey().getGeneration();
             value.offset = entry.getOffset();
@@ -133,8 +140,12 @@ public class PDFXRefStream implements PDFXRef {
         Set<COSName> keySet = stream.keySet();
         for ( COSName cosName : keySet )
         {
-            COSBase dictionaryObject = stream.getDictionaryObject(cosName);
-            dictionaryObject.setDirect(true);
+            // the catalog and the info dictionary are referenced, not inlined
+            if (!COSName.ROOT.equals(cosName) && !COSName.INFO.equals(cosName))
+            {
+                COSBase dictionaryObject = stream.getDictionaryObject(cosName);
+                dictionaryObject.setDirect(true);
+            }
         }
         return stream;
     }
@@ -203,8 +214,8 @@ public class PDFXRefStream implements PDFXRef {
             {
                 ObjectStreamReference objStream = (ObjectStreamReference)entry;
                 wMax[0] = Math.max(wMax[0], ENTRY_OBJSTREAM); // the type field for a objstm reference
-                wMax[1] = Math.max(wMax[1], objStream.offset);
-                wMax[2] = Math.max(wMax[2], objStream.objectNumberOfObjectStream);
+                wMax[1] = Math.max(wMax[1], objStream.objectNumberOfObjectStream);
+                wMax[2] = Math.max(wMax[2], objStream.offset);
             }
             // TODO add here if new standard versions define new types
             else
@@ -248,8 +259,8 @@ public class PDFXRefStream implements PDFXRef {
             {
                 ObjectStreamReference objStream = (ObjectStreamReference)entry;
                 writeNumber(os, ENTRY_OBJSTREAM, w[0]);
-                writeNumber(os, objStream.offset, w[1]);
-                writeNumber(os, objStream.objectNumberOfObjectStream, w[2]);
+                writeNumber(os, objStream.objectNumberOfObjectStream, w[1]);
+                writeNumber(os, objStream.offset, w[2]);
             }
             // TODO add here if new standard versions define new types
             else
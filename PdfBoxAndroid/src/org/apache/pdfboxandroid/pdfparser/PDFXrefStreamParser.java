@@ -1,7 +1,6 @@
 package org.apache.pdfboxandroid.pdfparser;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Iterator;
 
 import org.apache.pdfboxandroid.cos.COSArray;
@@ -10,7 +9,6 @@ import org.apache.pdfboxandroid.cos.COSDocument;
 import org.apache.pdfboxandroid.cos.COSInteger;
 import org.apache.pdfboxandroid.cos.COSName;
 import org.apache.pdfboxandroid.cos.COSStream;
-import org.apache.pdfboxandroid.persistence.util.COSObjectKey;
 
 /**
  * This will parse a PDF 1.5 (or better) Xref stream and
@@ -20,7 +18,12 @@ import org.apache.pdfboxandroid.persistence.util.COSObjectKey;
  *  @version $Revision: 1.0 $
  */
 public class PDFXrefStreamParser extends BaseParser {
-	private COSStream stream;
+	/**
+     * The size of the buffer the entries are decoded from.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    private COSStream stream;
     private XrefTrailerResolver xrefTrailerResolver;
 
 	/**
@@ -47,7 +50,7 @@ public class PDFXrefStreamParser extends BaseParser {
     }
     
     /**
-     * Parses through the unfiltered stream and populates the xrefTable HashMap.
+     * Parses through the unfiltered stream and passes the entries to the resolver.
      * @throws IOException If there is an error while parsing the stream.
      */
     public void parse() throws IOException
@@ -66,22 +69,13 @@ public class PDFXrefStreamParser extends BaseParser {
                 indexArray.add(stream.getDictionaryObject(COSName.SIZE));
             }
 
-            ArrayList<Integer> objNums = new ArrayList<Integer>();
-
             /*
-             * Populates objNums with all object numbers available
+             * The object numbers are walked range by range instead of being
+             * collected up front
              */
             Iterator<COSBase> indexIter = indexArray.iterator();
-            while(indexIter.hasNext())
-            {
-                int objID = ((COSInteger)indexIter.next()).intValue();
-                int size = ((COSInteger)indexIter.next()).intValue();
-                for(int i = 0; i < size; i++)
-                {
-                    objNums.add(new Integer(objID + i));
-                }
-            }
-            Iterator<Integer> objIter = objNums.iterator();
+            long objID = 0;
+            long rangeEnd = 0;
             /*
              * Calculating the size of the line in bytes
              */
@@ -89,73 +83,82 @@ public class PDFXrefStreamParser extends BaseParser {
             int w1 = xrefFormat.getInt(1);
             int w2 = xrefFormat.getInt(2);
             int lineSize = w0 + w1 + w2;
+            if(w0 < 0 || w1 < 0 || w2 < 0 || lineSize == 0)
+            {
+                throw new IOException("Invalid /W array of xref stream: " + xrefFormat);
+            }
 
-            while(pdfSource.available() > 0 && objIter.hasNext())
+            /*
+             * The entries are decoded in bulk from one buffer holding whole lines,
+             * a line split by the end of the buffer is moved to its start.
+             */
+            byte[] buffer = new byte[Math.max(1, BUFFER_SIZE / lineSize) * lineSize];
+            int filled = 0;
+            int pos = 0;
+            while(true)
             {
-                byte[] currLine = new byte[lineSize];
-                pdfSource.read(currLine);
+                while(objID == rangeEnd && indexIter.hasNext())
+                {
+                    objID = ((COSInteger)indexIter.next()).longValue();
+                    rangeEnd = objID + ((COSInteger)indexIter.next()).longValue();
+                }
+                if(objID == rangeEnd)
+                {
+                    break;
+                }
+                if(filled - pos < lineSize)
+                {
+                    filled -= pos;
+                    System.arraycopy(buffer, pos, buffer, 0, filled);
+                    pos = 0;
+                    int read;
+                    while(filled < buffer.length &&
+                            (read = pdfSource.read(buffer, filled, buffer.length - filled)) > 0)
+                    {
+                        filled += read;
+                    }
+                    if(filled < lineSize)
+                    {
+                        break;
+                    }
+                }
 
-                int type = 0;
                 /*
-                 * Grabs the number of bytes specified for the first column in
-                 * the W array and stores it.
+                 * A missing first column means that all entries are of type 1.
                  */
-                for(int i = 0; i < w0; i++)
-                {
-                    type += (currLine[i] & 0x00ff) << ((w0 - i - 1)* 8);
-                }
+                long type = w0 == 0 ? 1 : readField(buffer, pos, w0);
                 //Need to remember the current objID
-                Integer objID = objIter.next();
+                long objNumber = objID++;
                 /*
                  * 3 different types of entries.
                  */
-                switch(type)
+                if(type == 1)
                 {
-                    case 0:
-                        /*
-                         * Skipping free objects
-                         */
-                        break;
-                    case 1:
-                        int offset = 0;
-                        for(int i = 0; i < w1; i++)
-                        {
-                            offset += (currLine[i + w0] & 0x00ff) << ((w1 - i - 1) * 8);
-                        }
-                        int genNum = 0;
-                        for(int i = 0; i < w2; i++)
-                        {
-                            genNum += (currLine[i + w0 + w1] & 0x00ff) << ((w2 - i - 1) * 8);
-                        }
-                        COSObjectKey objKey = new COSObjectKey(objID.intValue(), genNum);
-                        xrefTrailerResolver.setXRef(objKey, offset);
-                        break;
-                    case 2:
-                        /*
-                         * object stored in object stream; 2nd argument is object number of object stream;
-                         * 3rd argument index of object within object stream
-                         * 
-                         * For sequential PDFParser we do not need this information
-                         * because
-                         * These objects are handled by the dereferenceObjects() method
-                         * since they're only pointing to object numbers
-                         * 
-                         * However for XRef aware parsers we have to know which objects contain
-                         * object streams. We will store this information in normal xref mapping
-                         * table but add object stream number with minus sign in order to
-                         * distinguish from file offsets
-                         */
-                        int objstmObjNr = 0;
-                        for(int i = 0; i < w1; i++)
-                        {
-                            objstmObjNr += (currLine[i + w0] & 0x00ff) << ((w1 - i - 1) * 8);
-                        }    
-                        objKey = new COSObjectKey( objID.intValue(), 0 );
-                        xrefTrailerResolver.setXRef( objKey, -objstmObjNr );
-                        break;
-                    default:
-                        break;
+                    long offset = readField(buffer, pos + w0, w1);
+                    long genNum = readField(buffer, pos + w0 + w1, w2);
+                    xrefTrailerResolver.setXRef(objNumber, genNum, offset);
                 }
+                else if(type == 2)
+                {
+                    /*
+                     * object stored in object stream; 2nd argument is object number of object stream;
+                     * 3rd argument index of object within object stream
+                     * 
+                     * For sequential PDFParser we do not need this information
+                     * because
+                     * These objects are handled by the dereferenceObjects() method
+                     * since they're only pointing to object numbers
+                     * 
+                     * However for XRef aware parsers we have to know which objects contain
+                     * object streams. We will store this information in normal xref mapping
+                     * table but add object stream number with minus sign in order to
+                     * distinguish from file offsets
+                     */
+                    long objstmObjNr = readField(buffer, pos + w0, w1);
+                    xrefTrailerResolver.setXRef( objNumber, 0, -objstmObjNr );
+                }
+                // free objects (type 0) and unknown types are skipped
+                pos += lineSize;
             }
         }
         finally
@@ -163,4 +166,17 @@ public class PDFXrefStreamParser extends BaseParser {
             pdfSource.close();
         }
     }
+
+    /**
+     * Reads a big-endian field of the given width, a missing field is 0.
+     */
+    private static long readField(byte[] buffer, int start, int width)
+    {
+        long value = 0;
+        for(int i = start; i < start + width; i++)
+        {
+            value = (value << 8) | (buffer[i] & 0xff);
+        }
+        return value;
+    }
 }
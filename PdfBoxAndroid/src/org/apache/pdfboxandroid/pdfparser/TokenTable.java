@@ -0,0 +1,127 @@
+package org.apache.pdfboxandroid.pdfparser;
+
+import java.io.IOException;
+
+/**
+ * Interns the names or operators read by a parser by their bytes, so that a token
+ * which has been read before is found without creating a string. A token which
+ * isn't in the table yet is created from its string once and kept, up to a limit.
+ * The table belongs to one parser and isn't synchronized.
+ *
+ * @param <T> The type of the interned tokens.
+ */
+abstract class TokenTable<T> {
+	/**
+     * The number of tokens kept at most, the rest is created on every occurrence.
+     */
+    private static final int MAX_SIZE = 4096;
+
+    private byte[][] keys = new byte[64][];
+    private Object[] values = new Object[64];
+    private int size = 0;
+
+    /**
+     * Returns the token with the given bytes.
+     *
+     * @param bytes The buffer containing the bytes of the token.
+     * @param length The length of the token, starting at index 0.
+     * @return The token.
+     * @throws IOException If there is an error creating the token.
+     */
+    @SuppressWarnings("unchecked")
+    T get( byte[] bytes, int length ) throws IOException
+    {
+        int mask = keys.length - 1;
+        int index = hash( bytes, length ) & mask;
+        byte[] key;
+        while( ( key = keys[index] ) != null )
+        {
+            if( equals( key, bytes, length ) )
+            {
+                return (T)values[index];
+            }
+            index = ( index + 1 ) & mask;
+        }
+        T value = create( new String( bytes, 0, length, "ISO-8859-1" ) );
+        if( isCacheable( value ) && size < MAX_SIZE )
+        {
+            byte[] copy = new byte[length];
+            System.arraycopy( bytes, 0, copy, 0, length );
+            keys[index] = copy;
+            values[index] = value;
+            if( ++size * 2 > keys.length )
+            {
+                rehash();
+            }
+        }
+        return value;
+    }
+
+    private static int hash( byte[] bytes, int length )
+    {
+        int hash = 0;
+        for( int i = 0; i < length; i++ )
+        {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ ( hash >>> 16 );
+    }
+
+    private static boolean equals( byte[] key, byte[] bytes, int length )
+    {
+        if( key.length != length )
+        {
+            return false;
+        }
+        for( int i = 0; i < length; i++ )
+        {
+            if( key[i] != bytes[i] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash()
+    {
+        byte[][] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new byte[oldKeys.length * 2][];
+        values = new Object[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for( int i = 0; i < oldKeys.length; i++ )
+        {
+            byte[] key = oldKeys[i];
+            if( key != null )
+            {
+                int index = hash( key, key.length ) & mask;
+                while( keys[index] != null )
+                {
+                    index = ( index + 1 ) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Creates the token with the given string.
+     *
+     * @param token The string of the token.
+     * @return The token.
+     */
+    protected abstract T create( String token );
+
+    /**
+     * Tells if the given token may be returned again for the same bytes.
+     *
+     * @param token A token returned by {@link #create(String)}.
+     * @return true if the token may be kept in the table
+     */
+    protected boolean isCacheable( T token )
+    {
+        return true;
+    }
+}
@@ -3,13 +3,16 @@ package org.apache.pdfboxandroid.pdfparser;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.pdfboxandroid.PDFBox;
 import org.apache.pdfboxandroid.cos.COSDictionary;
 import org.apache.pdfboxandroid.cos.COSName;
 import org.apache.pdfboxandroid.persistence.util.COSObjectKey;
+import org.apache.pdfboxandroid.persistence.util.COSXrefTable;
 
 import android.util.Log;
 
@@ -40,7 +43,7 @@ public class XrefTrailerResolver {
     private class XrefTrailerObj
     {
         protected COSDictionary trailer = null;
-        private final Map<COSObjectKey, Long> xrefTable = new HashMap<COSObjectKey, Long>();
+        private final COSXrefTable xrefTable = new COSXrefTable();
         
         /**
          *  Default cosntructor.
@@ -81,6 +84,7 @@ public class XrefTrailerResolver {
 
         XrefTrailerObj curObj = bytePosToXrefMap.get( startxrefBytePosValue );
         List<Long>  xrefSeqBytePos = new ArrayList<Long>();
+        Set<Long>   xrefStmBytePositions = new HashSet<Long>();
 
         if ( curObj == null )
         {
@@ -98,6 +102,22 @@ public class XrefTrailerResolver {
             xrefSeqBytePos.add( startxrefBytePosValue );
             while ( curObj.trailer != null )
             {
+                // hybrid files keep the entries of compressed objects in an additional
+                // xref stream, added before the table so that the table takes precedence
+                long xrefStmBytePos = curObj.trailer.getLong( COSName.XREF_STM, -1L );
+                if ( xrefStmBytePos != -1 )
+                {
+                    if ( bytePosToXrefMap.containsKey( xrefStmBytePos ) )
+                    {
+                        xrefSeqBytePos.add( xrefStmBytePos );
+                        xrefStmBytePositions.add( xrefStmBytePos );
+                    }
+                    else
+                    {
+                        Log.w( "Did not found XRef stream pointed to by 'XRefStm' key at position " + xrefStmBytePos, PDFBox.LOG_TAG);
+                    }
+                }
+
                 long prevBytePos = curObj.trailer.getLong( COSName.PREV, -1L );
                 if ( prevBytePos == -1 )
                 {
@@ -126,7 +146,8 @@ public class XrefTrailerResolver {
         for ( Long bPos : xrefSeqBytePos )
         {
             curObj = bytePosToXrefMap.get( bPos );
-            if ( curObj.trailer != null )
+            // the dictionary of an additional xref stream isn't part of the trailer
+            if ( curObj.trailer != null && !xrefStmBytePositions.contains( bPos ) )
             {
                 resolvedXrefTrailer.trailer.addAll( curObj.trailer );
             }
@@ -146,13 +167,23 @@ public class XrefTrailerResolver {
         return ( resolvedXrefTrailer == null ) ? null : resolvedXrefTrailer.trailer;
     }
     
+    /**
+     * Returns the trailer last set by {@link #setTrailer(COSDictionary)}.
+     *
+     * @return the trailer of the current XRef object, or null if none was set
+     */
+    public COSDictionary getCurrentTrailer()
+    {
+        return ( curXrefTrailerObj == null ) ? null : curXrefTrailerObj.trailer;
+    }
+    
     /**
      * Gets the resolved xref table. Might return <code>null</code> in case
      *  {@link #setStartxref(int)} was not called before.
      *
      * @return the xrefTable if available
      */
-    public Map<COSObjectKey, Long> getXrefTable()
+    public COSXrefTable getXrefTable()
     {
         return ( resolvedXrefTrailer == null ) ? null : resolvedXrefTrailer.xrefTable;
     }
@@ -190,13 +221,25 @@ public class XrefTrailerResolver {
      * @param offset The byte offset in this file
      */
     public void setXRef( COSObjectKey objKey, long offset )
+    {
+        setXRef( objKey.getNumber(), objKey.getGeneration(), offset );
+    }
+
+    /**
+     * Populate XRef table of current XRef object without creating an object key.
+     * @param objNumber The object number
+     * @param genNumber The generation number
+     * @param offset The byte offset in this file or the negated number of the
+     *               object stream containing the object
+     */
+    public void setXRef( long objNumber, long genNumber, long offset )
     {
         if ( curXrefTrailerObj == null )
         {
             // should not happen...
-            Log.w( "Cannot add XRef entry for '" + objKey.getNumber() + "' because XRef start was not signalled."  , PDFBox.LOG_TAG);
+            Log.w( "Cannot add XRef entry for '" + objNumber + "' because XRef start was not signalled."  , PDFBox.LOG_TAG);
             return;
         }
-        curXrefTrailerObj.xrefTable.put( objKey, offset );
+        curXrefTrailerObj.xrefTable.setOffset( objNumber, genNumber, offset );
     }
 }
@@ -1,14 +1,155 @@
 package org.apache.pdfboxandroid.pdfwriter;
 
 import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
+/**
+ * An input stream which only returns the bytes of the given byte ranges of the
+ * underlying stream, e.g. the signed parts of a document. The bytes between the
+ * ranges are skipped, nothing is buffered.
+ */
 public class COSFilterInputStream extends FilterInputStream {
 	int[] byteRange;
-	
+	long position = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in The underlying stream, positioned at its start.
+	 * @param byteRange Pairs of start and length of the ranges to be read, in ascending order.
+	 */
 	public COSFilterInputStream(InputStream in, int[] byteRange)
 	  {
 	    super(in);
 	    this.byteRange = byteRange;
 	  }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException
+    {
+        if (nextAvailable() <= 0)
+        {
+            return -1;
+        }
+        int i = super.read();
+        if (i > -1)
+        {
+            ++position;
+        }
+        return i;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b) throws IOException
+    {
+        return read(b, 0, b.length);
+    }
+
+    /**
+     * Reads up to the end of the current byte range.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+        long remaining = nextAvailable();
+        if (remaining <= 0)
+        {
+            return -1;
+        }
+        int read = super.read(b, off, (int)Math.min(len, remaining));
+        if (read > 0)
+        {
+            position += read;
+        }
+        return read;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long skip(long n) throws IOException
+    {
+        byte[] buffer = new byte[(int)Math.min(n, 4096)];
+        long skipped = 0;
+        while (skipped < n)
+        {
+            int read = read(buffer, 0, (int)Math.min(n - skipped, buffer.length));
+            if (read == -1)
+            {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() throws IOException
+    {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    /**
+     * Moves to the next byte within a range.
+     *
+     * @return The number of bytes left in the current range, 0 if all ranges have been read.
+     */
+    private long nextAvailable() throws IOException
+    {
+        for (int i = 0; i + 1 < byteRange.length; i += 2)
+        {
+            long end = (long)byteRange[i] + byteRange[i + 1];
+            if (position < end)
+            {
+                skipFully(byteRange[i] - position);
+                return position < byteRange[i] ? 0 : end - position;
+            }
+        }
+        return 0;
+    }
+
+    private void skipFully(long n) throws IOException
+    {
+        while (n > 0)
+        {
+            long skipped = in.skip(n);
+            if (skipped <= 0)
+            {
+                // some streams can't skip, fall back to reading
+                if (in.read() == -1)
+                {
+                    return;
+                }
+                skipped = 1;
+            }
+            position += skipped;
+            n -= skipped;
+        }
+    }
 }
@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.channels.FileChannel;
 
+import org.apache.pdfboxandroid.io.RandomAccessFileInputStream;
 import org.apache.pdfboxandroid.util.StringUtil;
 
 /**
@@ -58,6 +59,69 @@ public class COSStandardOutputStream extends FilterOutputStream {
 		}
 	}
 
+	/**
+	 * COSOutputStream constructor for a stream which doesn't start at the
+	 * beginning of the file, e.g. an incremental update appended to a document.
+	 *
+	 * @param out The underlying stream to write to.
+	 * @param position The offset of the first byte written to this stream in the file.
+	 */
+	public COSStandardOutputStream(OutputStream out, long position)
+	{
+		this(out);
+		pos = position;
+	}
+
+	/**
+	 * This will write some byte to the stream.
+	 *
+	 * @param b The source byte array.
+	 * @param off The offset into the array to start writing.
+	 * @param len The number of bytes to write.
+	 *
+	 * @throws IOException If the underlying stream throws an exception.
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		setOnNewLine(false);
+		out.write(b, off, len);
+		pos += len;
+	}
+
+	/**
+	 * This will write a single byte to the stream.
+	 *
+	 * @param b The byte to write to the stream.
+	 *
+	 * @throws IOException If there is an error writing to the underlying stream.
+	 */
+	@Override
+	public void write(int b) throws IOException
+	{
+		setOnNewLine(false);
+		out.write(b);
+		pos++;
+	}
+
+	/**
+	 * This will copy the remaining data of the given stream, e.g. the encoded
+	 * data of a stream object, without buffering it. The data is transferred by
+	 * the file system if both the data and this stream are in files.
+	 *
+	 * @param input The data to write.
+	 * @return The number of bytes written.
+	 *
+	 * @throws IOException If there is an error reading or writing the data.
+	 */
+	public long write(RandomAccessFileInputStream input) throws IOException
+	{
+		setOnNewLine(false);
+		long written = input.writeTo(out, fileChannel);
+		pos += written;
+		return written;
+	}
+
 	/**
 	 * This will write an EOL to the stream.
 	 *
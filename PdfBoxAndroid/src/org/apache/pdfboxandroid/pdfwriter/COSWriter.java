@@ -1,6 +1,5 @@
 package org.apache.pdfboxandroid.pdfwriter;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -9,7 +8,6 @@ import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.SignatureException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
@@ -38,6 +36,9 @@ import org.apache.pdfboxandroid.cos.COSStream;
 import org.apache.pdfboxandroid.cos.COSString;
 import org.apache.pdfboxandroid.cos.ICOSVisitor;
 import org.apache.pdfboxandroid.exceptions.COSVisitorException;
+import org.apache.pdfboxandroid.exceptions.SignatureException;
+import org.apache.pdfboxandroid.io.RandomAccessBuffer;
+import org.apache.pdfboxandroid.io.RandomAccessFileInputStream;
 import org.apache.pdfboxandroid.pdfparser.PDFXRefStream;
 import org.apache.pdfboxandroid.pdmodel.PDDocument;
 import org.apache.pdfboxandroid.pdmodel.interactive.digitalsignature.SignatureInterface;
@@ -136,6 +137,16 @@ public class COSWriter implements ICOSVisitor {
      */
     public static final byte[] ENDSTREAM = StringUtil.getBytes("endstream");
 
+    /**
+     * The default number of objects packed into a single object stream.
+     */
+    public static final int DEFAULT_OBJECT_STREAM_SIZE = 100;
+
+    /**
+     * The minimum version of a PDF using object and cross reference streams.
+     */
+    private static final float COMPRESSED_VERSION = 1.5f;
+
     private NumberFormat formatXrefOffset = new DecimalFormat("0000000000");
     /**
      * The decimal format for the xref object generation number data.
@@ -196,6 +207,21 @@ public class COSWriter implements ICOSVisitor {
     
     private FileInputStream in;
 
+    private boolean compress = false;
+
+    private int objectStreamSize = DEFAULT_OBJECT_STREAM_SIZE;
+
+    // the xref entries of the objects of the object stream being filled
+    private List<COSWriterXRefEntry> objectStreamEntries = new ArrayList<COSWriterXRefEntry>();
+
+    // the offsets of these objects within the object data
+    private List<Long> objectStreamOffsets = new ArrayList<Long>();
+
+    // the object data of the object stream being filled
+    private ByteArrayOutputStream objectStreamData = null;
+
+    private COSStandardOutputStream objectStreamOutput = null;
+
 	/**
 	 * COSWriter constructor comment.
 	 *
@@ -210,6 +236,27 @@ public class COSWriter implements ICOSVisitor {
 		formatDecimal.setGroupingUsed( false );
 	}
 
+	/**
+	 * COSWriter constructor for incremental updates. The update is appended to
+	 * the document, a signature is computed over the data read from the given
+	 * input stream.
+	 *
+	 * @param os The wrapped output stream, positioned at the end of the document.
+	 * @param is The input stream of the document file.
+	 * @param startPosition The offset in the document file of the first byte written
+	 *        to the output stream, the xref offsets are based on it.
+	 */
+	public COSWriter(OutputStream os, FileInputStream is, long startPosition)
+	{
+		super();
+		setOutput(os);
+		setStandardOutput(new COSStandardOutputStream(output, startPosition));
+		formatDecimal.setMaximumFractionDigits( 10 );
+		formatDecimal.setGroupingUsed( false );
+		in = is;
+		incrementalUpdate = true;
+	}
+
 	/**
 	 * This will set the output stream.
 	 *
@@ -230,6 +277,62 @@ public class COSWriter implements ICOSVisitor {
 		standardOutput = newStandardOutput;
 	}
 
+	/**
+	 * Enables or disables the compressed write mode. In the compressed mode the
+	 * objects which aren't streams are packed into Flate-compressed object
+	 * streams and the cross reference table is written as a cross reference
+	 * stream, the version in the written header is raised to 1.5 if necessary
+	 * while the document keeps its version. Incremental updates are always
+	 * written uncompressed.
+	 *
+	 * @param compressValue true to write a compressed document
+	 */
+	public void setCompress(boolean compressValue)
+	{
+		compress = compressValue;
+	}
+
+	/**
+	 * Returns true if the compressed write mode is enabled.
+	 *
+	 * @return true if a compressed document is written
+	 */
+	public boolean isCompress()
+	{
+		return compress;
+	}
+
+	/**
+	 * Sets the maximum number of objects packed into a single object stream.
+	 * Larger object streams compress better, smaller ones are cheaper to load
+	 * when a reader needs only a few of their objects.
+	 *
+	 * @param size The number of objects per object stream.
+	 */
+	public void setObjectStreamSize(int size)
+	{
+		if (size <= 0)
+		{
+			throw new IllegalArgumentException("Invalid object stream size: " + size);
+		}
+		objectStreamSize = size;
+	}
+
+	/**
+	 * Returns the maximum number of objects packed into a single object stream.
+	 *
+	 * @return The number of objects per object stream.
+	 */
+	public int getObjectStreamSize()
+	{
+		return objectStreamSize;
+	}
+
+	private boolean isCompressed()
+	{
+		return compress && !incrementalUpdate;
+	}
+
 	/**
 	 * This will write the pdf document.
 	 *
@@ -284,6 +387,21 @@ public class COSWriter implements ICOSVisitor {
 		//        }
 
 		COSDocument cosDoc = document.getDocument();
+		// the lengths and keys adjusted while writing aren't changes of the document
+		boolean trackingChanges = cosDoc.isTrackingChanges();
+		cosDoc.setTrackingChanges(false);
+		try
+		{
+			write(cosDoc, idTime);
+		}
+		finally
+		{
+			cosDoc.setTrackingChanges(trackingChanges);
+		}
+	}
+
+	private void write(COSDocument cosDoc, Long idTime) throws COSVisitorException
+	{
 		COSDictionary trailer = cosDoc.getTrailer();
 		COSArray idArray = (COSArray)trailer.getDictionaryObject( COSName.ID );
 		if( idArray == null || incrementalUpdate)
@@ -324,41 +442,77 @@ public class COSWriter implements ICOSVisitor {
 
 	private void prepareIncrement(PDDocument doc)
 	{
-		try
+		if (doc != null)
 		{
-			if (doc != null)
-			{
-				COSDocument cosDoc = doc.getDocument();
+			COSDocument cosDoc = doc.getDocument();
 
-				Map<COSObjectKey, Long> xrefTable = cosDoc.getXrefTable();
-				Set<COSObjectKey> keySet = xrefTable.keySet();
-				long highestNumber=0;
-				for ( COSObjectKey cosObjectKey : keySet ) 
+			long highestNumber = Math.max(0, cosDoc.getXrefTable().getHighestNumber());
+			// objects which haven't been loaded can't have been changed, they
+			// are registered when the update reaches them through a reference
+			for ( COSObject pooled : cosDoc.getObjects() )
+			{
+				if (pooled.isLoaded())
 				{
-					COSBase object = cosDoc.getObjectFromPool(cosObjectKey).getObject();
-					if (object != null && cosObjectKey!= null && !(object instanceof COSNumber))
-					{
-						objectKeys.put(object, cosObjectKey);
-						keyObject.put(cosObjectKey,object);
-					}
-
-					long num = cosObjectKey.getNumber();
-					if (num > highestNumber)
-					{
-						highestNumber=num;
-					}
+					registerExistingObject(pooled);
 				}
-				setNumber(highestNumber);
-				// xrefTable.clear();
+				if (pooled.getObjectNumber() != null && pooled.getObjectNumber().longValue() > highestNumber)
+				{
+					highestNumber = pooled.getObjectNumber().longValue();
+				}
+			}
+			setNumber(highestNumber);
+		}
+	}
 
+	/**
+	 * Registers the key of an object of the original document, so that an
+	 * incremental update refers to it instead of writing it as a new object.
+	 *
+	 * @param obj The object, registered if it is a reference to an object of the
+	 *        original document. A reference to an object which hasn't been loaded
+	 *        is registered itself, the object isn't parsed.
+	 */
+	private void registerExistingObject(COSBase obj)
+	{
+		if (!incrementalUpdate || !(obj instanceof COSObject))
+		{
+			return;
+		}
+		COSObject reference = (COSObject)obj;
+		if (reference.getObjectNumber() == null)
+		{
+			return;
+		}
+		if (isUnloadedReference(reference))
+		{
+			if (!objectKeys.containsKey(reference))
+			{
+				objectKeys.put(reference, new COSObjectKey(reference.getObjectNumber().longValue(),
+						reference.getGenerationNumber().longValue()));
 			}
+			return;
 		}
-		catch (IOException e)
+		COSBase object = reference.getObject();
+		if (object != null && !(object instanceof COSNumber) && !objectKeys.containsKey(object))
 		{
-			e.printStackTrace();
+			COSObjectKey cosObjectKey = new COSObjectKey(reference.getObjectNumber().longValue(),
+					reference.getGenerationNumber().longValue());
+			objectKeys.put(object, cosObjectKey);
+			keyObject.put(cosObjectKey, object);
 		}
 	}
 
+	/**
+	 * Returns true if the given object is a reference to an object of the original
+	 * document which hasn't been loaded. Such an object can't have been changed, an
+	 * incremental update only refers to it.
+	 */
+	private boolean isUnloadedReference(COSBase obj)
+	{
+		return incrementalUpdate && obj instanceof COSObject && !((COSObject)obj).isLoaded() &&
+				((COSObject)obj).getObjectNumber() != null;
+	}
+
 	/**
 	 * This will set the current object number.
 	 *
@@ -398,41 +552,22 @@ public class COSWriter implements ICOSVisitor {
                 getStandardOutput().write(0x20);
             }
         
-            getStandardOutput().setPos(0);
-            // Begin - extracting document
+            getStandardOutput().flush();
+
+            // the signer reads the signed ranges straight from the file, so the
+            // document is never held in memory
             InputStream filterInputStream = new COSFilterInputStream(in, 
                     new int[] {0,signaturePosition[0],signaturePosition[1],left});
-            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            SignatureInterface signatureInterface = doc.getSignatureInterface();
+            byte[] sign;
             try 
             {
-                byte[] buffer = new byte[1024];
-                int c;
-                while((c = filterInputStream.read(buffer)) != -1)
-                {
-                    bytes.write(buffer, 0, c);
-                }
+                sign = signatureInterface.sign(filterInputStream);
             } 
             finally 
             {
-                if(filterInputStream !=null)
-                {
-                    filterInputStream.close();
-                }
+                filterInputStream.close();
             }
-
-            byte[] pdfContent = bytes.toByteArray();
-            // End - extracting document
-        
-            SignatureInterface signatureInterface = doc.getSignatureInterface();
-            boolean generateWarningHere;
-//            TODO Remove null, remove try/catch blcok
-            byte[] sign = null;
-			try {
-				sign = signatureInterface.sign(new ByteArrayInputStream(pdfContent));
-			} catch (org.apache.pdfboxandroid.exceptions.SignatureException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
             String signature = new COSString(sign).getHexString();
             int leftSignaturerange = signaturePosition[1]-signaturePosition[0]-signature.length();
             if(leftSignaturerange<0)
@@ -471,7 +606,13 @@ public class COSWriter implements ICOSVisitor {
         //sort xref, needed only if object keys not regenerated
         Collections.sort(getXRefEntries());
         COSWriterXRefEntry lastEntry = getXRefEntries().get( getXRefEntries().size()-1);
-        trailer.setInt(COSName.SIZE, (int)lastEntry.getKey().getNumber()+1);
+        long size = lastEntry.getKey().getNumber()+1;
+        if (incrementalUpdate)
+        {
+            // an update may change only a few objects, the size covers all previous sections
+            size = Math.max(size, getNumber()+1);
+        }
+        trailer.setInt(COSName.SIZE, (int)size);
         // Only need to stay, if an incremental update will be performed
         if (!incrementalUpdate) 
         {
@@ -570,6 +711,41 @@ public class COSWriter implements ICOSVisitor {
         }
     }
     
+    /**
+     * This will write the cross reference stream of a compressed document. The
+     * stream replaces both the xref table and the trailer and is written as the
+     * last object of the document.
+     *
+     * @param doc The document to write the xref stream for.
+     *
+     * @throws IOException If there is an error writing the data to the stream.
+     * @throws COSVisitorException If there is an error generating the data.
+     */
+    protected void doWriteXRefStream(COSDocument doc) throws IOException, COSVisitorException
+    {
+        COSDictionary trailer = doc.getTrailer();
+        trailer.removeItem( COSName.PREV );
+        trailer.removeItem( COSName.DOC_CHECKSUM );
+
+        PDFXRefStream pdfxRefStream = new PDFXRefStream();
+        pdfxRefStream.addEntry(COSWriterXRefEntry.getNullEntry());
+        for ( COSWriterXRefEntry entry : getXRefEntries() )
+        {
+            pdfxRefStream.addEntry(entry);
+        }
+        // the xref stream contains its own entry
+        setNumber(getNumber() + 1);
+        COSObjectKey xrefKey = new COSObjectKey(getNumber(), 0);
+        setStartxref(getStandardOutput().getPos());
+        pdfxRefStream.addEntry(new COSWriterXRefEntry(getStartxref(), null, xrefKey));
+        pdfxRefStream.addTrailerInfo(trailer);
+        pdfxRefStream.setSize(getNumber() + 1);
+
+        COSStream stream = pdfxRefStream.getStream();
+        objectKeys.put(stream, xrefKey);
+        doWriteObject(stream);
+    }
+
     /**
      * add an entry in the x ref table for later dump.
      *
@@ -792,6 +968,11 @@ public class COSWriter implements ICOSVisitor {
      */
     private COSObjectKey getObjectKey( COSBase obj )
     {
+        registerExistingObject( obj );
+        if( isUnloadedReference( obj ) )
+        {
+            return objectKeys.get( obj );
+        }
         COSBase actual = obj;
         if( actual instanceof COSObject )
         {
@@ -851,12 +1032,25 @@ public class COSWriter implements ICOSVisitor {
           {
               addObjectToWrite( info );
           }
+          if( incrementalUpdate )
+          {
+              // the changed objects needn't be reachable through other changed
+              // objects, only the loaded ones can have been changed
+              for( COSObject pooled : doc.getObjects() )
+              {
+                  if( pooled.isLoaded() && pooled.getObject() != null &&
+                      pooled.getObject().isNeedToBeUpdate() )
+                  {
+                      addObjectToWrite( pooled );
+                  }
+              }
+          }
 
         while( objectsToWrite.size() > 0 )
         {
             COSBase nextObject = objectsToWrite.removeFirst();
             objectsToWriteSet.remove(nextObject);
-            doWriteObject( nextObject );
+            doWriteBodyObject( nextObject );
         }
 
 
@@ -867,6 +1061,15 @@ public class COSWriter implements ICOSVisitor {
 //            addObjectToWrite( encrypt );
 //        }
 
+        while( objectsToWrite.size() > 0 )
+        {
+            COSBase nextObject = objectsToWrite.removeFirst();
+            objectsToWriteSet.remove(nextObject);
+            doWriteBodyObject( nextObject );
+        }
+
+        // the length of the last object stream is queued as an object of its own
+        flushObjectStream();
         while( objectsToWrite.size() > 0 )
         {
             COSBase nextObject = objectsToWrite.removeFirst();
@@ -874,9 +1077,148 @@ public class COSWriter implements ICOSVisitor {
             doWriteObject( nextObject );
         }
     }
+
+    private void doWriteBodyObject( COSBase obj ) throws IOException, COSVisitorException
+    {
+        if( isCompressible( obj ) )
+        {
+            addToObjectStream( obj );
+        }
+        else
+        {
+            doWriteObject( obj );
+        }
+    }
+
+    /**
+     * Streams can't be stored in object streams. Numbers are kept out as they are
+     * mostly stream lengths, which a reader needs before it can decode any stream.
+     * The position of the signature dictionary has to be known to sign the document.
+     */
+    private boolean isCompressible( COSBase obj )
+    {
+        if( !isCompressed() )
+        {
+            return false;
+        }
+        COSBase actual = obj;
+        if( actual instanceof COSObject )
+        {
+            actual = ((COSObject)actual).getObject();
+        }
+        if( actual == null || actual instanceof COSStream || actual instanceof COSNumber )
+        {
+            return false;
+        }
+        if( actual instanceof COSDictionary )
+        {
+            COSBase type = ((COSDictionary)actual).getItem(COSName.TYPE);
+            if( COSName.SIG.equals(type) || COSName.DOC_TIME_STAMP.equals(type) )
+            {
+                return false;
+            }
+        }
+        return getObjectKey( obj ).getGeneration() == 0;
+    }
+
+    /**
+     * This will write an object into the object stream being filled. The object
+     * stream is written once it holds the configured number of objects.
+     *
+     * @param obj The object to write.
+     *
+     * @throws IOException If there is an error writing the object stream.
+     * @throws COSVisitorException If there is an error visiting objects.
+     */
+    private void addToObjectStream( COSBase obj ) throws IOException, COSVisitorException
+    {
+        if( objectStreamData == null )
+        {
+            objectStreamData = new ByteArrayOutputStream();
+            objectStreamOutput = new COSStandardOutputStream(objectStreamData);
+        }
+        writtenObjects.add( obj );
+        currentObjectKey = getObjectKey( obj );
+        // the offset of an entry of a compressed object is its index within the object stream
+        objectStreamEntries.add( new COSWriterXRefEntry(objectStreamEntries.size(), obj, currentObjectKey) );
+        objectStreamOffsets.add( objectStreamOutput.getPos() );
+        COSStandardOutputStream previous = getStandardOutput();
+        setStandardOutput( objectStreamOutput );
+        try
+        {
+            obj.accept( this );
+            getStandardOutput().writeEOL();
+        }
+        finally
+        {
+            setStandardOutput( previous );
+        }
+        if( objectStreamEntries.size() >= objectStreamSize )
+        {
+            flushObjectStream();
+        }
+    }
+
+    /**
+     * This will write the object stream being filled, if there is any.
+     *
+     * @throws IOException If there is an error writing the object stream.
+     * @throws COSVisitorException If there is an error visiting objects.
+     */
+    private void flushObjectStream() throws IOException, COSVisitorException
+    {
+        if( objectStreamEntries.isEmpty() )
+        {
+            return;
+        }
+        StringBuilder header = new StringBuilder();
+        for( int i = 0; i < objectStreamEntries.size(); i++ )
+        {
+            header.append( objectStreamEntries.get(i).getKey().getNumber() );
+            header.append( ' ' );
+            header.append( objectStreamOffsets.get(i) );
+            header.append( ' ' );
+        }
+        byte[] headerBytes = header.toString().getBytes("ISO-8859-1");
+
+        COSStream objectStream = new COSStream(new COSDictionary(), new RandomAccessBuffer());
+        objectStream.setItem(COSName.TYPE, COSName.OBJ_STM);
+        objectStream.setInt(COSName.N, objectStreamEntries.size());
+        objectStream.setInt(COSName.FIRST, headerBytes.length);
+        objectStream.setFilters(COSName.FLATE_DECODE);
+        OutputStream unfilteredStream = objectStream.createUnfilteredStream();
+        try
+        {
+            unfilteredStream.write( headerBytes );
+            objectStreamOutput.flush();
+            objectStreamData.writeTo( unfilteredStream );
+        }
+        finally
+        {
+            unfilteredStream.close();
+        }
+
+        long objectStreamNumber = getObjectKey( objectStream ).getNumber();
+        for( COSWriterXRefEntry entry : objectStreamEntries )
+        {
+            entry.setObjectStreamNumber( objectStreamNumber );
+            addXRefEntry( entry );
+        }
+        objectStreamEntries.clear();
+        objectStreamOffsets.clear();
+        objectStreamData = null;
+        objectStreamOutput = null;
+        doWriteObject( objectStream );
+    }
     
     private void addObjectToWrite( COSBase object )
     {
+        registerExistingObject( object );
+        if( isUnloadedReference( object ) )
+        {
+            // unchanged, the update refers to the original object
+            return;
+        }
         COSBase actual = object;
         if( actual instanceof COSObject )
         {
@@ -914,7 +1256,8 @@ public class COSWriter implements ICOSVisitor {
     }
     
     /**
-     * This will write the header to the PDF document.
+     * This will write the header to the PDF document. The version of a
+     * compressed document is raised to 1.5 in the written header only.
      *
      * @param doc The document to get the data from.
      *
@@ -922,7 +1265,12 @@ public class COSWriter implements ICOSVisitor {
      */
     protected void doWriteHeader(COSDocument doc) throws IOException
     {
-        getStandardOutput().write( doc.getHeaderString().getBytes("ISO-8859-1") );
+        String header = doc.getHeaderString();
+        if (isCompressed() && doc.getVersion() < COMPRESSED_VERSION)
+        {
+            header = header.replaceFirst(String.valueOf(doc.getVersion()), String.valueOf(COMPRESSED_VERSION));
+        }
+        getStandardOutput().write( header.getBytes("ISO-8859-1") );
         getStandardOutput().writeEOL();
         getStandardOutput().write(COMMENT);
         getStandardOutput().write(GARBAGE);
@@ -952,6 +1300,10 @@ public class COSWriter implements ICOSVisitor {
                     addObjectToWrite( current );
                     writeReference( current );
                 }
+                else if( isUnloadedReference( current ) )
+                {
+                    writeReference( current );
+                }
                 else if( current instanceof COSObject )
                 {
                     COSBase subValue = ((COSObject)current).getObject();
@@ -1075,6 +1427,10 @@ public class COSWriter implements ICOSVisitor {
                             writeReference( dict );
                         }
                     }
+                    else if( isUnloadedReference( value ) )
+                    {
+                        writeReference( value );
+                    }
                     else if( value instanceof COSObject )
                     {
                         COSBase subValue = ((COSObject)value).getObject();
@@ -1173,13 +1529,17 @@ public class COSWriter implements ICOSVisitor {
             {
                 doWriteXRefInc(doc, hybridPrev);
             }
+            else if(isCompressed())
+            {
+                doWriteXRefStream(doc);
+            }
             else
             {
                 doWriteXRef(doc);
             }
             
             // the trailer section should only be used for xref tables not for xref streams
-            if (!incrementalUpdate || !doc.isXRefStream() || hybridPrev != -1)
+            if (!isCompressed() && (!incrementalUpdate || !doc.isXRefStream() || hybridPrev != -1))
             {
                 doWriteTrailer(doc);
             }
@@ -1333,7 +1693,7 @@ public class COSWriter implements ICOSVisitor {
      */
     public Object visitFromStream(COSStream obj) throws COSVisitorException
     {
-        InputStream input = null;
+        RandomAccessFileInputStream input = null;
         try
         {
 //            if (willEncrypt)
@@ -1364,20 +1724,14 @@ public class COSWriter implements ICOSVisitor {
 
                 obj.setItem(COSName.LENGTH, lengthObject);
             }
-            input = obj.getFilteredStream();
+            // the encoded data is copied as it is, unchanged streams aren't decoded
+            input = obj.getRawFilteredStream();
             //obj.accept(this);
             // write the stream content
             visitFromDictionary(obj);
             getStandardOutput().write(STREAM);
             getStandardOutput().writeCRLF();
-            byte[] buffer = new byte[1024];
-            int amountRead = 0;
-            int totalAmountWritten = 0;
-            while ((amountRead = input.read(buffer, 0, 1024)) != -1)
-            {
-                getStandardOutput().write(buffer, 0, amountRead);
-                totalAmountWritten += amountRead;
-            }
+            long totalAmountWritten = getStandardOutput().write(input);
             // set the length as an indirect object
             if (lengthObject != null)
             {
@@ -15,6 +15,7 @@ public class COSWriterXRefEntry implements Comparable<COSWriterXRefEntry> {
 	private COSBase object;
 	private COSObjectKey key;
 	private boolean free = false;
+	private long objectStreamNumber = -1;
 	private static COSWriterXRefEntry nullEntry;
 	
 	/**
@@ -92,6 +93,27 @@ public class COSWriterXRefEntry implements Comparable<COSWriterXRefEntry> {
       return nullEntry;
     }
     
+    /**
+     * This will get the number of the object stream containing the object. The
+     * offset of such an entry is the index of the object within the object stream.
+     *
+     * @return The number of the object stream or -1 if the object isn't compressed.
+     */
+    public long getObjectStreamNumber()
+    {
+        return objectStreamNumber;
+    }
+
+    /**
+     * This will set the number of the object stream containing the object.
+     *
+     * @param newObjectStreamNumber The number of the object stream or -1 if the object isn't compressed.
+     */
+    public void setObjectStreamNumber(long newObjectStreamNumber)
+    {
+        objectStreamNumber = newObjectStreamNumber;
+    }
+    
     /**
      * This will set the free attribute.
      *
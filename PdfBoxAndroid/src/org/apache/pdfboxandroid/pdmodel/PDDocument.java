@@ -7,6 +7,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 import org.apache.pdfboxandroid.cos.COSBase;
 import org.apache.pdfboxandroid.cos.COSDictionary;
@@ -14,6 +16,8 @@ import org.apache.pdfboxandroid.cos.COSDocument;
 import org.apache.pdfboxandroid.cos.COSName;
 import org.apache.pdfboxandroid.exceptions.COSVisitorException;
 import org.apache.pdfboxandroid.io.RandomAccess;
+import org.apache.pdfboxandroid.io.RandomAccessBuffer;
+import org.apache.pdfboxandroid.pdfparser.NonSequentialPDFParser;
 import org.apache.pdfboxandroid.pdfparser.PDFParser;
 import org.apache.pdfboxandroid.pdfwriter.COSWriter;
 
@@ -78,6 +82,58 @@ public class PDDocument implements Pagable {
         return parser.getPDDocument();
     }
     
+    /**
+     * Parses PDF with non sequential parser. Only the trailer and the cross reference
+     * information are read upfront, all other objects are parsed when they are
+     * accessed. The file is kept open until the document is closed.
+     *
+     * @param file file to be loaded
+     * @param scratchFile location to store temp PDFBox data for this document
+     *
+     * @return loaded document
+     *
+     * @throws IOException in case of a file reading or parsing error
+     */
+    public static PDDocument loadNonSeq( File file, RandomAccess scratchFile ) throws IOException
+    {
+        NonSequentialPDFParser parser = new NonSequentialPDFParser( file, scratchFile );
+        parser.parse();
+        return parser.getPDDocument();
+    }
+    
+    /**
+     * Parses PDF with non sequential parser. The content of the stream is copied
+     * to memory first, objects are parsed when they are accessed.
+     *
+     * @param input stream that contains the document.
+     * @param scratchFile location to store temp PDFBox data for this document
+     *
+     * @return loaded document
+     *
+     * @throws IOException in case of a file reading or parsing error
+     */
+    public static PDDocument loadNonSeq( InputStream input, RandomAccess scratchFile ) throws IOException
+    {
+        RandomAccessBuffer source = new RandomAccessBuffer();
+        try
+        {
+            byte[] buffer = new byte[ 16384 ];
+            int amountRead;
+            while( ( amountRead = input.read( buffer ) ) != -1 )
+            {
+                source.write( buffer, 0, amountRead );
+            }
+        }
+        finally
+        {
+            input.close();
+        }
+        source.seek( 0 );
+        NonSequentialPDFParser parser = new NonSequentialPDFParser( source, scratchFile );
+        parser.parse();
+        return parser.getPDDocument();
+    }
+    
     /**
      * Constructor that uses an existing document.  The COSDocument that
      * is passed in must be valid.
@@ -178,6 +234,110 @@ public class PDDocument implements Pagable {
         }
     }
     
+    /**
+     * Save the pdf as incremental. The output has to contain the original
+     * document already, the update is appended to it. If a signature interface
+     * is set, the update is signed by reading the signed byte ranges from the
+     * given input stream of the same file.
+     * 
+     * The offsets of the new xref section are based on the size of the file of
+     * the input stream, so the output may be any stream appending to that file.
+     * Signing writes the signature into the data written before, so it needs a
+     * FileOutputStream of the file.
+     * 
+     * @param input the input stream of the document file
+     * @param output the output stream of the document file positioned at its end,
+     *        it must not be opened in append mode as the signature is written afterwards
+     * @throws IOException if something went wrong
+     * @throws COSVisitorException if something went wrong
+     */
+    public void saveIncremental( FileInputStream input, OutputStream output ) throws IOException, COSVisitorException
+    {
+        if( document.getSignatureInterface() != null && !( output instanceof FileOutputStream ) )
+        {
+            throw new IOException( "A signed incremental update needs a FileOutputStream" );
+        }
+        COSWriter writer = null;
+        try
+        {
+            long startPosition = input.getChannel().size();
+            // Sometimes the original file will be missing a newline at the end
+            // In order to avoid having %%EOF the first object on the same line
+            // as the %%EOF, we put a newline here.  If there's already one at
+            // the end of the file, an extra one won't hurt.
+            byte[] separator = "\r\n".getBytes("ISO-8859-1");
+            output.write(separator);
+            writer = new COSWriter( output, input, startPosition + separator.length );
+            writer.write( this );
+            writer.close();
+        }
+        finally
+        {
+            if( writer != null )
+            {
+                writer.close();
+            }
+        }
+    }
+    
+    /**
+     * Save the pdf as incremental update of the given original file. The original
+     * bytes are copied to the target file by a channel transfer, without passing
+     * through the heap and without being parsed again. Only the objects marked with
+     * {@link COSBase#setNeedToBeUpdate(boolean)}, and the new objects they refer to,
+     * are appended together with a new xref section, so the time spent depends on
+     * the size of the changes rather than on the size of the document. Objects which
+     * haven't been loaded aren't touched at all.
+     * 
+     * @param original the file the document was loaded from
+     * @param target the file to write, the update is appended to the original
+     *        file if both are the same
+     * @throws IOException if something went wrong
+     * @throws COSVisitorException if something went wrong
+     */
+    public void saveIncremental( File original, File target ) throws IOException, COSVisitorException
+    {
+        RandomAccessFile file = new RandomAccessFile( target, "rw" );
+        try
+        {
+            FileChannel channel = file.getChannel();
+            if( !original.getCanonicalFile().equals( target.getCanonicalFile() ) )
+            {
+                channel.truncate( 0 );
+                FileInputStream source = new FileInputStream( original );
+                try
+                {
+                    FileChannel sourceChannel = source.getChannel();
+                    long size = sourceChannel.size();
+                    long position = 0;
+                    while( position < size )
+                    {
+                        position += sourceChannel.transferTo( position, size - position, channel );
+                    }
+                }
+                finally
+                {
+                    source.close();
+                }
+            }
+            channel.position( channel.size() );
+            // the signature is computed over the target file
+            FileInputStream input = new FileInputStream( target );
+            try
+            {
+                saveIncremental( input, new FileOutputStream( file.getFD() ) );
+            }
+            finally
+            {
+                input.close();
+            }
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+    
     public Long getDocumentId() 
     {
       return documentId;
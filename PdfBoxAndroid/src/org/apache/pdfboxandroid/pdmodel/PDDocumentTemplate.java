@@ -0,0 +1,219 @@
+package org.apache.pdfboxandroid.pdmodel;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.pdfboxandroid.cos.COSArray;
+import org.apache.pdfboxandroid.cos.COSBase;
+import org.apache.pdfboxandroid.cos.COSDictionary;
+import org.apache.pdfboxandroid.cos.COSDocument;
+import org.apache.pdfboxandroid.cos.COSObject;
+import org.apache.pdfboxandroid.cos.COSStream;
+import org.apache.pdfboxandroid.cos.ICOSParser;
+import org.apache.pdfboxandroid.io.RandomAccess;
+import org.apache.pdfboxandroid.io.RandomAccessBuffer;
+import org.apache.pdfboxandroid.persistence.util.COSObjectKey;
+
+/**
+ * A document which is parsed once and used as the template of many documents,
+ * e.g. a form which is filled again and again. The template itself is never
+ * changed, so it may be shared by several threads creating documents at the
+ * same time.
+ *
+ * A document created from the template doesn't parse anything. The objects of
+ * the template are frozen and the document gets copy-on-write copies of them the
+ * first time they are accessed, see {@link COSDocument#copyOnWrite(COSBase)}.
+ * Streams share the encoded data of the template until new data is written to
+ * them. Objects which are never accessed, e.g. the pages of a form whose fields
+ * are filled, are only copied when the document is saved.
+ */
+public final class PDDocumentTemplate {
+	private final COSDocument template;
+
+    /**
+     * The loaded objects of the template by their keys.
+     */
+    private final Map<COSObjectKey, COSBase> objects = new HashMap<COSObjectKey, COSBase>();
+
+    /**
+     * This will load a template from a file.
+     *
+     * @param filename The name of the file to load.
+     *
+     * @return The template.
+     *
+     * @throws IOException If there is an error reading the file.
+     */
+    public static PDDocumentTemplate load( String filename ) throws IOException
+    {
+        return load( new FileInputStream( filename ) );
+    }
+
+    /**
+     * This will load a template from an input stream.
+     *
+     * @param input The stream that contains the document.
+     *
+     * @return The template.
+     *
+     * @throws IOException If there is an error reading from the stream.
+     */
+    public static PDDocumentTemplate load( InputStream input ) throws IOException
+    {
+        PDDocument document = PDDocument.load( input );
+        try
+        {
+            return new PDDocumentTemplate( document );
+        }
+        catch( IOException e )
+        {
+            document.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Constructor. All objects of the given document are loaded and its streams
+     * are encoded. The template takes over the document, it must neither be
+     * changed nor closed by the caller afterwards.
+     *
+     * @param document The document to be used as template.
+     *
+     * @throws IOException If there is an error loading the objects of the document.
+     */
+    public PDDocumentTemplate( PDDocument document ) throws IOException
+    {
+        template = document.getDocument();
+        int loaded;
+        do
+        {
+            // loading an object may add the objects it references to the pool
+            loaded = objects.size();
+            for( COSObject object : template.getObjects() )
+            {
+                COSObjectKey key = getKey( object );
+                if( !objects.containsKey( key ) )
+                {
+                    COSBase base = object.getObject();
+                    if( base instanceof COSStream )
+                    {
+                        ((COSStream)base).getFilteredLength();
+                    }
+                    objects.put( key, base );
+                }
+            }
+        }
+        while( objects.size() > loaded );
+        for( COSBase base : objects.values() )
+        {
+            freeze( base );
+        }
+        freeze( template.getTrailer() );
+    }
+
+    /**
+     * Creates a new document from this template which keeps its streams in memory.
+     *
+     * @return The new document.
+     *
+     * @throws IOException If there is an error copying the trailer.
+     */
+    public PDDocument createDocument() throws IOException
+    {
+        return createDocument( new RandomAccessBuffer() );
+    }
+
+    /**
+     * Creates a new document from this template. The new document is independent of
+     * the template and of the other documents created from it, but it reads the data
+     * of its unchanged streams from the template. The template must be kept open
+     * until the new document has been saved.
+     *
+     * @param scratchFile The storage of the streams written to the new document.
+     *
+     * @return The new document.
+     *
+     * @throws IOException If there is an error copying the trailer.
+     */
+    public PDDocument createDocument( RandomAccess scratchFile ) throws IOException
+    {
+        COSDocument document = new COSDocument( scratchFile );
+        document.setVersion( template.getVersion() );
+        document.setHeaderString( template.getHeaderString() );
+        // keeps incremental updates of the template file possible
+        document.addXRefTable( template.getXrefTable() );
+        document.setStartXref( template.getStartXref() );
+        TemplateLoader loader = new TemplateLoader( document );
+        document.setParser( loader );
+        document.setTrailer( (COSDictionary)document.copyOnWrite( template.getTrailer() ) );
+        return new PDDocument( document );
+    }
+
+    /**
+     * This will close the template. The documents created from it can't read
+     * the data of their unchanged streams afterwards.
+     *
+     * @throws IOException If there is an error releasing resources.
+     */
+    public void close() throws IOException
+    {
+        template.close();
+    }
+
+    private static void freeze( COSBase base )
+    {
+        if( base instanceof COSDictionary )
+        {
+            ((COSDictionary)base).freeze();
+        }
+        else if( base instanceof COSArray )
+        {
+            ((COSArray)base).freeze();
+        }
+    }
+
+    private static COSObjectKey getKey( COSObject object )
+    {
+        return new COSObjectKey( object.getObjectNumber().longValue(), object.getGenerationNumber().longValue() );
+    }
+
+    /**
+     * Loads the objects of a document created from the template by copying the
+     * frozen objects of the template.
+     */
+    private final class TemplateLoader implements ICOSParser
+    {
+        private final COSDocument document;
+
+        private TemplateLoader( COSDocument doc )
+        {
+            document = doc;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public COSBase dereferenceCOSObject( COSObject obj ) throws IOException
+        {
+            COSBase copy = objects.get( getKey( obj ) );
+            if( copy != null )
+            {
+                copy = document.copyOnWrite( copy );
+            }
+            obj.setObject( copy );
+            return copy;
+        }
+
+        /**
+         * The template stays open, it is shared with other documents.
+         *
+         * {@inheritDoc}
+         */
+        public void close()
+        {
+        }
+    }
+}
@@ -1,7 +1,8 @@
 package org.apache.pdfboxandroid.pdmodel.font;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.fontbox.util.ResourceLoader;
 import org.apache.pdfboxandroid.PDFBox;
@@ -24,8 +25,9 @@ import android.util.Log;
  * @version $Revision: 1.18 $
  */
 public class PDSimpleFont extends PDFont {
-	private final HashMap<Integer, Float> mFontSizes =
-			new HashMap<Integer, Float>(128);
+	// the widths are cached by the appearances of form fields generated in parallel
+	private final Map<Integer, Float> mFontSizes =
+			new ConcurrentHashMap<Integer, Float>(128);
 	
 	private float avgFontWidth = 0.0f;
 
@@ -1,13 +1,16 @@
 package org.apache.pdfboxandroid.pdmodel.interactive.form;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
-import org.apache.pdfboxandroid.cos.COSArray;
 import org.apache.pdfboxandroid.cos.COSBase;
 import org.apache.pdfboxandroid.cos.COSDictionary;
 import org.apache.pdfboxandroid.cos.COSName;
-import org.apache.pdfboxandroid.cos.COSString;
 import org.apache.pdfboxandroid.pdmodel.PDDocument;
 import org.apache.pdfboxandroid.pdmodel.PDResources;
 import org.apache.pdfboxandroid.pdmodel.common.COSObjectable;
@@ -22,7 +25,13 @@ public class PDAcroForm implements COSObjectable {
 	private COSDictionary acroForm;
     private PDDocument document;
 
-    private Map fieldCache;
+    private PDFieldIndex fieldIndex;
+
+    // the fields created so far, valid as long as the index is
+    private Map<String, PDField> fieldCache;
+
+    private ExecutorService appearanceExecutor;
+    private int appearanceParallelism = 1;
     
     /**
      * Constructor.
@@ -37,9 +46,12 @@ public class PDAcroForm implements COSObjectable {
     }
     
     /**
-     * This will get a field by name, possibly using the cache if setCache is true.
+     * This will get a field by its fully qualified name. The fields are looked up
+     * in an index which is built when the first field is requested and rebuilt
+     * after the /Fields or /Kids arrays or the partial names of the form have been
+     * changed.
      *
-     * @param name The name of the field to get.
+     * @param name The fully qualified name of the field to get.
      *
      * @return The field with that name of null if one was not found.
      *
@@ -47,51 +59,128 @@ public class PDAcroForm implements COSObjectable {
      */
     public PDField getField( String name ) throws IOException
     {
-        PDField retval = null;
-        if( fieldCache != null )
+        COSDictionary field = fieldIndex != null ? fieldIndex.get( name ) : null;
+        if( field == null )
         {
-            retval = (PDField)fieldCache.get( name );
+            // the field may have been added since the index was built
+            field = getFieldIndex().get( name );
+            if( field == null )
+            {
+                return null;
+            }
         }
-        else
+        PDField retval = fieldCache.get( name );
+        if( retval == null || retval.getDictionary() != field )
         {
-            String[] nameSubSection = name.split( "\\." );
-            COSArray fields =
-                (COSArray) acroForm.getDictionaryObject(
-                    COSName.getPDFName("Fields"));
+            retval = PDFieldFactory.createField( this, field );
+            fieldCache.put( name, retval );
+        }
+        return retval;
+    }
 
-            for (int i = 0; i < fields.size() && retval == null; i++)
+    /**
+     * This will set the values of many fields in one go. All fields are looked up
+     * before any value is set. The default appearance strings and fonts are shared
+     * by the appearances of all text fields and the appearance streams are written
+     * once all values have been set. The content of the appearance streams is
+     * generated on the executor set by {@link #setAppearanceExecutor(ExecutorService, int)}.
+     *
+     * @param values The new values mapped by the fully qualified names of the fields.
+     *
+     * @throws IOException If a field doesn't exist or there is an error creating
+     *         the appearance streams.
+     */
+    public void fill( Map<String, String> values ) throws IOException
+    {
+        List<PDField> fields = new ArrayList<PDField>( values.size() );
+        for( Map.Entry<String, String> entry : values.entrySet() )
+        {
+            PDField field = getField( entry.getKey() );
+            if( field == null )
             {
-                COSDictionary element = (COSDictionary) fields.getObject(i);
-                if( element != null )
-                {
-                    COSString fieldName =
-                        (COSString)element.getDictionaryObject( COSName.getPDFName( "T" ) );
-                    if( fieldName.getString().equals( name ) ||
-                        fieldName.getString().equals( nameSubSection[0] ) )
-                    {
-                        PDField root = PDFieldFactory.createField( this, element );
-
-                        if( nameSubSection.length > 1 )
-                        {
-                            PDField kid = root.findKid( nameSubSection, 1 );
-                            if( kid != null )
-                            {
-                                retval = kid;
-                            }
-                            else
-                            {
-                                retval = root;
-                            }
-                        }
-                        else
-                        {
-                            retval = root;
-                        }
-                    }
-                }
+                throw new IOException( "Error: Unknown field " + entry.getKey() );
             }
+            fields.add( field );
         }
-        return retval;
+        PDAppearanceContext context = new PDAppearanceContext( this, appearanceExecutor, appearanceParallelism );
+        int i = 0;
+        for( Map.Entry<String, String> entry : values.entrySet() )
+        {
+            PDField field = fields.get( i++ );
+            if( field instanceof PDVariableText )
+            {
+                ((PDVariableText)field).setValue( entry.getValue(), context );
+            }
+            else
+            {
+                field.setValue( entry.getValue() );
+            }
+        }
+        context.writeAppearances();
+    }
+
+    /**
+     * Sets the executor generating the content of the appearance streams when
+     * many fields are filled in one go. The appearance dictionaries, the resources
+     * and the fonts are always prepared by the calling thread and the streams are
+     * written by it once all tasks are done. The executor is owned by the caller,
+     * it may be shared by several forms and is never shut down by them.
+     *
+     * @param executor The executor, or null to generate the appearances in the
+     *        calling thread.
+     * @param parallelism The maximum number of tasks a fill runs on the executor
+     *        at once, 1 generates the appearances in the calling thread.
+     */
+    public void setAppearanceExecutor( ExecutorService executor, int parallelism )
+    {
+        if( parallelism <= 0 || ( executor == null && parallelism != 1 ) )
+        {
+            throw new IllegalArgumentException( "Invalid parallelism: " + parallelism );
+        }
+        appearanceExecutor = executor;
+        appearanceParallelism = parallelism;
+    }
+
+    /**
+     * Returns the executor generating the content of the appearance streams.
+     *
+     * @return The executor, null by default.
+     */
+    public ExecutorService getAppearanceExecutor()
+    {
+        return appearanceExecutor;
+    }
+
+    /**
+     * Returns the maximum number of tasks generating the content of the appearance
+     * streams at once.
+     *
+     * @return The number of tasks, 1 by default.
+     */
+    public int getAppearanceParallelism()
+    {
+        return appearanceParallelism;
+    }
+
+    /**
+     * This will get the fully qualified names of all fields of the form, terminal
+     * and non-terminal ones, in the order of the field tree.
+     *
+     * @return The names of the fields.
+     */
+    public Set<String> getFieldNames()
+    {
+        return getFieldIndex().getNames();
+    }
+
+    private PDFieldIndex getFieldIndex()
+    {
+        if( fieldIndex == null || !fieldIndex.isValid() )
+        {
+            fieldIndex = new PDFieldIndex( acroForm );
+            fieldCache = new HashMap<String, PDField>();
+        }
+        return fieldIndex;
     }
 
 	/**
@@ -1,6 +1,5 @@
 package org.apache.pdfboxandroid.pdmodel.interactive.form;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -9,6 +8,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.apache.pdfboxandroid.cos.COSArray;
 import org.apache.pdfboxandroid.cos.COSDictionary;
@@ -47,7 +47,6 @@ import org.apache.pdfboxandroid.util.PDFOperator;
 public class PDAppearance {
 	private PDVariableText parent;
 
-	private String value;
 	private COSString defaultAppearance;
 
 	private PDAcroForm acroForm;
@@ -108,6 +107,24 @@ public class PDAppearance {
 	 * @throws IOException If there is an error creating the stream.
 	 */
 	public void setAppearanceValue(String apValue) throws IOException
+	{
+		PDAppearanceContext context = new PDAppearanceContext( acroForm );
+		setAppearanceValue( apValue, context );
+		context.writeAppearances();
+	}
+
+	/**
+	 * Prepares the appearance streams using the shared state of the given context.
+	 * The appearance dictionaries, resources and fonts are set up right away, the
+	 * content of the streams is generated and written when the appearances of the
+	 * context are written.
+	 *
+	 * @param apValue the String value which the apperance shoud represent
+	 * @param context the state shared by the appearances of several fields
+	 *
+	 * @throws IOException If there is an error creating the stream.
+	 */
+	void setAppearanceValue(String apValue, PDAppearanceContext context) throws IOException
 	{
 		// MulitLine check and set
 		if ( parent.isMultiline() && apValue.indexOf('\n') != -1 )
@@ -115,7 +132,6 @@ public class PDAppearance {
 			apValue = convertToMultiLine( apValue );
 		}
 
-		value = apValue;
 		Iterator<COSObjectable> widgetIter = widgets.iterator();
 		while( widgetIter.hasNext() )
 		{
@@ -164,145 +180,272 @@ public class PDAppearance {
 				}
 
 				List tokens = getStreamTokens( appearanceStream );
-				List daTokens = getStreamTokens( getDefaultAppearance() );
-				PDFont pdFont = getFontAndUpdateResources( tokens, appearanceStream );
+				List daTokens = context.getDefaultAppearanceTokens( getDefaultAppearance() );
+				PDFont pdFont = getFontAndUpdateResources( tokens, appearanceStream, context );
+				context.prepareFont( pdFont );
 
-				if (!containsMarkedContent( tokens ))
+				PDRectangle streamBoundingBox = appearanceStream.getBoundingBox();
+				PDRectangle boundingBox = streamBoundingBox;
+				if( boundingBox == null )
 				{
-					ByteArrayOutputStream output = new ByteArrayOutputStream();
+					boundingBox = widget.getRectangle().createRetranslatedRectangle();
+				}
+				context.addAppearance( appearanceStream.getStream(), new AppearanceGenerator( apValue,
+						tokens, daTokens, context.getDefaultAppearanceTokens( defaultAppearance ), pdFont,
+						streamBoundingBox, boundingBox ) );
+			}
+		}
+	}
 
-					//BJL 9/25/2004 Must prepend existing stream
-					//because it might have operators to draw things like
-					//rectangles and such
-					ContentStreamWriter writer = new ContentStreamWriter( output );
-					writer.writeTokens( tokens );
+	/**
+	 * Generates the content of the appearance stream of a single widget. Everything
+	 * read from the document is resolved when the generator is created, so the
+	 * generators of several widgets may run at the same time.
+	 */
+	private final class AppearanceGenerator implements Callable<byte[]>
+	{
+		private final String value;
+		private final List tokens;
+		private final List daTokens;
+		private final List<Object> defaultAppearanceTokens;
+		private final PDFont pdFont;
+		private final PDRectangle streamBoundingBox;
+		private final PDRectangle boundingBox;
+		private final boolean multiline;
+		private final boolean doNotScroll;
+		private final int q;
+
+		private AppearanceGenerator( String apValue, List streamTokens, List daTokenList,
+				List<Object> defaultAppearanceTokenList, PDFont font, PDRectangle streamBox,
+				PDRectangle textBox )
+		{
+			value = apValue;
+			tokens = streamTokens;
+			daTokens = daTokenList;
+			defaultAppearanceTokens = defaultAppearanceTokenList;
+			pdFont = font;
+			streamBoundingBox = streamBox;
+			boundingBox = textBox;
+			multiline = parent.isMultiline();
+			doNotScroll = parent.doNotScroll();
+			q = getQ();
+		}
 
-					output.write( " /Tx BMC\n".getBytes("ISO-8859-1") );
-					insertGeneratedAppearance( widget, output, pdFont, tokens, appearanceStream );
-					output.write( " EMC".getBytes("ISO-8859-1") );
-					writeToStream( output.toByteArray(), appearanceStream );
+		/**
+		 * {@inheritDoc}
+		 */
+		public byte[] call() throws IOException
+		{
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			ContentStreamWriter writer = new ContentStreamWriter( output );
+			if (!containsMarkedContent( tokens ))
+			{
+				//BJL 9/25/2004 Must prepend existing stream
+				//because it might have operators to draw things like
+				//rectangles and such
+				writer.writeTokens( tokens );
+
+				output.write( " /Tx BMC\n".getBytes("ISO-8859-1") );
+				insertGeneratedAppearance( output );
+				output.write( " EMC".getBytes("ISO-8859-1") );
+			}
+			else
+			{
+				if( daTokens != null )
+				{
+					int bmcIndex = tokens.indexOf( PDFOperator.getOperator( "BMC" ));
+					int emcIndex = tokens.indexOf( PDFOperator.getOperator( "EMC" ));
+					if( bmcIndex != -1 && emcIndex != -1 &&
+							emcIndex == bmcIndex+1 )
+					{
+						//if the EMC immediately follows the BMC index then should
+						//insert the daTokens inbetween the two markers.
+						tokens.addAll( emcIndex, daTokens );
+					}
+				}
+				float fontSize = calculateFontSize( streamBoundingBox, null );
+				boolean foundString = false;
+				for( int i=0; i<tokens.size(); i++ )
+				{
+					if( tokens.get( i ) instanceof COSString )
+					{
+						foundString = true;
+						COSString drawnString =((COSString)tokens.get(i));
+						drawnString.reset();
+						drawnString.append( value.getBytes("ISO-8859-1") );
+					}
+				}
+				int setFontIndex = tokens.indexOf( PDFOperator.getOperator( "Tf" ));
+				tokens.set( setFontIndex-1, new COSFloat( fontSize ) );
+				if( foundString )
+				{
+					writer.writeTokens( tokens );
 				}
 				else
 				{
-					if( tokens != null )
+					int bmcIndex = tokens.indexOf( PDFOperator.getOperator( "BMC" ) );
+					int emcIndex = tokens.indexOf( PDFOperator.getOperator( "EMC" ) );
+
+					if( bmcIndex != -1 )
 					{
-						if( daTokens != null )
-						{
-							int bmcIndex = tokens.indexOf( PDFOperator.getOperator( "BMC" ));
-							int emcIndex = tokens.indexOf( PDFOperator.getOperator( "EMC" ));
-							if( bmcIndex != -1 && emcIndex != -1 &&
-									emcIndex == bmcIndex+1 )
-							{
-								//if the EMC immediately follows the BMC index then should
-								//insert the daTokens inbetween the two markers.
-								tokens.addAll( emcIndex, daTokens );
-							}
-						}
-						ByteArrayOutputStream output = new ByteArrayOutputStream();
-						ContentStreamWriter writer = new ContentStreamWriter( output );
-						float fontSize = calculateFontSize( pdFont, appearanceStream.getBoundingBox(), tokens, null );
-						boolean foundString = false;
-						for( int i=0; i<tokens.size(); i++ )
-						{
-							if( tokens.get( i ) instanceof COSString )
-							{
-								foundString = true;
-								COSString drawnString =((COSString)tokens.get(i));
-								drawnString.reset();
-								drawnString.append( apValue.getBytes("ISO-8859-1") );
-							}
-						}
-						int setFontIndex = tokens.indexOf( PDFOperator.getOperator( "Tf" ));
-						tokens.set( setFontIndex-1, new COSFloat( fontSize ) );
-						if( foundString )
-						{
-							writer.writeTokens( tokens );
-						}
-						else
-						{
-							int bmcIndex = tokens.indexOf( PDFOperator.getOperator( "BMC" ) );
-							int emcIndex = tokens.indexOf( PDFOperator.getOperator( "EMC" ) );
-
-							if( bmcIndex != -1 )
-							{
-								writer.writeTokens( tokens, 0, bmcIndex+1 );
-							}
-							else
-							{
-								writer.writeTokens( tokens );
-							}
-							output.write( "\n".getBytes("ISO-8859-1") );
-							insertGeneratedAppearance( widget, output,
-									pdFont, tokens, appearanceStream );
-							if( emcIndex != -1 )
-							{
-								writer.writeTokens( tokens, emcIndex, tokens.size() );
-							}
-						}
-						writeToStream( output.toByteArray(), appearanceStream );
+						writer.writeTokens( tokens, 0, bmcIndex+1 );
 					}
 					else
 					{
-						//hmm?
+						writer.writeTokens( tokens );
+					}
+					output.write( "\n".getBytes("ISO-8859-1") );
+					insertGeneratedAppearance( output );
+					if( emcIndex != -1 )
+					{
+						writer.writeTokens( tokens, emcIndex, tokens.size() );
 					}
 				}
 			}
+			return output.toByteArray();
 		}
-	}
 
-	/**
-	 * My "not so great" method for calculating the fontsize.
-	 * It does not work superb, but it handles ok.
-	 * @return the calculated font-size
-	 *
-	 * @throws IOException If there is an error getting the font height.
-	 */
-	private float calculateFontSize( PDFont pdFont, PDRectangle boundingBox, List tokens, List daTokens )
-			throws IOException
-			{
-		float fontSize = 0;
-		if( daTokens != null )
+		/**
+		 * My "not so great" method for calculating the fontsize.
+		 * It does not work superb, but it handles ok.
+		 * @return the calculated font-size
+		 *
+		 * @throws IOException If there is an error getting the font height.
+		 */
+		private float calculateFontSize( PDRectangle box, List daTokenList ) throws IOException
 		{
-			//daString looks like   "BMC /Helv 3.4 Tf EMC"
+			float fontSize = 0;
+			if( daTokenList != null )
+			{
+				//daString looks like   "BMC /Helv 3.4 Tf EMC"
+
+				int fontIndex = daTokenList.indexOf( PDFOperator.getOperator( "Tf" ) );
+				if(fontIndex != -1 )
+				{
+					fontSize = ((COSNumber)daTokenList.get(fontIndex-1)).floatValue();
+				}
+			}
+
+			float widthBasedFontSize = Float.MAX_VALUE;
 
-			int fontIndex = daTokens.indexOf( PDFOperator.getOperator( "Tf" ) );
-			if(fontIndex != -1 )
+			if( doNotScroll )
 			{
-				fontSize = ((COSNumber)daTokens.get(fontIndex-1)).floatValue();
+				//if we don't scroll then we will shrink the font to fit into the text area.
+				float widthAtFontSize1 = pdFont.getStringWidth( value )/1000.f;
+				float availableWidth = getAvailableWidth(box, getLineWidth(tokens));
+				widthBasedFontSize = availableWidth / widthAtFontSize1;
 			}
-		}
+			else if( fontSize == 0 )
+			{
+				float lineWidth = getLineWidth( tokens );
+				float height = 0;
+				if( pdFont instanceof PDSimpleFont )
+				{
+					height = ((PDSimpleFont)pdFont).getFontDescriptor().getFontBoundingBox().getHeight();
+				}
+				else
+				{
+					//now much we can do, so lets assume font is square and use width
+					//as the height
+					height = pdFont.getAverageFontWidth();
+				}
+				height = height/1000f;
 
-		float widthBasedFontSize = Float.MAX_VALUE;
+				float availHeight = getAvailableHeight( box, lineWidth );
+				fontSize = Math.min((availHeight/height), widthBasedFontSize);
+			}
+			return fontSize;
+		}
 
-		if( parent.doNotScroll() )
+		private void insertGeneratedAppearance( OutputStream output ) throws IOException
 		{
-			//if we don't scroll then we will shrink the font to fit into the text area.
-			float widthAtFontSize1 = pdFont.getStringWidth( value )/1000.f;
-			float availableWidth = getAvailableWidth(boundingBox, getLineWidth(tokens));
-			widthBasedFontSize = availableWidth / widthAtFontSize1;
+			PrintWriter printWriter = new PrintWriter( output, true );
+			float fontSize = 0.0f;
+			printWriter.println( "BT" );
+			if( defaultAppearanceTokens != null )
+			{
+				fontSize = calculateFontSize( boundingBox, defaultAppearanceTokens );
+				int fontIndex = defaultAppearanceTokens.indexOf( PDFOperator.getOperator( "Tf" ) );
+				if(fontIndex != -1 )
+				{
+					defaultAppearanceTokens.set( fontIndex-1, new COSFloat( fontSize ) );
+				}
+				ContentStreamWriter daWriter = new ContentStreamWriter(output);
+				daWriter.writeTokens( defaultAppearanceTokens );
+			}
+			printWriter.println( getTextPosition( fontSize ) );
+			if( q == PDTextbox.QUADDING_LEFT )
+			{
+				//do nothing because left is default
+			}
+			else if( q == PDTextbox.QUADDING_CENTERED ||
+					q == PDTextbox.QUADDING_RIGHT )
+			{
+				float fieldWidth = boundingBox.getWidth();
+				float stringWidth = (pdFont.getStringWidth( value )/1000)*fontSize;
+				float adjustAmount = fieldWidth - stringWidth - 4;
+
+				if( q == PDTextbox.QUADDING_CENTERED )
+				{
+					adjustAmount = adjustAmount/2.0f;
+				}
+
+				printWriter.println( adjustAmount + " 0 Td" );
+			}
+			else
+			{
+				throw new IOException( "Error: Unknown justification value:" + q );
+			}
+			printWriter.println("(" + value + ") Tj");
+			printWriter.println("ET" );
+			printWriter.flush();
 		}
-		else if( fontSize == 0 )
+
+		/**
+		 * Calculates where to start putting the text in the box.
+		 * The positioning is not quite as accurate as when Acrobat
+		 * places the elements, but it works though.
+		 *
+		 * @return the sting for representing the start position of the text
+		 *
+		 * @throws IOException If there is an error calculating the text position.
+		 */
+		private String getTextPosition( float fontSize ) throws IOException
 		{
 			float lineWidth = getLineWidth( tokens );
-			float stringWidth = pdFont.getStringWidth( value );
-			float height = 0;
-			if( pdFont instanceof PDSimpleFont )
+			float pos = 0.0f;
+			if( multiline )
 			{
-				height = ((PDSimpleFont)pdFont).getFontDescriptor().getFontBoundingBox().getHeight();
+				int rows = (int) (getAvailableHeight( boundingBox, lineWidth ) / ((int) fontSize));
+				pos = ((rows)*fontSize)-fontSize;
 			}
 			else
 			{
-				//now much we can do, so lets assume font is square and use width
-				//as the height
-				height = pdFont.getAverageFontWidth();
+				if( pdFont instanceof PDSimpleFont )
+				{
+					//BJL 9/25/2004
+					//This algorithm is a little bit of black magic.  It does
+					//not appear to be documented anywhere.  Through examining a few
+					//PDF documents and the value that Acrobat places in there I
+					//have determined that the below method of computing the position
+					//is correct for certain documents, but maybe not all.  It does
+					//work f1040ez.pdf and Form_1.pdf
+					PDFontDescriptor fd = ((PDSimpleFont)pdFont).getFontDescriptor();
+					float bBoxHeight = boundingBox.getHeight();
+					float fontHeight = fd.getFontBoundingBox().getHeight() + 2 * fd.getDescent();
+					fontHeight = (fontHeight/1000) * fontSize;
+					pos = (bBoxHeight - fontHeight)/2;
+				}
+				else
+				{
+					throw new IOException( "Error: Don't know how to calculate the position for non-simple fonts" );
+				}
 			}
-			height = height/1000f;
-
-			float availHeight = getAvailableHeight( boundingBox, lineWidth );
-			fontSize = Math.min((availHeight/height), widthBasedFontSize);
+			PDRectangle innerBox = getSmallestDrawnRectangle( boundingBox, tokens );
+			float xInset = 2+ 2*(boundingBox.getWidth() - innerBox.getWidth());
+			return Math.round(xInset) + " "+ pos + " Td";
 		}
-		return fontSize;
-			}
+	}
 
 	/**
 	 * calculates the available height of the box.
@@ -343,73 +486,6 @@ public class PDAppearance {
 		return retval;
 	}
 
-	/**
-	 * Writes the stream to the actual stream in the COSStream.
-	 *
-	 * @throws IOException If there is an error writing to the stream
-	 */
-	private void writeToStream( byte[] data, PDAppearanceStream appearanceStream ) throws IOException
-	{
-		OutputStream out = appearanceStream.getStream().createUnfilteredStream();
-		out.write( data );
-		out.flush();
-	}
-
-	private void insertGeneratedAppearance( PDAnnotationWidget fieldWidget, OutputStream output,
-			PDFont pdFont, List tokens, PDAppearanceStream appearanceStream ) throws IOException {
-		PrintWriter printWriter = new PrintWriter( output, true );
-		float fontSize = 0.0f;
-		PDRectangle boundingBox = null;
-		boundingBox = appearanceStream.getBoundingBox();
-		if( boundingBox == null )
-		{
-			boundingBox = fieldWidget.getRectangle().createRetranslatedRectangle();
-		}
-		printWriter.println( "BT" );
-		if( defaultAppearance != null )
-		{
-			String daString = defaultAppearance.getString();
-			PDFStreamParser daParser = new PDFStreamParser(new ByteArrayInputStream( daString.getBytes("ISO-8859-1") ), null );
-			daParser.parse();
-			List<Object> daTokens = daParser.getTokens();
-			fontSize = calculateFontSize( pdFont, boundingBox, tokens, daTokens );
-			int fontIndex = daTokens.indexOf( PDFOperator.getOperator( "Tf" ) );
-			if(fontIndex != -1 )
-			{
-				daTokens.set( fontIndex-1, new COSFloat( fontSize ) );
-			}
-			ContentStreamWriter daWriter = new ContentStreamWriter(output);
-			daWriter.writeTokens( daTokens );
-		}
-		printWriter.println( getTextPosition( boundingBox, pdFont, fontSize, tokens ) );
-		int q = getQ();
-		if( q == PDTextbox.QUADDING_LEFT )
-		{
-			//do nothing because left is default
-		}
-		else if( q == PDTextbox.QUADDING_CENTERED ||
-				q == PDTextbox.QUADDING_RIGHT )
-		{
-			float fieldWidth = boundingBox.getWidth();
-			float stringWidth = (pdFont.getStringWidth( value )/1000)*fontSize;
-			float adjustAmount = fieldWidth - stringWidth - 4;
-
-			if( q == PDTextbox.QUADDING_CENTERED )
-			{
-				adjustAmount = adjustAmount/2.0f;
-			}
-
-			printWriter.println( adjustAmount + " 0 Td" );
-		}
-		else
-		{
-			throw new IOException( "Error: Unknown justification value:" + q );
-		}
-		printWriter.println("(" + value + ") Tj");
-		printWriter.println("ET" );
-		printWriter.flush();
-	}
-	
 	private int getQ()
     {
         int q = parent.getQ();
@@ -429,52 +505,6 @@ public class PDAppearance {
         return q;
     }
 	
-	/**
-     * Calculates where to start putting the text in the box.
-     * The positioning is not quite as accurate as when Acrobat
-     * places the elements, but it works though.
-     *
-     * @return the sting for representing the start position of the text
-     *
-     * @throws IOException If there is an error calculating the text position.
-     */
-    private String getTextPosition( PDRectangle boundingBox, PDFont pdFont, float fontSize, List tokens )
-        throws IOException
-    {
-        float lineWidth = getLineWidth( tokens );
-        float pos = 0.0f;
-        if(parent.isMultiline())
-        {
-            int rows = (int) (getAvailableHeight( boundingBox, lineWidth ) / ((int) fontSize));
-            pos = ((rows)*fontSize)-fontSize;
-        }
-        else
-        {
-            if( pdFont instanceof PDSimpleFont )
-            {
-                //BJL 9/25/2004
-                //This algorithm is a little bit of black magic.  It does
-                //not appear to be documented anywhere.  Through examining a few
-                //PDF documents and the value that Acrobat places in there I
-                //have determined that the below method of computing the position
-                //is correct for certain documents, but maybe not all.  It does
-                //work f1040ez.pdf and Form_1.pdf
-                PDFontDescriptor fd = ((PDSimpleFont)pdFont).getFontDescriptor();
-                float bBoxHeight = boundingBox.getHeight();
-                float fontHeight = fd.getFontBoundingBox().getHeight() + 2 * fd.getDescent();
-                fontHeight = (fontHeight/1000) * fontSize;
-                pos = (bBoxHeight - fontHeight)/2;
-            }
-            else
-            {
-                throw new IOException( "Error: Don't know how to calculate the position for non-simple fonts" );
-            }
-        }
-        PDRectangle innerBox = getSmallestDrawnRectangle( boundingBox, tokens );
-        float xInset = 2+ 2*(boundingBox.getWidth() - innerBox.getWidth());
-        return Math.round(xInset) + " "+ pos + " Td";
-    }
-    
     private PDRectangle getSmallestDrawnRectangle( PDRectangle boundingBox, List tokens )
     {
         PDRectangle smallest = boundingBox;
@@ -504,12 +534,13 @@ public class PDAppearance {
         return smallest;
     }
 
-	private PDFont getFontAndUpdateResources( List tokens, PDAppearanceStream appearanceStream ) throws IOException
+	private PDFont getFontAndUpdateResources( List tokens, PDAppearanceStream appearanceStream,
+			PDAppearanceContext context ) throws IOException
 	{
 
 		PDFont retval = null;
 		PDResources streamResources = appearanceStream.getResources();
-		PDResources formResources = acroForm.getDefaultResources();
+		PDResources formResources = context.getDefaultResources();
 		if( formResources != null )
 		{
 			if( streamResources == null )
@@ -518,20 +549,16 @@ public class PDAppearance {
 				appearanceStream.setResources( streamResources );
 			}
 
-			COSString da = getDefaultAppearance();
-			if( da != null )
+			List daTokens = context.getDefaultAppearanceTokens( getDefaultAppearance() );
+			if( daTokens != null )
 			{
-				String data = da.getString();
-				PDFStreamParser streamParser = new PDFStreamParser(
-						new ByteArrayInputStream( data.getBytes("ISO-8859-1") ), null );
-				streamParser.parse();
-				tokens = streamParser.getTokens();
+				tokens = daTokens;
 			}
 
 			int setFontIndex = tokens.indexOf( PDFOperator.getOperator( "Tf" ));
 			COSName cosFontName = (COSName)tokens.get( setFontIndex-2 );
 			String fontName = cosFontName.getName();
-			retval = (PDFont)streamResources.getFonts().get( fontName );
+			retval = context.getFont( streamResources, fontName );
 			if( retval == null )
 			{
 				retval = (PDFont)formResources.getFonts().get( fontName );
@@ -556,21 +583,6 @@ public class PDAppearance {
 		return tokens;
 	}
 
-	private List getStreamTokens( COSString string ) throws IOException
-	{
-		PDFStreamParser parser;
-
-		List tokens = null;
-		if( string != null )
-		{
-			ByteArrayInputStream stream = new ByteArrayInputStream( string.getBytes() );
-			parser = new PDFStreamParser( stream, acroForm.getDocument().getDocument().getScratchFile() );
-			parser.parse();
-			tokens = parser.getTokens();
-		}
-		return tokens;
-	}
-
 	private List getStreamTokens( COSStream stream ) throws IOException
 	{
 		PDFStreamParser parser;
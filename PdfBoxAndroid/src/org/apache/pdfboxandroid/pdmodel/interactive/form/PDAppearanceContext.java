@@ -0,0 +1,335 @@
+package org.apache.pdfboxandroid.pdmodel.interactive.form;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.pdfboxandroid.cos.COSBase;
+import org.apache.pdfboxandroid.cos.COSDictionary;
+import org.apache.pdfboxandroid.cos.COSName;
+import org.apache.pdfboxandroid.cos.COSStream;
+import org.apache.pdfboxandroid.cos.COSString;
+import org.apache.pdfboxandroid.exceptions.WrappedIOException;
+import org.apache.pdfboxandroid.pdfparser.PDFStreamParser;
+import org.apache.pdfboxandroid.pdmodel.PDResources;
+import org.apache.pdfboxandroid.pdmodel.font.PDFont;
+import org.apache.pdfboxandroid.pdmodel.font.PDFontDescriptor;
+import org.apache.pdfboxandroid.pdmodel.font.PDFontFactory;
+
+/**
+ * The state shared by the appearances generated for the fields of a form in one
+ * go. The default appearance strings are parsed once per distinct string, the
+ * default resources of the form are loaded once and fonts are shared by all
+ * appearance streams using the same font dictionary. The content of the
+ * appearance streams is generated at the end, on the executor of the form if
+ * it has one, and the streams are written afterwards by the calling thread.
+ *
+ * The generators must not touch the shared state of the document, everything
+ * they read is resolved by the calling thread before they are started.
+ */
+final class PDAppearanceContext {
+	private final PDAcroForm acroForm;
+
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    private PDResources defaultResources;
+    private boolean defaultResourcesLoaded = false;
+
+    /**
+     * The parsed default appearance strings.
+     */
+    private final Map<String, List<Object>> daTokens = new HashMap<String, List<Object>>();
+
+    /**
+     * The fonts created so far by their font dictionaries.
+     */
+    private final Map<COSBase, PDFont> fonts = new IdentityHashMap<COSBase, PDFont>();
+
+    /**
+     * The fonts whose metrics have been loaded.
+     */
+    private final Map<PDFont, Boolean> preparedFonts = new IdentityHashMap<PDFont, Boolean>();
+
+    /**
+     * The generators of the appearance streams which haven't been written yet.
+     */
+    private final Map<COSStream, Callable<byte[]>> pendingStreams =
+        new LinkedHashMap<COSStream, Callable<byte[]>>();
+
+    /**
+     * Constructor for appearances generated in the calling thread.
+     *
+     * @param form The form whose fields get new appearances.
+     */
+    PDAppearanceContext( PDAcroForm form )
+    {
+        this( form, null, 1 );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param form The form whose fields get new appearances.
+     * @param executorValue The executor generating the appearances, or null to
+     *        generate them in the calling thread.
+     * @param parallelismValue The maximum number of generating tasks running at once.
+     */
+    PDAppearanceContext( PDAcroForm form, ExecutorService executorValue, int parallelismValue )
+    {
+        acroForm = form;
+        executor = executorValue;
+        parallelism = parallelismValue;
+    }
+
+    /**
+     * Returns the default resources of the form.
+     *
+     * @return The default resources or null if the form has none.
+     */
+    PDResources getDefaultResources()
+    {
+        if( !defaultResourcesLoaded )
+        {
+            defaultResources = acroForm.getDefaultResources();
+            if( defaultResources != null )
+            {
+                for( PDFont font : defaultResources.getFonts().values() )
+                {
+                    fonts.put( font.getCOSObject(), font );
+                }
+            }
+            defaultResourcesLoaded = true;
+        }
+        return defaultResources;
+    }
+
+    /**
+     * Returns the tokens of the given default appearance string. The returned list
+     * is a copy which may be changed by the caller.
+     *
+     * @param da The default appearance string.
+     * @return The tokens or null if there is no default appearance string.
+     * @throws IOException If there is an error parsing the string.
+     */
+    List<Object> getDefaultAppearanceTokens( COSString da ) throws IOException
+    {
+        if( da == null )
+        {
+            return null;
+        }
+        String data = da.getString();
+        List<Object> tokens = daTokens.get( data );
+        if( tokens == null )
+        {
+            PDFStreamParser parser = new PDFStreamParser(
+                    new ByteArrayInputStream( data.getBytes( "ISO-8859-1" ) ), null );
+            parser.parse();
+            tokens = parser.getTokens();
+            daTokens.put( data, tokens );
+        }
+        List<Object> copy = new ArrayList<Object>( tokens.size() );
+        for( Object token : tokens )
+        {
+            // strings are changed in place when the appearance is generated
+            copy.add( token instanceof COSString ? new COSString( ((COSString)token).getBytes() ) : token );
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the font with the given name from the given resources without
+     * creating the other fonts of the resources.
+     *
+     * @param resources The resources of an appearance stream.
+     * @param fontName The name of the font.
+     * @return The font or null if the resources don't contain such a font.
+     * @throws IOException If there is an error creating the font.
+     */
+    PDFont getFont( PDResources resources, String fontName ) throws IOException
+    {
+        COSBase fontDictionary = null;
+        COSBase fontResources = resources.getCOSDictionary().getDictionaryObject( COSName.FONT );
+        if( fontResources instanceof COSDictionary )
+        {
+            fontDictionary = ((COSDictionary)fontResources).getDictionaryObject( fontName );
+        }
+        if( !( fontDictionary instanceof COSDictionary ) )
+        {
+            return null;
+        }
+        PDFont font = fonts.get( fontDictionary );
+        if( font == null )
+        {
+            font = PDFontFactory.createFont( (COSDictionary)fontDictionary );
+            fonts.put( fontDictionary, font );
+        }
+        return font;
+    }
+
+    /**
+     * Loads the metrics of the given font which are read when an appearance is
+     * generated, so that the generators only read what is already there. The
+     * font dictionary and its descriptor are dereferenced by the calling thread.
+     *
+     * @param font The font of an appearance stream.
+     * @throws IOException If there is an error reading the metrics.
+     */
+    void prepareFont( PDFont font ) throws IOException
+    {
+        if( font == null || preparedFonts.put( font, Boolean.TRUE ) != null )
+        {
+            return;
+        }
+        font.getSubType();
+        font.getFirstChar();
+        font.getLastChar();
+        font.getWidths();
+        font.getAverageFontWidth();
+        PDFontDescriptor fd = font.getFontDescriptor();
+        if( fd != null )
+        {
+            fd.getFontBoundingBox();
+            fd.getDescent();
+            fd.getMissingWidth();
+        }
+    }
+
+    /**
+     * Keeps the generator of an appearance stream until the appearances are written.
+     *
+     * @param stream The appearance stream.
+     * @param generator The generator of the new content of the stream.
+     */
+    void addAppearance( COSStream stream, Callable<byte[]> generator )
+    {
+        pendingStreams.put( stream, generator );
+    }
+
+    /**
+     * Generates the data of all pending appearance streams and writes it.
+     *
+     * @throws IOException If there is an error generating or writing a stream.
+     */
+    void writeAppearances() throws IOException
+    {
+        List<Callable<byte[]>> generators = new ArrayList<Callable<byte[]>>( pendingStreams.values() );
+        List<byte[]> data = generate( generators );
+        int i = 0;
+        for( COSStream stream : pendingStreams.keySet() )
+        {
+            OutputStream out = stream.createUnfilteredStream();
+            try
+            {
+                out.write( data.get( i++ ) );
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        pendingStreams.clear();
+    }
+
+    /**
+     * Runs the given generators, split into at most as many tasks on the executor
+     * as the parallelism allows. The executor belongs to the caller of the form
+     * and is never shut down, only the tasks of this context are cancelled if
+     * one of them fails.
+     */
+    private List<byte[]> generate( List<Callable<byte[]>> generators ) throws IOException
+    {
+        int tasks = executor == null ? 1 : Math.min( parallelism, generators.size() );
+        if( tasks <= 1 )
+        {
+            return generateAll( generators );
+        }
+        List<Future<List<byte[]>>> futures = new ArrayList<Future<List<byte[]>>>( tasks );
+        List<byte[]> data = new ArrayList<byte[]>( generators.size() );
+        try
+        {
+            for( int i = 0; i < tasks; i++ )
+            {
+                final List<Callable<byte[]>> part = generators.subList(
+                        i * generators.size() / tasks, ( i + 1 ) * generators.size() / tasks );
+                futures.add( executor.submit( new Callable<List<byte[]>>()
+                {
+                    public List<byte[]> call() throws IOException
+                    {
+                        return generateAll( part );
+                    }
+                } ) );
+            }
+            for( Future<List<byte[]>> future : futures )
+            {
+                data.addAll( future.get() );
+            }
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new WrappedIOException( "Interrupted while generating the appearances", e );
+        }
+        catch( ExecutionException e )
+        {
+            throw unwrap( e.getCause() );
+        }
+        finally
+        {
+            for( Future<List<byte[]>> future : futures )
+            {
+                future.cancel( true );
+            }
+        }
+        return data;
+    }
+
+    private static List<byte[]> generateAll( List<Callable<byte[]>> generators ) throws IOException
+    {
+        List<byte[]> data = new ArrayList<byte[]>( generators.size() );
+        for( Callable<byte[]> generator : generators )
+        {
+            data.add( call( generator ) );
+        }
+        return data;
+    }
+
+    private static byte[] call( Callable<byte[]> generator ) throws IOException
+    {
+        try
+        {
+            return generator.call();
+        }
+        catch( Exception e )
+        {
+            throw unwrap( e );
+        }
+    }
+
+    private static IOException unwrap( Throwable cause )
+    {
+        if( cause instanceof IOException )
+        {
+            return (IOException)cause;
+        }
+        if( cause instanceof RuntimeException )
+        {
+            throw (RuntimeException)cause;
+        }
+        if( cause instanceof Error )
+        {
+            throw (Error)cause;
+        }
+        return new WrappedIOException( cause );
+    }
+}
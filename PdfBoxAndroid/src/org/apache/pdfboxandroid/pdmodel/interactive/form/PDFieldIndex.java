@@ -0,0 +1,247 @@
+package org.apache.pdfboxandroid.pdmodel.interactive.form;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.pdfboxandroid.cos.COSArray;
+import org.apache.pdfboxandroid.cos.COSBase;
+import org.apache.pdfboxandroid.cos.COSDictionary;
+import org.apache.pdfboxandroid.cos.COSName;
+
+/**
+ * An index of the fields of a form by their fully qualified names, both terminal
+ * and non-terminal fields are indexed. The field tree is walked once when the index
+ * is built. The index remembers the /Fields and /Kids arrays it has walked, the
+ * fields which had no such array and the partial names of all fields. It is out of
+ * date as soon as one of the arrays is changed, replaced or added or one of the
+ * partial names is changed. A single lookup only checks the arrays and the partial
+ * names on the path to the requested field.
+ */
+final class PDFieldIndex {
+	/**
+     * The field dictionaries in the order of the field tree.
+     */
+    private final Map<String, Entry> fields = new LinkedHashMap<String, Entry>();
+
+    private final List<WatchedArray> watchedArrays = new ArrayList<WatchedArray>();
+
+    private final List<WatchedName> watchedNames = new ArrayList<WatchedName>();
+
+    /**
+     * Builds the index of the given form.
+     *
+     * @param acroForm The dictionary of the form.
+     */
+    PDFieldIndex( COSDictionary acroForm )
+    {
+        WatchedArray rootFields = watch( acroForm, COSName.FIELDS );
+        if( rootFields.array != null )
+        {
+            addFields( new WatchedArray[] { rootFields }, new WatchedName[ 0 ], null,
+                    new IdentityHashMap<COSDictionary, Boolean>() );
+        }
+    }
+
+    /**
+     * Adds the fields of the last array of the given path, the given names are
+     * those of the parent fields.
+     */
+    private void addFields( WatchedArray[] path, WatchedName[] parentNames, String parentName,
+            Map<COSDictionary, Boolean> visited )
+    {
+        COSArray array = path[path.length - 1].array;
+        for( int i = 0; i < array.size(); i++ )
+        {
+            COSBase element = array.getObject( i );
+            if( !( element instanceof COSDictionary ) )
+            {
+                continue;
+            }
+            COSDictionary field = (COSDictionary)element;
+            if( visited.put( field, Boolean.TRUE ) != null )
+            {
+                // a malformed field tree referencing a field twice
+                continue;
+            }
+            String name = parentName;
+            String partialName = field.getString( COSName.T );
+            WatchedName watchedName = new WatchedName( field, partialName );
+            watchedNames.add( watchedName );
+            WatchedName[] names = new WatchedName[ parentNames.length + 1 ];
+            System.arraycopy( parentNames, 0, names, 0, parentNames.length );
+            names[parentNames.length] = watchedName;
+            if( partialName != null )
+            {
+                name = parentName == null ? partialName : parentName + "." + partialName;
+                // the first field with a name wins, as with a linear search
+                if( !fields.containsKey( name ) )
+                {
+                    fields.put( name, new Entry( field, path, names ) );
+                }
+            }
+            WatchedArray kids = watch( field, COSName.KIDS );
+            if( kids.array != null )
+            {
+                WatchedArray[] kidsPath = new WatchedArray[ path.length + 1 ];
+                System.arraycopy( path, 0, kidsPath, 0, path.length );
+                kidsPath[path.length] = kids;
+                addFields( kidsPath, names, name, visited );
+            }
+        }
+    }
+
+    /**
+     * Remembers the array with the given key, the array of the returned instance
+     * is null if the dictionary has no such array.
+     */
+    private WatchedArray watch( COSDictionary owner, COSName key )
+    {
+        COSBase array = owner.getDictionaryObject( key );
+        WatchedArray watched = new WatchedArray( owner, key,
+                array instanceof COSArray ? (COSArray)array : null );
+        watchedArrays.add( watched );
+        return watched;
+    }
+
+    /**
+     * Returns true if none of the walked /Fields and /Kids arrays has been changed,
+     * no such array has been added and no partial name has been changed.
+     *
+     * @return true if the index is up to date
+     */
+    boolean isValid()
+    {
+        for( WatchedArray watched : watchedArrays )
+        {
+            if( !watched.isUnchanged() )
+            {
+                return false;
+            }
+        }
+        for( WatchedName watched : watchedNames )
+        {
+            if( !watched.isUnchanged() )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the dictionary of the field with the given fully qualified name.
+     * Only the arrays and the partial names on the path to the field are checked,
+     * a field added or renamed after the index has been built isn't found.
+     *
+     * @param name The fully qualified name of the field.
+     * @return The field dictionary or null if there is no such field or the
+     *         arrays or the partial names on the path to it have been changed.
+     */
+    COSDictionary get( String name )
+    {
+        Entry entry = fields.get( name );
+        if( entry == null )
+        {
+            return null;
+        }
+        for( WatchedArray watched : entry.path )
+        {
+            if( !watched.isUnchanged() )
+            {
+                return null;
+            }
+        }
+        for( WatchedName watched : entry.names )
+        {
+            if( !watched.isUnchanged() )
+            {
+                return null;
+            }
+        }
+        return entry.field;
+    }
+
+    /**
+     * Returns the fully qualified names of all fields in the order of the field tree.
+     *
+     * @return The names of the fields.
+     */
+    Set<String> getNames()
+    {
+        return Collections.unmodifiableSet( fields.keySet() );
+    }
+
+    /**
+     * An indexed field, the arrays on the path to it and the partial names of the
+     * field and its parents.
+     */
+    private static final class Entry
+    {
+        private final COSDictionary field;
+        private final WatchedArray[] path;
+        private final WatchedName[] names;
+
+        private Entry( COSDictionary fieldValue, WatchedArray[] pathValue, WatchedName[] namesValue )
+        {
+            field = fieldValue;
+            path = pathValue;
+            names = namesValue;
+        }
+    }
+
+    /**
+     * A /Fields or /Kids array and its state when the index was built, the array
+     * is null if the dictionary had no such array.
+     */
+    private static final class WatchedArray
+    {
+        private final COSDictionary owner;
+        private final COSName key;
+        private final COSArray array;
+        private final int modificationCount;
+
+        private WatchedArray( COSDictionary ownerValue, COSName keyValue, COSArray arrayValue )
+        {
+            owner = ownerValue;
+            key = keyValue;
+            array = arrayValue;
+            modificationCount = arrayValue != null ? arrayValue.getModificationCount() : 0;
+        }
+
+        private boolean isUnchanged()
+        {
+            COSBase current = owner.getDictionaryObject( key );
+            if( array == null )
+            {
+                return !( current instanceof COSArray );
+            }
+            return current == array && array.getModificationCount() == modificationCount;
+        }
+    }
+
+    /**
+     * The partial name of a field when the index was built, may be null.
+     */
+    private static final class WatchedName
+    {
+        private final COSDictionary field;
+        private final String partialName;
+
+        private WatchedName( COSDictionary fieldValue, String partialNameValue )
+        {
+            field = fieldValue;
+            partialName = partialNameValue;
+        }
+
+        private boolean isUnchanged()
+        {
+            String current = field.getString( COSName.T );
+            return partialName == null ? current == null : partialName.equals( current );
+        }
+    }
+}
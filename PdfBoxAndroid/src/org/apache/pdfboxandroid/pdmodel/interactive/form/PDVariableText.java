@@ -66,6 +66,22 @@ public abstract class PDVariableText extends PDField {
      * @throws IOException If there is an error calculating the appearance stream.
      */
     public void setValue(String value) throws IOException
+    {
+        PDAppearanceContext context = new PDAppearanceContext( getAcroForm() );
+        setValue( value, context );
+        context.writeAppearances();
+    }
+
+    /**
+     * Sets the value of the field, the appearance streams are written when the
+     * appearances of the given context are written.
+     *
+     * @param value The new value for this text field.
+     * @param context The state shared by the appearances of several fields.
+     *
+     * @throws IOException If there is an error calculating the appearance stream.
+     */
+    void setValue(String value, PDAppearanceContext context) throws IOException
     {
         COSString fieldValue = new COSString(value);
         getDictionary().setItem( COSName.V, fieldValue );
@@ -78,7 +94,7 @@ public abstract class PDVariableText extends PDField {
         {
             this.appearance = new PDAppearance( getAcroForm(), this );
         }
-        appearance.setAppearanceValue(value);
+        appearance.setAppearanceValue(value, context);
     }
     
     /**
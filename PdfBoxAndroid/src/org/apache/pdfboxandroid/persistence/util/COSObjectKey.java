@@ -16,6 +16,26 @@ public class COSObjectKey implements Comparable<COSObjectKey> {
         setGeneration(gen);
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj)
+    {
+        return (obj instanceof COSObjectKey) &&
+               (((COSObjectKey)obj).getNumber() == getNumber()) &&
+               (((COSObjectKey)obj).getGeneration() == getGeneration());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        return Long.valueOf(number+number+generation).hashCode();
+    }
+    
     /**
      * This will set the objects generation number.
      *
@@ -56,6 +76,13 @@ public class COSObjectKey implements Comparable<COSObjectKey> {
         return generation;
     }
 	
+	/** {@inheritDoc} */
+    @Override
+    public String toString()
+    {
+        return "" + getNumber() + " " + getGeneration() + " R";
+    }
+	
 	/** {@inheritDoc} */
     public int compareTo(COSObjectKey other)
     {
@@ -0,0 +1,466 @@
+package org.apache.pdfboxandroid.persistence.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The xref table of a document, mapping object keys to the byte offsets of the
+ * objects in the file. Objects stored in compressed object streams are mapped
+ * to the negated number of their object stream.
+ *
+ * Object numbers are dense in nearly all documents, so the offsets and generations
+ * are kept in arrays indexed by the object number. Entries whose number would make
+ * the arrays mostly empty, and further generations of an object number which is
+ * already in use, are kept in a map. The primitive accessors don't allocate
+ * anything, the {@link Map} methods are there for the callers which need a map.
+ */
+public final class COSXrefTable extends AbstractMap<COSObjectKey, Long> {
+	/**
+     * Returned by {@link #getOffset(long, long)} for objects which aren't in the table.
+     */
+    public static final long NOT_FOUND = Long.MIN_VALUE;
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private static final int NO_GENERATION = -1;
+
+    private long[] offsets = new long[0];
+    private int[] generations = new int[0];
+    private int denseSize = 0;
+
+    private Map<COSObjectKey, Long> sparse = null;
+
+    private transient Set<Map.Entry<COSObjectKey, Long>> entrySet = null;
+
+    /**
+     * Returns the offset of the given object.
+     *
+     * @param number The object number.
+     * @param generation The generation number.
+     * @return The byte offset, the negated number of the object stream containing
+     *         the object or {@link #NOT_FOUND} if the object isn't in the table.
+     */
+    public long getOffset( long number, long generation )
+    {
+        if( isDense( number, generation ) )
+        {
+            return offsets[(int)number];
+        }
+        if( sparse != null )
+        {
+            Long offset = sparse.get( new COSObjectKey( number, generation ) );
+            if( offset != null )
+            {
+                return offset.longValue();
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Sets the offset of the given object.
+     *
+     * @param number The object number.
+     * @param generation The generation number.
+     * @param offset The byte offset or the negated number of the object stream
+     *               containing the object.
+     * @return The previous offset or {@link #NOT_FOUND} if the object wasn't in the table.
+     */
+    public long setOffset( long number, long generation, long offset )
+    {
+        if( number >= 0 && generation >= 0 && generation <= Integer.MAX_VALUE && ensureDense( number ) )
+        {
+            int index = (int)number;
+            int current = generations[index];
+            // after a removal the sparse entries may contain the object
+            if( current == NO_GENERATION && ( sparse == null ||
+                    !sparse.containsKey( new COSObjectKey( number, generation ) ) ) )
+            {
+                generations[index] = (int)generation;
+                offsets[index] = offset;
+                denseSize++;
+                return NOT_FOUND;
+            }
+            if( current == generation )
+            {
+                long previous = offsets[index];
+                offsets[index] = offset;
+                return previous;
+            }
+        }
+        if( sparse == null )
+        {
+            sparse = new HashMap<COSObjectKey, Long>();
+        }
+        Long previous = sparse.put( new COSObjectKey( number, generation ), Long.valueOf( offset ) );
+        return previous == null ? NOT_FOUND : previous.longValue();
+    }
+
+    private boolean isDense( long number, long generation )
+    {
+        return number >= 0 && number < generations.length && generation >= 0 &&
+                generations[(int)number] == generation;
+    }
+
+    /**
+     * Grows the arrays so that they contain the given object number unless they
+     * would be mostly empty afterwards.
+     */
+    private boolean ensureDense( long number )
+    {
+        if( number < generations.length )
+        {
+            return true;
+        }
+        if( number > Math.max( MIN_CAPACITY, 2L * denseSize ) )
+        {
+            return false;
+        }
+        int oldCapacity = generations.length;
+        int capacity = (int)Math.max( number + 1, Math.max( 64, oldCapacity * 3L / 2 ) );
+        long[] newOffsets = new long[capacity];
+        int[] newGenerations = new int[capacity];
+        System.arraycopy( offsets, 0, newOffsets, 0, oldCapacity );
+        System.arraycopy( generations, 0, newGenerations, 0, oldCapacity );
+        Arrays.fill( newGenerations, oldCapacity, capacity, NO_GENERATION );
+        offsets = newOffsets;
+        generations = newGenerations;
+        return true;
+    }
+
+    /**
+     * Returns the highest object number in the table.
+     *
+     * @return The highest object number or -1 if the table is empty.
+     */
+    public long getHighestNumber()
+    {
+        long highestNumber = -1;
+        for( int i = generations.length - 1; i >= 0; i-- )
+        {
+            if( generations[i] != NO_GENERATION )
+            {
+                highestNumber = i;
+                break;
+            }
+        }
+        if( sparse != null )
+        {
+            for( COSObjectKey key : sparse.keySet() )
+            {
+                highestNumber = Math.max( highestNumber, key.getNumber() );
+            }
+        }
+        return highestNumber;
+    }
+
+    /**
+     * Returns true if the table contains objects stored in object streams.
+     *
+     * @return true if there are compressed objects
+     */
+    public boolean hasCompressedObjects()
+    {
+        for( int i = 0; i < generations.length; i++ )
+        {
+            if( generations[i] != NO_GENERATION && offsets[i] < 0 )
+            {
+                return true;
+            }
+        }
+        if( sparse != null )
+        {
+            for( Long offset : sparse.values() )
+            {
+                if( offset != null && offset.longValue() < 0 )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds all entries of the given table, replacing the entries with the same key.
+     *
+     * @param table The table to be added.
+     */
+    public void putAll( COSXrefTable table )
+    {
+        for( int i = 0; i < table.generations.length; i++ )
+        {
+            if( table.generations[i] != NO_GENERATION )
+            {
+                setOffset( i, table.generations[i], table.offsets[i] );
+            }
+        }
+        if( table.sparse != null )
+        {
+            for( Map.Entry<COSObjectKey, Long> entry : table.sparse.entrySet() )
+            {
+                put( entry.getKey(), entry.getValue() );
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putAll( Map<? extends COSObjectKey, ? extends Long> map )
+    {
+        if( map instanceof COSXrefTable )
+        {
+            putAll( (COSXrefTable)map );
+        }
+        else
+        {
+            super.putAll( map );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Long put( COSObjectKey key, Long offset )
+    {
+        if( offset == null )
+        {
+            throw new NullPointerException( "The offset of " + key + " must not be null" );
+        }
+        long previous = setOffset( key.getNumber(), key.getGeneration(), offset.longValue() );
+        return previous == NOT_FOUND ? null : Long.valueOf( previous );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Long get( Object key )
+    {
+        if( !( key instanceof COSObjectKey ) )
+        {
+            return null;
+        }
+        COSObjectKey objectKey = (COSObjectKey)key;
+        long offset = getOffset( objectKey.getNumber(), objectKey.getGeneration() );
+        return offset == NOT_FOUND ? null : Long.valueOf( offset );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey( Object key )
+    {
+        return get( key ) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Long remove( Object key )
+    {
+        if( !( key instanceof COSObjectKey ) )
+        {
+            return null;
+        }
+        COSObjectKey objectKey = (COSObjectKey)key;
+        long number = objectKey.getNumber();
+        if( isDense( number, objectKey.getGeneration() ) )
+        {
+            generations[(int)number] = NO_GENERATION;
+            denseSize--;
+            return Long.valueOf( offsets[(int)number] );
+        }
+        return sparse == null ? null : sparse.remove( objectKey );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return denseSize + ( sparse == null ? 0 : sparse.size() );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear()
+    {
+        offsets = new long[0];
+        generations = new int[0];
+        denseSize = 0;
+        sparse = null;
+    }
+
+    /**
+     * Returns the entries of the table, the keys of the dense entries are created
+     * while iterating.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Map.Entry<COSObjectKey, Long>> entrySet()
+    {
+        if( entrySet == null )
+        {
+            entrySet = new AbstractSet<Map.Entry<COSObjectKey, Long>>()
+            {
+                @Override
+                public Iterator<Map.Entry<COSObjectKey, Long>> iterator()
+                {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size()
+                {
+                    return COSXrefTable.this.size();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Iterates over the dense entries in the order of their numbers, then over
+     * the sparse entries.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<COSObjectKey, Long>>
+    {
+        private int next = -1;
+        private COSObjectKey last = null;
+        private Iterator<Map.Entry<COSObjectKey, Long>> sparseIterator = null;
+
+        private EntryIterator()
+        {
+            advance();
+        }
+
+        private void advance()
+        {
+            do
+            {
+                next++;
+            }
+            while( next < generations.length && generations[next] == NO_GENERATION );
+        }
+
+        public boolean hasNext()
+        {
+            if( next < generations.length )
+            {
+                return true;
+            }
+            if( sparseIterator == null && sparse != null )
+            {
+                sparseIterator = sparse.entrySet().iterator();
+            }
+            return sparseIterator != null && sparseIterator.hasNext();
+        }
+
+        public Map.Entry<COSObjectKey, Long> next()
+        {
+            if( !hasNext() )
+            {
+                throw new NoSuchElementException();
+            }
+            if( sparseIterator != null )
+            {
+                Map.Entry<COSObjectKey, Long> entry = sparseIterator.next();
+                last = entry.getKey();
+                return entry;
+            }
+            last = new COSObjectKey( next, generations[next] );
+            Map.Entry<COSObjectKey, Long> entry = new Entry( last, offsets[next] );
+            advance();
+            return entry;
+        }
+
+        public void remove()
+        {
+            if( last == null )
+            {
+                throw new IllegalStateException();
+            }
+            if( sparseIterator != null )
+            {
+                sparseIterator.remove();
+            }
+            else
+            {
+                COSXrefTable.this.remove( last );
+            }
+            last = null;
+        }
+    }
+
+    /**
+     * A dense entry of the table, setting its value changes the table.
+     */
+    private final class Entry implements Map.Entry<COSObjectKey, Long>
+    {
+        private final COSObjectKey key;
+        private long offset;
+
+        private Entry( COSObjectKey keyValue, long offsetValue )
+        {
+            key = keyValue;
+            offset = offsetValue;
+        }
+
+        public COSObjectKey getKey()
+        {
+            return key;
+        }
+
+        public Long getValue()
+        {
+            return Long.valueOf( offset );
+        }
+
+        public Long setValue( Long value )
+        {
+            Long previous = getValue();
+            put( key, value );
+            offset = value.longValue();
+            return previous;
+        }
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if( !( obj instanceof Map.Entry ) )
+            {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>)obj;
+            return key.equals( other.getKey() ) && getValue().equals( other.getValue() );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return key.hashCode() ^ getValue().hashCode();
+        }
+
+        @Override
+        public String toString()
+        {
+            return key + "=" + offset;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.apache.pdfboxandroid.pdmodel.interactive.form;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.apache.pdfboxandroid.cos.COSArray;
+import org.apache.pdfboxandroid.cos.COSBase;
+import org.apache.pdfboxandroid.cos.COSDictionary;
+import org.apache.pdfboxandroid.cos.COSName;
+
+/**
+ * Tests that the field index of a form follows the changes of the field tree.
+ */
+public class PDFieldIndexTest extends TestCase
+{
+    private COSDictionary acroForm;
+    private COSDictionary parent;
+    private COSArray kids;
+    private PDAcroForm form;
+
+    protected void setUp()
+    {
+        acroForm = new COSDictionary();
+        parent = createField( "parent" );
+        kids = new COSArray();
+        kids.add( createField( "first" ) );
+        kids.add( createField( "second" ) );
+        parent.setItem( COSName.KIDS, kids );
+        COSArray fields = new COSArray();
+        fields.add( parent );
+        acroForm.setItem( COSName.FIELDS, fields );
+        form = new PDAcroForm( null, acroForm );
+    }
+
+    private static COSDictionary createField( String name )
+    {
+        COSDictionary field = new COSDictionary();
+        field.setString( COSName.T, name );
+        field.setItem( COSName.FT, COSName.getPDFName( "Tx" ) );
+        return field;
+    }
+
+    /**
+     * A kid removed through the iterator of the /Kids array must no longer be found.
+     *
+     * @throws IOException If the fields can't be read.
+     */
+    public void testKidRemovedThroughIterator() throws IOException
+    {
+        assertNotNull( form.getField( "parent.first" ) );
+        Iterator<COSBase> iterator = kids.iterator();
+        iterator.next();
+        iterator.remove();
+        assertNull( form.getField( "parent.first" ) );
+        assertNotNull( form.getField( "parent.second" ) );
+    }
+
+    /**
+     * A kid added through the /Kids array must be found.
+     *
+     * @throws IOException If the fields can't be read.
+     */
+    public void testKidAdded() throws IOException
+    {
+        assertNull( form.getField( "parent.third" ) );
+        kids.add( createField( "third" ) );
+        assertNotNull( form.getField( "parent.third" ) );
+    }
+
+    /**
+     * A field renamed through the entries of its dictionary must be found by its new name.
+     *
+     * @throws IOException If the fields can't be read.
+     */
+    public void testFieldRenamed() throws IOException
+    {
+        assertNotNull( form.getField( "parent.second" ) );
+        COSDictionary second = (COSDictionary)kids.getObject( 1 );
+        second.setString( COSName.T, "renamed" );
+        assertNull( form.getField( "parent.second" ) );
+        assertNotNull( form.getField( "parent.renamed" ) );
+    }
+
+    /**
+     * Removing the /Kids array through the key set must drop the kids from the index.
+     *
+     * @throws IOException If the fields can't be read.
+     */
+    public void testKidsRemovedThroughKeySet() throws IOException
+    {
+        assertNotNull( form.getField( "parent.first" ) );
+        parent.keySet().remove( COSName.KIDS );
+        assertNull( form.getField( "parent.first" ) );
+        assertNotNull( form.getField( "parent" ) );
+    }
+}